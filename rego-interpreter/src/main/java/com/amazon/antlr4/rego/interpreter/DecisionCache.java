@@ -0,0 +1,105 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.json.JsonObject;
+
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonFingerprint;
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+import com.amazon.antlr4.rego.interpreter.type.CacheStats;
+
+/**
+ * Least recently used cache of policy outputs keyed by the {@link JsonFingerprint} of the input.
+ * A hit also compares the input, a fingerprint collision is a miss. Entries expire after the time to live,
+ * the estimated size of inputs and outputs is bounded by maxBytes.
+ * Belongs to one executor, an executor with other data starts with an empty cache.
+ */
+@SkipMethodTrace
+final class DecisionCache {
+
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final Map<JsonFingerprint, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    DecisionCache(long maxBytes, long ttlNanos) {
+        if (maxBytes <= 0 || ttlNanos <= 0) {
+            throw new IllegalArgumentException("Decision cache size and time to live must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttlNanos;
+    }
+
+    /**
+     * @return cached output or null
+     */
+    JsonObject get(JsonFingerprint fingerprint, JsonObject input) {
+        JsonObject output = null;
+        synchronized (entries) {
+            Entry entry = entries.get(fingerprint);
+            if (entry != null && System.nanoTime() - entry.created > ttlNanos) {
+                remove(fingerprint);
+            } else if (entry != null && entry.input.equals(input)) {
+                output = entry.output;
+            }
+        }
+        (output != null ? hits : misses).increment();
+        return output;
+    }
+
+    void put(JsonFingerprint fingerprint, JsonObject input, JsonObject output) {
+        long size = JsonFingerprint.estimateSize(input) + JsonFingerprint.estimateSize(output);
+        if (size > maxBytes) {
+            return;
+        }
+        synchronized (entries) {
+            remove(fingerprint);
+            entries.put(fingerprint, new Entry(input, output, size, System.nanoTime()));
+            bytes += size;
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (bytes > maxBytes) {
+                bytes -= eldest.next().size;
+                eldest.remove();
+            }
+        }
+    }
+
+    CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum());
+    }
+
+    long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    private void remove(JsonFingerprint fingerprint) {
+        Entry entry = entries.remove(fingerprint);
+        if (entry != null) {
+            bytes -= entry.size;
+        }
+    }
+
+    private static final class Entry {
+        final JsonObject input;
+        final JsonObject output;
+        final long size;
+        final long created;
+
+        Entry(JsonObject input, JsonObject output, long size, long created) {
+            this.input = input;
+            this.output = output;
+            this.size = size;
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * Least recently used cache of parse trees keyed by policy text, shared by all executors that enable it.
+ * Parse trees are not modified by the interpreter, so one tree can back any number of executors.
+ *
+ * <p>There is one cache per JVM (per class loader), and its size applies to every executor. The map and the size
+ * are only accessed while holding the cache lock, so executors can be built while the size changes.
+ */
+@SkipMethodTrace
+final class ParseTreeCache {
+
+    static final int DEFAULT_SIZE = 1024;
+
+    // guarded by CACHE
+    private static int maxSize = DEFAULT_SIZE;
+
+    private static final Map<String, ParseTree> CACHE = new LinkedHashMap<String, ParseTree>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ParseTree> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    private ParseTreeCache() {}
+
+    /**
+     * Cached tree of the policy, parsed outside the lock when missing.
+     */
+    static ParseTree get(CharStream policy, Function<CharStream, ParseTree> parser) {
+        String policyText = policy.getText(Interval.of(0, policy.size() - 1));
+        synchronized (CACHE) {
+            ParseTree tree = CACHE.get(policyText);
+            if (tree != null) {
+                return tree;
+            }
+        }
+        ParseTree tree = parser.apply(policy);
+        synchronized (CACHE) {
+            ParseTree cached = CACHE.putIfAbsent(policyText, tree);
+            return cached != null ? cached : tree;
+        }
+    }
+
+    static void setMaxSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Cache size can't be negative: " + size);
+        }
+        synchronized (CACHE) {
+            maxSize = size;
+            while (CACHE.size() > maxSize) {
+                CACHE.remove(CACHE.keySet().iterator().next());
+            }
+        }
+    }
+
+    static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+}
@@ -5,10 +5,22 @@ package com.amazon.antlr4.rego.interpreter;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.json.Json;
 import javax.json.JsonBuilderFactory;
@@ -20,24 +32,42 @@ import javax.json.JsonValue;
 
 import com.amazon.antlr4.rego.RegoLexer;
 import com.amazon.antlr4.rego.RegoParser;
+import com.amazon.antlr4.rego.interpreter.core.CompiledPolicy;
+import com.amazon.antlr4.rego.interpreter.core.LiteralPlanner;
+import com.amazon.antlr4.rego.interpreter.core.PolicySnapshot;
 import com.amazon.antlr4.rego.interpreter.core.PolicyVisitor;
+import com.amazon.antlr4.rego.interpreter.core.RuleManager;
+import com.amazon.antlr4.rego.interpreter.core.lib.AsyncCalls;
+import com.amazon.antlr4.rego.interpreter.core.lib.BatchCalls;
+import com.amazon.antlr4.rego.interpreter.core.lib.ExpressionCache;
+import com.amazon.antlr4.rego.interpreter.core.lib.JoinIndex;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonFingerprint;
 import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.core.lib.RuleCache;
 import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
 import com.amazon.antlr4.rego.interpreter.core.lib.PackageNameVisitor;
 import com.amazon.antlr4.rego.interpreter.core.lib.debug.DecoratedVisitor;
 import com.amazon.antlr4.rego.interpreter.core.lib.debug.RegoBreakpointVisitor;
 import com.amazon.antlr4.rego.interpreter.core.lib.debug.VisitCoverage;
 import com.amazon.antlr4.rego.interpreter.core.lib.debug.VisitTracer;
+import com.amazon.antlr4.rego.interpreter.core.partial.PartialEvaluator;
+import com.amazon.antlr4.rego.interpreter.core.partial.PredicateCompiler;
 import com.amazon.antlr4.rego.interpreter.core.type.BaseExpression;
 import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
+import com.amazon.antlr4.rego.interpreter.core.type.Rule;
 import com.amazon.antlr4.rego.interpreter.core.type.VisitDecorator;
+import com.amazon.antlr4.rego.interpreter.type.AsyncExpression;
 import com.amazon.antlr4.rego.interpreter.type.BadPolicyException;
+import com.amazon.antlr4.rego.interpreter.type.BatchResult;
+import com.amazon.antlr4.rego.interpreter.type.CacheStats;
 import com.amazon.antlr4.rego.interpreter.type.Visitation;
 
 import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
 
@@ -51,31 +81,66 @@ import lombok.extern.log4j.Log4j2;
  * It provides an interface to the underlying Rego
  * <a href="https://en.wikipedia.org/wiki/Interpreter_pattern">Interpreter</a> implementation.
  * This is the only class that customers of this package should interact with.
+ *
+ * <p>An executor is immutable once built and can be shared by any number of threads.
+ * Each execution creates its own visitor, rule stacks and expression library, nothing is written to the
+ * policy tree, the {@link CompiledPolicy} or the data. Registered expressions are shared by all executions
+ * and must be thread-safe, see {@link com.amazon.antlr4.rego.interpreter.type.Expression Expression}.
+ * The initial context map is also shared, executions that need their own context pass it per call,
+ * see {@link #executePolicy(JsonObject, Map)}.
  */
 @Log4j2
 @SkipMethodTrace
 public final class RegoExecutor {
     private final ParseTree policyTree;
+    private final CompiledPolicy compiledPolicy;
     private final JsonObject data;
     private final Map<String, BaseExpression> exprMap;
     private final Map<String, Object> initialContextMap;
     private final boolean withKeywordEnabled;
     private final boolean strictTypeCheckEnabled;
+    private final ForkJoinPool rulePool;
+    private final ForkJoinPool iterationPool;
+    private final int iterationThreshold;
+    private final Executor batchExecutor;
+    private final boolean gatherBatchCalls;
+    private final ExpressionCache expressionCache;
+    private final boolean functionCache;
+    private final RuleCache ruleCache;
+    private final Map<ParseTree, Rule> precomputedRules;
+    private final JoinIndex joinIndex;
+    private final LiteralPlanner literalPlanner;
+    private final DecisionCache decisionCache;
     private final RegoExecutor dependent;
     private final List<VisitDecorator> decorators;
     private final String packageName;
 
     RegoExecutor(RegoExecutorBuilder builder) throws IOException, BadPolicyException {
         try {
-            data = loadJSON(builder.data());
-            policyTree = prepPolicyTree(CharStreams.fromStream(builder.policy()));
+            data = builder.parsedData() != null ? builder.parsedData() : loadJSON(builder.data());
+            policyTree = buildPolicyTree(builder);
+            compiledPolicy = CompiledPolicy.compile(policyTree);
             packageName = buildPackageName();
-            exprMap = builder.expressions();
+            exprMap = Collections.unmodifiableMap(new HashMap<>(builder.expressions()));
             initialContextMap = builder.initialContextMap();
             withKeywordEnabled = builder.withKeyword();
             strictTypeCheckEnabled = builder.strictTypeCheck();
+            rulePool = builder.rulePool();
+            iterationPool = builder.iterationPool();
+            iterationThreshold = builder.iterationThreshold();
+            batchExecutor = builder.batchExecutor();
+            gatherBatchCalls = builder.gatherBatchCalls();
+            functionCache = builder.functionCache();
+            expressionCache = builder.expressionCacheEntries() > 0
+                ? new ExpressionCache(builder.expressionCacheEntries(), buildCachedNames(builder))
+                : null;
+            ruleCache = buildRuleCache(builder);
             dependent = buildDependent(builder);
             decorators = buildDecorators(builder);
+            decisionCache = decorators.isEmpty() ? builder.decisionCache() : null;
+            joinIndex = buildJoinIndex(builder);
+            literalPlanner = buildLiteralPlanner(builder);
+            precomputedRules = buildPrecomputedRules(builder);
         } catch (ParseCancellationException e) {
             throw new BadPolicyException(e);
         }
@@ -93,51 +158,353 @@ public final class RegoExecutor {
         if (coverageDecorators.size() == 0) {
             throw new RuntimeException("Coverage is not enabled");
         }
-        VisitCoverage coverageDecorator = (VisitCoverage) decorators.get(0);
+        VisitCoverage coverageDecorator = (VisitCoverage) coverageDecorators.get(0);
 
         return coverageDecorator.getCoverageMap();
     }
 
+    /**
+     * @return hits and misses by expression, function or rule name of the results shared across executions,
+     * see {@link RegoExecutorBuilder#expressionCacheEntries}
+     */
+    public Map<String, CacheStats> getExpressionCacheStats() {
+        if (expressionCache == null) {
+            throw new RuntimeException("Expression cache is not enabled");
+        }
+        return expressionCache.getStats();
+    }
+
+    /**
+     * @return hits and misses of the decision cache, see {@link RegoExecutorBuilder#decisionCache}
+     */
+    public CacheStats getDecisionCacheStats() {
+        if (decisionCache == null) {
+            throw new RuntimeException("Decision cache is not enabled");
+        }
+        return decisionCache.getStats();
+    }
+
     public JsonObject executePolicy(InputStream input) throws IOException, BadPolicyException {
         return executePolicy(loadJSON(input));
     }
 
+    /**
+     * With a decision cache an equal input gets the cached output, see {@link RegoExecutorBuilder#decisionCache}.
+     */
     public JsonObject executePolicy(JsonObject input) throws IOException, BadPolicyException {
-        return executePolicy(input, null, null);
+        if (decisionCache == null) {
+            return executePolicy(input, null, null);
+        }
+        JsonFingerprint fingerprint = JsonFingerprint.of(input);
+        JsonObject output = decisionCache.get(fingerprint, input);
+        if (output == null) {
+            output = executePolicy(input, null, null);
+            decisionCache.put(fingerprint, input, output);
+        }
+        return output;
     }
 
     public JsonObject executePolicy(JsonObject input, String parentPackage, JsonObject parentOutput)
             throws IOException, BadPolicyException {
+        return execute(null, input, null, parentPackage, parentOutput, rm -> JsonResolver.extractOutput(rm, false));
+    }
+
+    /**
+     * Execute with a context map of this call only, instead of the initial context map of the builder.
+     * Use it when the executor is shared by threads and context aware expressions keep per request state.
+     * The map is also passed to the dependent policy.
+     */
+    public JsonObject executePolicy(JsonObject input, Map<String, Object> contextMap)
+            throws IOException, BadPolicyException {
+        return execute(null, input, contextMap, null, null, rm -> JsonResolver.extractOutput(rm, false));
+    }
+
+    /**
+     * Execute without blocking on {@link AsyncExpression}s, see {@link #executePolicyAsync(JsonObject, Map)}.
+     */
+    public CompletableFuture<JsonObject> executePolicyAsync(JsonObject input) {
+        return executePolicyAsync(input, null);
+    }
+
+    /**
+     * Execute without blocking on {@link AsyncExpression}s. The policy runs on the calling thread, calls of
+     * asynchronous expressions whose futures aren't done are undefined in that run, so independent calls are all
+     * started in the same run. When all of them complete the policy runs again, on the
+     * {@link RegoExecutorBuilder#batchExecutor batch executor}, with the results of all calls so far.
+     * Other expressions may run once per run and must not have side effects.
+     *
+     * @param contextMap context map of this call, null for the initial context map of the builder
+     * @return output, or the error the execution failed with
+     */
+    public CompletableFuture<JsonObject> executePolicyAsync(JsonObject input, Map<String, Object> contextMap) {
+        return executeAsync(new AsyncCalls(), input, contextMap);
+    }
+
+    private CompletableFuture<JsonObject> executeAsync(AsyncCalls asyncCalls, JsonObject input,
+            Map<String, Object> contextMap) {
+        try {
+            return CompletableFuture.completedFuture(execute(null, input, contextMap, null, null, asyncCalls,
+                rm -> JsonResolver.extractOutput(rm, false)));
+        } catch (AsyncCalls.Suspension e) {
+            return e.getPending()
+                .handleAsync((value, error) -> asyncCalls, batchExecutor)
+                .thenCompose(calls -> executeAsync(calls, input, contextMap));
+        } catch (IOException | BadPolicyException | RuntimeException e) {
+            CompletableFuture<JsonObject> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    /**
+     * Execute the policy for each input, see {@link RegoExecutorBuilder#batchExecutor}.
+     * Each input gets its own copy of the initial context map. An input that fails doesn't stop the others.
+     *
+     * @return one result per input, in the order of the inputs
+     */
+    public List<BatchResult> executeBatch(List<JsonObject> inputs) {
+        return streamBatch(inputs).collect(Collectors.toList());
+    }
+
+    /**
+     * Like {@link #executeBatch} but results are available as soon as they and all results before them are done.
+     * All inputs are submitted before the stream is returned.
+     */
+    public Stream<BatchResult> streamBatch(List<JsonObject> inputs) {
+        List<CompletableFuture<BatchResult>> results = inputs.stream()
+            .map(input -> CompletableFuture.supplyAsync(() -> executeBatchItem(input), batchExecutor))
+            .collect(Collectors.toList());
+        return results.stream().map(CompletableFuture::join);
+    }
+
+    private BatchResult executeBatchItem(JsonObject input) {
+        try {
+            return BatchResult.success(executePolicy(input, new HashMap<>(initialContextMap)));
+        } catch (Exception e) {
+            return BatchResult.failure(e);
+        }
+    }
+
+    /**
+     * Evaluate a single rule, only the rules it depends on are executed.
+     *
+     * @return rule value or null when the rule is undefined
+     */
+    public JsonValue evaluate(String ruleName, JsonObject input) throws IOException, BadPolicyException {
+        return execute(Collections.singleton(ruleName), input, null, null, null,
+            rm -> JsonResolver.extractValue(rm, ruleName));
+    }
+
+    /**
+     * Evaluate the named rules, only the rules they depend on are executed.
+     * With a dependent policy the rules are looked up in the dependent, after this policy is fully executed.
+     *
+     * @return object with the values of the defined rules
+     */
+    public JsonObject evaluate(Set<String> ruleNames, JsonObject input) throws IOException, BadPolicyException {
+        return execute(ruleNames, input, null, null, null, rm -> JsonResolver.extractOutput(rm, ruleNames));
+    }
+
+    /**
+     * Evaluate an allow/deny style rule without building any output.
+     * Evaluation of the rule stops as soon as one of its definitions is true.
+     *
+     * @return true only when the rule is defined and its value is true
+     */
+    public boolean decide(String ruleName, JsonObject input) throws IOException, BadPolicyException {
+        return JsonValue.TRUE.equals(evaluate(ruleName, input));
+    }
+
+    /**
+     * Fold every rule that depends only on data and the known input into a constant.
+     * Rules that depend on the unknown paths are kept, the residual policy can be built into a new executor.
+     * See {@link PartialEvaluator}.
+     *
+     * @param unknownPaths dot separated paths that are only known at evaluation time, e.g. <code>input.user</code>
+     * @return residual Rego policy
+     */
+    public String partialEval(Set<String> unknownPaths, JsonObject knownInput) throws IOException, BadPolicyException {
+        if (dependent != null) {
+            throw new UnsupportedOperationException("Partial evaluation is not supported with dependent policies");
+        }
+        PartialEvaluator evaluator = new PartialEvaluator(policyTree, compiledPolicy, unknownPaths, exprMap.keySet());
+        JsonObject foldedValues = evaluate(evaluator.getFoldableRules(), knownInput);
+        return evaluator.residualPolicy(foldedValues, knownInput, data, literalOutcomes(evaluator, knownInput));
+    }
+
+    /**
+     * Decide the literals of constants of the residual policy, see {@link PartialEvaluator#residualPolicy}.
+     * They are evaluated by one policy with a rule per literal, against the known input and data.
+     * Literals that fail to evaluate are left out and kept in the residual policy.
+     */
+    private Map<String, Boolean> literalOutcomes(PartialEvaluator evaluator, JsonObject knownInput)
+            throws IOException, BadPolicyException {
+        Map<String, Boolean> outcomes = new HashMap<>();
+        List<String> literals = new ArrayList<>(evaluator.constantLiterals(knownInput, data));
+        if (literals.isEmpty()) {
+            return outcomes;
+        }
+        StringBuilder policy = new StringBuilder("package fold\n");
+        for (int i = 0; i < literals.size(); i++) {
+            policy.append("holds").append(i).append(" { ").append(literals.get(i)).append(" }\n");
+        }
+        RegoExecutor literalEvaluator = new RegoExecutorBuilder(policy.toString())
+            .data(data)
+            .strictTypeCheck(strictTypeCheckEnabled)
+            .build();
+        for (int i = 0; i < literals.size(); i++) {
+            try {
+                outcomes.put(literals.get(i), literalEvaluator.decide("holds" + i, knownInput));
+            } catch (BadPolicyException e) {
+                if (!(e.getCause() instanceof RegoProcessorException)) {
+                    throw e;
+                }
+            }
+        }
+        return outcomes;
+    }
+
+    /**
+     * Write the parsed policy and its data, see {@link PolicySnapshot}.
+     * Load it with {@link RegoExecutorBuilder#fromSnapshot} to skip lexing and parsing at startup.
+     */
+    public void writeSnapshot(OutputStream os) throws IOException {
+        if (dependent != null) {
+            throw new UnsupportedOperationException("Snapshots are not supported with dependent policies");
+        }
+        PolicySnapshot.write(policyTree, data, os);
+    }
+
+    /**
+     * Partially evaluate a boolean rule with the record at <code>recordPath</code> unknown and turn it into a predicate.
+     * Filtering records then needs no interpreter run per record, see {@link PredicateCompiler}.
+     * Rules that can't be translated are decided per record by the residual policy of {@link #partialEval}.
+     *
+     * @param recordPath input path the record is bound to, e.g. <code>input.record</code>
+     */
+    public Predicate<JsonObject> toPredicate(String ruleName, String recordPath, JsonObject knownInput)
+            throws IOException, BadPolicyException {
+        String[] recordKeys = recordPath.split("\\.");
+        if (recordKeys.length < 2 || !recordKeys[0].equals("input")) {
+            throw new IllegalArgumentException("Record path must be below input: " + recordPath);
+        }
+        if (dependent != null) {
+            throw new UnsupportedOperationException("Partial evaluation is not supported with dependent policies");
+        }
+        Set<String> unknownPaths = Collections.singleton(recordPath);
+        PartialEvaluator evaluator = new PartialEvaluator(policyTree, compiledPolicy, unknownPaths, exprMap.keySet());
+        JsonObject foldedValues = evaluate(evaluator.getFoldableRules(), knownInput);
+        if (evaluator.getFoldableRules().contains(ruleName)) {
+            boolean decision = JsonValue.TRUE.equals(foldedValues.get(ruleName));
+            return record -> decision;
+        }
+        Predicate<JsonObject> predicate = new PredicateCompiler(
+            compiledPolicy, recordPath, knownInput, data, evaluator.getFoldableRules(), foldedValues
+        ).compile(policyTree, ruleName);
+        if (predicate != null) {
+            return predicate;
+        }
+
+        String residualPolicy = evaluator.residualPolicy(foldedValues, knownInput, data,
+            literalOutcomes(evaluator, knownInput));
+        RegoExecutor residual = new RegoExecutorBuilder(residualPolicy)
+            .data(data.toString())
+            .expressions(exprMap)
+            .initialContextMap(initialContextMap)
+            .withKeyword(withKeywordEnabled)
+            .strictTypeCheck(strictTypeCheckEnabled)
+            .build();
+        String[] inputKeys = Arrays.copyOfRange(recordKeys, 1, recordKeys.length);
+        return record -> {
+            try {
+                return residual.decide(ruleName, recursiveMerge(knownInput, inputKeys, 0, record).build());
+            } catch (IOException | BadPolicyException e) {
+                throw new RuntimeException(e);
+            }
+        };
+    }
 
-        // PolicyVisitor clones the context map on creation, so the initial map won't be modified over time.
+    private <T> T execute(Set<String> ruleNames, JsonObject input, Map<String, Object> contextMap,
+            String parentPackage, JsonObject parentOutput,
+            Function<RuleManager, T> outputExtractor) throws IOException, BadPolicyException {
+        return execute(ruleNames, input, contextMap, parentPackage, parentOutput, null, outputExtractor);
+    }
+
+    private <T> T execute(Set<String> ruleNames, JsonObject input, Map<String, Object> contextMap,
+            String parentPackage, JsonObject parentOutput, AsyncCalls asyncCalls,
+            Function<RuleManager, T> outputExtractor) throws IOException, BadPolicyException {
+
+        // Everything mutable lives in the visitor of this execution, only the context map may be shared.
         PolicyVisitor processor = null;
+        boolean suspended = false;
+        BatchCalls batchCalls = gatherBatchCalls ? new BatchCalls() : null;
         try {
-            processor = newPolicyVisitor(input, parentPackage, parentOutput)
-                .withKeywordEnabled(withKeywordEnabled)
-                .withStrictTypeCheckEnabled(strictTypeCheckEnabled)
-                .withJavaFunctions(exprMap);
-            processor.visit(policyTree);
+            do {
+                processor = newPolicyVisitor(contextMap != null ? contextMap : initialContextMap,
+                        input, parentPackage, parentOutput)
+                    .withCompiledPolicy(compiledPolicy)
+                    .withTargetRules(dependent == null ? ruleNames : null)
+                    .withRuleIndexEnabled(decorators.isEmpty())
+                    .withKeywordEnabled(withKeywordEnabled)
+                    .withStrictTypeCheckEnabled(strictTypeCheckEnabled)
+                    .withRulePool(decorators.isEmpty() ? rulePool : null)
+                    .withIterationPool(decorators.isEmpty() ? iterationPool : null, iterationThreshold)
+                    .withAsyncCalls(asyncCalls)
+                    .withBatchCalls(batchCalls)
+                    .withExpressionCache(expressionCache)
+                    .withFunctionCache(functionCache && parentPackage == null ? expressionCache : null)
+                    .withRuleCache(decorators.isEmpty() && parentPackage == null ? ruleCache : null)
+                    .withPrecomputedRules(parentPackage == null ? precomputedRules : Collections.emptyMap())
+                    .withJoinIndex(joinIndex != null ? joinIndex.forExecution() : null)
+                    .withLiteralPlanner(literalPlanner != null ? literalPlanner.forExecution() : null)
+                    .withJavaFunctions(exprMap);
+                visitPolicy(processor, batchCalls, asyncCalls);
+                if (asyncCalls != null && asyncCalls.hasPending()) {
+                    throw asyncCalls.suspend();
+                }
+            } while (processor.runBatchCalls());
             decorators.forEach(d -> d.endVisit(policyTree));
             if (dependent != null) {
                 JsonObject output = JsonResolver.extractOutput(processor.getRuleManager(), true);
-                return dependent.executePolicy(input, getPackageName(), output);
+                return dependent.execute(ruleNames, input, contextMap, getPackageName(), output, asyncCalls,
+                    outputExtractor);
             }
-            return JsonResolver.extractOutput(processor.getRuleManager(), false);
+            return outputExtractor.apply(processor.getRuleManager());
         } catch (RegoProcessorException e) {
             throw new BadPolicyException(e);
+        } catch (AsyncCalls.Suspension e) {
+            suspended = true;
+            throw e;
         } finally {
-            if (processor != null) {
+            if (processor != null && !suspended) {
                 processor.cleanupExpressions();
             }
         }
     }
 
-    private PolicyVisitor newPolicyVisitor(JsonObject input, String parentPackage, JsonObject parentOutput) {
+    /**
+     * A pending batch or asynchronous call that is not caught as undefined, e.g. in a function argument,
+     * ends the run. The run is repeated with its result, other errors are reported.
+     */
+    private void visitPolicy(PolicyVisitor processor, BatchCalls batchCalls, AsyncCalls asyncCalls) {
+        try {
+            processor.visit(policyTree);
+        } catch (RegoProcessorException.PendingCallException e) {
+            boolean pending = batchCalls != null && batchCalls.hasPending()
+                || asyncCalls != null && asyncCalls.hasPending();
+            if (!pending) {
+                throw e;
+            }
+        }
+    }
+
+    private PolicyVisitor newPolicyVisitor(Map<String, Object> contextMap,
+            JsonObject input, String parentPackage, JsonObject parentOutput) {
         if (decorators.size() == 0) {
-            return new PolicyVisitor(initialContextMap, input, overrideData(parentPackage, parentOutput));
+            return new PolicyVisitor(contextMap, input, overrideData(parentPackage, parentOutput));
         }
         return new DecoratedVisitor(
-            initialContextMap, input, overrideData(parentPackage, parentOutput)
+            contextMap, input, overrideData(parentPackage, parentOutput)
             ).withDecorators(decorators);
     }
 
@@ -186,18 +553,153 @@ public final class RegoExecutor {
         return executePolicy(RegoExecutorBuilder.stringToInputStream(input));
     }
 
+    /**
+     * Parse with the faster SLL prediction first, it is exact for nearly every policy.
+     * Only when SLL fails the policy is parsed again with full LL, which also reports real syntax errors,
+     * the SLL attempt reports nothing. The DFA built during prediction is shared by all parsers,
+     * see {@link RegoExecutorBuilder#warmUpParser}.
+     */
     static ParseTree prepPolicyTree(CharStream policy) {
         RegoLexer lexer = new RegoLexer(policy);
         CommonTokenStream tokens = new CommonTokenStream(lexer);
         RegoParser parser = new RegoParser(tokens);
         parser.setErrorHandler(new BailErrorStrategy());
-        return parser.module();
+        parser.removeErrorListeners();
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        try {
+            return parser.module();
+        } catch (ParseCancellationException e) {
+            tokens.seek(0);
+            parser.reset();
+            parser.addErrorListener(ConsoleErrorListener.INSTANCE);
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return parser.module();
+        }
+    }
+
+    private static ParseTree buildPolicyTree(RegoExecutorBuilder builder) throws IOException {
+        if (builder.policyTree() != null) {
+            return builder.policyTree();
+        }
+        CharStream policy = CharStreams.fromStream(builder.policy());
+        if (builder.parseTreeCache()) {
+            return ParseTreeCache.get(policy, RegoExecutor::prepPolicyTree);
+        }
+        return prepPolicyTree(policy);
     }
 
     private String buildPackageName() {
         return ((JsonString) new PackageNameVisitor().visit(policyTree)).getString();
     }
 
+    /**
+     * Pure expressions, and with the function cache the rules and functions that read no input
+     * and call no impure expression.
+     */
+    private Set<String> buildCachedNames(RegoExecutorBuilder builder) {
+        Set<String> names = ExpressionCache.pureExpressionNames(exprMap, builder.pureExpressions());
+        if (builder.functionCache()) {
+            names.addAll(dataOnlyRuleNames(builder));
+        }
+        return names;
+    }
+
+    /**
+     * Rules and functions that read no input and call no impure expression, directly or through other rules.
+     */
+    private Set<String> dataOnlyRuleNames(RegoExecutorBuilder builder) {
+        Set<String> impure = impureExpressionNames(builder);
+        impure.add("input");
+        return compiledPolicy.ruleOrder().stream()
+            .filter(ruleName -> Collections.disjoint(compiledPolicy.referencedNames(ruleName), impure))
+            .collect(Collectors.toSet());
+    }
+
+    private Set<String> impureExpressionNames(RegoExecutorBuilder builder) {
+        Set<String> impure = new HashSet<>(exprMap.keySet());
+        impure.removeAll(ExpressionCache.pureExpressionNames(exprMap, builder.pureExpressions()));
+        return impure;
+    }
+
+    /**
+     * Definitions of the data only rules evaluated once, see {@link RegoExecutorBuilder#precomputeDataRules}.
+     * A policy error leaves the rules to be evaluated, and the error to be reported, by each execution.
+     */
+    private Map<ParseTree, Rule> buildPrecomputedRules(RegoExecutorBuilder builder) {
+        if (!builder.precomputeDataRules() || !decorators.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Set<String> ruleNames = dataOnlyRuleNames(builder);
+        PolicyVisitor processor = new PolicyVisitor(new HashMap<>(initialContextMap),
+                Json.createObjectBuilder().build(), data)
+            .withCompiledPolicy(compiledPolicy)
+            .withTargetRules(ruleNames)
+            .withKeywordEnabled(withKeywordEnabled)
+            .withStrictTypeCheckEnabled(strictTypeCheckEnabled)
+            .withExpressionCache(expressionCache)
+            .withJoinIndex(joinIndex != null ? joinIndex.forExecution() : null)
+            .withLiteralPlanner(literalPlanner != null ? literalPlanner.forExecution() : null)
+            .withJavaFunctions(exprMap);
+        try {
+            processor.visit(policyTree);
+            return Collections.unmodifiableMap(processor.getRuleManager().getDecidedDefinitions(ruleNames));
+        } catch (RuntimeException e) {
+            log.debug("Data only rules are not precomputed", e);
+            return Collections.emptyMap();
+        } finally {
+            processor.cleanupExpressions();
+        }
+    }
+
+    /**
+     * Indexes over the data collections declared with {@link RegoExecutorBuilder#index} and, for hash joins,
+     * discovered from the joins of the policy. Indexes of an executor built for earlier data are updated.
+     */
+    private JoinIndex buildJoinIndex(RegoExecutorBuilder builder) {
+        if (!decorators.isEmpty() || !builder.hashJoins() && builder.dataIndexes().isEmpty()) {
+            return null;
+        }
+        Map<List<JsonValue>, Set<List<JsonValue>>> dataPaths = builder.hashJoins()
+            ? compiledPolicy.dataJoinPaths()
+            : new HashMap<>();
+        builder.dataIndexes().forEach((collection, paths) -> paths.forEach(path ->
+            dataPaths.computeIfAbsent(toKeys(collection), k -> new HashSet<>()).add(toKeys(path))));
+        RegoExecutor previous = builder.indexesFrom();
+        return new JoinIndex(data, dataPaths, builder.hashJoins(), previous != null ? previous.joinIndex : null);
+    }
+
+    /**
+     * Literal order shared by executions, see {@link RegoExecutorBuilder#reorderLiterals}.
+     */
+    private LiteralPlanner buildLiteralPlanner(RegoExecutorBuilder builder) {
+        if (!builder.reorderLiterals() || !decorators.isEmpty()) {
+            return null;
+        }
+        return new LiteralPlanner(compiledPolicy, exprMap.keySet(), impureExpressionNames(builder),
+            builder.literalStats());
+    }
+
+    private static List<JsonValue> toKeys(List<String> path) {
+        return path.stream().map(JsonResolver::nativeToJson).collect(Collectors.toList());
+    }
+
+    /**
+     * Rules that call no impure expression, with the input paths they read.
+     */
+    private RuleCache buildRuleCache(RegoExecutorBuilder builder) {
+        if (!builder.ruleCache()) {
+            return null;
+        }
+        Set<String> impure = impureExpressionNames(builder);
+        Map<String, List<List<String>>> inputPaths = new HashMap<>();
+        for (String ruleName: compiledPolicy.ruleOrder()) {
+            if (Collections.disjoint(compiledPolicy.referencedNames(ruleName), impure)) {
+                inputPaths.put(ruleName, compiledPolicy.inputPaths(ruleName));
+            }
+        }
+        return new RuleCache(expressionCache, inputPaths);
+    }
+
     private static RegoExecutor buildDependent(RegoExecutorBuilder builder) throws IOException, BadPolicyException {
         if (builder.dependentBuilder() != null) {
             return new RegoExecutor(builder.dependentBuilder());
@@ -216,7 +718,7 @@ public final class RegoExecutor {
         if (!builder.regoBreakpoints().isEmpty()) {
             decorators.add(new RegoBreakpointVisitor(builder.regoBreakpoints()));
         }
-        return decorators;
+        return Collections.unmodifiableList(decorators);
     }
 
     public static JsonObject loadJSON(InputStream is) {
@@ -7,17 +7,32 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
+import javax.json.JsonObject;
+
+import com.amazon.antlr4.rego.interpreter.core.PolicySnapshot;
 import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
 import com.amazon.antlr4.rego.interpreter.core.type.BaseExpression;
 import com.amazon.antlr4.rego.interpreter.type.BadPolicyException;
 import com.amazon.antlr4.rego.interpreter.type.ExpressionArgument;
+import com.amazon.antlr4.rego.interpreter.type.Pure;
 
+import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.config.Configurator;
 import org.apache.logging.log4j.LogManager;
@@ -29,33 +44,79 @@ import lombok.extern.log4j.Log4j2;
 @SkipMethodTrace
 public class RegoExecutorBuilder {
 
+    public static final int DEFAULT_PARALLEL_ITERATION_SIZE = 1024;
+    public static final int DEFAULT_EXPRESSION_CACHE_ENTRIES = 10000;
+
     private final InputStream policy;
+    private final ParseTree policyTree;
     private InputStream data = stringToInputStream("{}");
+    private JsonObject parsedData = null;
     private Map<String, BaseExpression> expressions = new HashMap<>();
     private Map<String, Object> initialContextMap = new HashMap<>();
     private boolean withKeyword = false;
     private boolean strictTypeCheck = false;
     private boolean coverage = false;
+    private boolean parseTreeCache = false;
+    private ForkJoinPool rulePool = null;
+    private ForkJoinPool iterationPool = null;
+    private int iterationThreshold = DEFAULT_PARALLEL_ITERATION_SIZE;
+    private Executor batchExecutor = null;
+    private boolean gatherBatchCalls = false;
+    private int expressionCacheEntries = 0;
+    private Set<String> pureExpressions = new HashSet<>();
+    private boolean functionCache = false;
+    private boolean ruleCache = false;
+    private boolean precomputeDataRules = false;
+    private boolean hashJoins = false;
+    private boolean reorderLiterals = false;
+    private boolean literalStats = false;
+    private Map<List<String>, Set<List<String>>> dataIndexes = new LinkedHashMap<>();
+    private RegoExecutor indexesFrom = null;
+    private long decisionCacheBytes = 0;
+    private Duration decisionCacheTtl = null;
     private RegoExecutorBuilder dependentBuilder = null;
     private Set<String> regoBreakpoints = new HashSet<>();
 
     public RegoExecutorBuilder(InputStream policy) {
         confirmLogLevel();
         this.policy = policy;
+        this.policyTree = null;
     }
 
     public RegoExecutorBuilder(String policy) {
+        this(stringToInputStream(policy));
+    }
+
+    private RegoExecutorBuilder(PolicySnapshot snapshot) {
         confirmLogLevel();
-        this.policy = stringToInputStream(policy);
+        this.policy = null;
+        this.policyTree = snapshot.getPolicyTree();
+        this.parsedData = snapshot.getData();
+    }
+
+    /**
+     * Start from a snapshot written by {@link RegoExecutor#writeSnapshot}, the policy is not parsed again.
+     * Data is taken from the snapshot unless overridden. Expressions and options are not part of the snapshot.
+     */
+    public static RegoExecutorBuilder fromSnapshot(InputStream snapshot) throws IOException {
+        return new RegoExecutorBuilder(PolicySnapshot.read(snapshot));
     }
 
     public RegoExecutorBuilder data(InputStream data) {
         this.data = data;
+        this.parsedData = null;
         return this;
     }
 
     public RegoExecutorBuilder data(String data) {
-        this.data = stringToInputStream(data);
+        return data(stringToInputStream(data));
+    }
+
+    /**
+     * Data already parsed by another executor.
+     */
+    RegoExecutorBuilder data(JsonObject data) {
+        this.parsedData = data;
         return this;
     }
 
@@ -129,6 +190,203 @@ public class RegoExecutorBuilder {
         return this;
     }
 
+    /**
+     * Reuse the parse tree of an identical policy text built before, see {@link #setParseTreeCacheSize}.
+     * Useful when the same policy is loaded for many tenants.
+     */
+    public RegoExecutorBuilder parseTreeCache(boolean parseTreeCache) {
+        this.parseTreeCache = parseTreeCache;
+        return this;
+    }
+
+    /**
+     * Evaluate groups of policy rules that don't reference each other in parallel, on the common pool.
+     * Worth it for policies with several expensive independent rules. Disabled by default and with coverage,
+     * tracing or breakpoints. The context map is used from several threads and must be thread-safe.
+     */
+    public RegoExecutorBuilder parallelRules(boolean parallelRules) {
+        this.rulePool = parallelRules ? ForkJoinPool.commonPool() : null;
+        return this;
+    }
+
+    /**
+     * Evaluate groups of independent policy rules in parallel on the given pool, see {@link #parallelRules(boolean)}.
+     */
+    public RegoExecutorBuilder parallelRules(ForkJoinPool rulePool) {
+        this.rulePool = rulePool;
+        return this;
+    }
+
+    /**
+     * Split loops over arrays of at least {@value #DEFAULT_PARALLEL_ITERATION_SIZE} values in chunks evaluated
+     * in parallel, on the common pool. Applies to a single <code>_</code> or <code>some</code> loop in the body
+     * of a partial set or object rule. Disabled by default and with coverage, tracing or breakpoints.
+     */
+    public RegoExecutorBuilder parallelIterations(boolean parallelIterations) {
+        return parallelIterations(parallelIterations ? ForkJoinPool.commonPool() : null,
+            DEFAULT_PARALLEL_ITERATION_SIZE);
+    }
+
+    /**
+     * Split loops over arrays of at least minArraySize values in chunks evaluated in parallel on the given pool,
+     * see {@link #parallelIterations(boolean)}.
+     */
+    public RegoExecutorBuilder parallelIterations(ForkJoinPool iterationPool, int minArraySize) {
+        this.iterationPool = iterationPool;
+        this.iterationThreshold = minArraySize;
+        return this;
+    }
+
+    /**
+     * Share the results of pure expressions across executions, up to maxEntries results. Entries are counted,
+     * not weighed: a large decoded document takes one entry like a small value.
+     * Pure are the <code>json.unmarshal</code> and <code>base64.decode</code> built-ins, user expressions
+     * annotated with {@link Pure} and those named with {@link #pureExpressions}. 0, the default, disables it.
+     * See {@link RegoExecutor#getExpressionCacheStats()}.
+     */
+    public RegoExecutorBuilder expressionCacheEntries(int maxEntries) {
+        this.expressionCacheEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * Also share the results of policy functions that read no input, directly or through other rules,
+     * and call no impure expressions. They are kept in the cache of {@link #expressionCacheEntries}, which is created
+     * with {@value #DEFAULT_EXPRESSION_CACHE_ENTRIES} entries when not set. Not used when a parent policy
+     * overrides data. Within an execution function results are always reused.
+     */
+    public RegoExecutorBuilder functionCache(boolean functionCache) {
+        this.functionCache = functionCache;
+        return this;
+    }
+
+    /**
+     * Share the outcomes of rule definitions across executions. A definition is reused when the input holds the same
+     * values at every input path its rule reads, directly or through other rules and functions, so e.g. a rule
+     * reading only <code>input.user.id</code> is evaluated once per user. Paths are cut at the first bracket.
+     * Rules calling impure expressions are always evaluated, see {@link #pureExpressions}.
+     * Outcomes are kept in the cache of {@link #expressionCacheEntries}, which is created with
+     * {@value #DEFAULT_EXPRESSION_CACHE_ENTRIES} entries when not set. Not used when a parent policy overrides data,
+     * under a <code>with</code> modifier or with coverage, tracing or breakpoints.
+     */
+    public RegoExecutorBuilder ruleCache(boolean ruleCache) {
+        this.ruleCache = ruleCache;
+        return this;
+    }
+
+    /**
+     * Evaluate the rules that read no input, directly or through other rules and functions, once when the executor
+     * is built. Executions start with their values in place, e.g. a permission map expanded from data.
+     * Rules calling impure expressions are left out, see {@link #pureExpressions}.
+     * Not used when a parent policy overrides data or with coverage, tracing or breakpoints.
+     */
+    public RegoExecutorBuilder precomputeDataRules(boolean precomputeDataRules) {
+        this.precomputeDataRules = precomputeDataRules;
+        return this;
+    }
+
+    /**
+     * Evaluate equality literals that iterate a collection, e.g. <code>data.acl[_].owner == input.user</code>,
+     * as hash joins. The other side of the literal is evaluated first and looked up in an index of the collection,
+     * so the iteration visits only the matching elements. The indexes over data the joins need are discovered
+     * from the policy and built with the executor, other indexes are built once per execution.
+     * Loops may run in a different order, which changes the order of array comprehension values.
+     * Not used with coverage, tracing or breakpoints.
+     */
+    public RegoExecutorBuilder hashJoins(boolean hashJoins) {
+        this.hashJoins = hashJoins;
+        return this;
+    }
+
+    /**
+     * Index an array of the data document by a value of its elements, e.g. <code>index("data.users", "id")</code>.
+     * The index is built with the executor and equality literals like <code>data.users[_].id == x</code> are
+     * evaluated as hash joins on it, see {@link #hashJoins}. Paths are dot separated object keys.
+     */
+    public RegoExecutorBuilder index(String collection, String path) {
+        List<String> collectionPath = Arrays.asList(collection.split("\\."));
+        if (!collectionPath.get(0).equals("data") || collectionPath.size() < 2 || path.isEmpty()) {
+            throw new IllegalArgumentException("Not a collection of the data document: " + collection);
+        }
+        dataIndexes.computeIfAbsent(collectionPath.subList(1, collectionPath.size()), k -> new LinkedHashSet<>())
+            .add(Arrays.asList(path.split("\\.")));
+        return this;
+    }
+
+    /**
+     * Executor built for an earlier version of the data. Its data indexes are updated for the new data,
+     * elements that are the same instances as before are not looked up again. See {@link #index} and
+     * {@link #hashJoins}.
+     */
+    public RegoExecutorBuilder indexesFrom(RegoExecutor previous) {
+        this.indexesFrom = previous;
+        return this;
+    }
+
+    /**
+     * Run the literals of rule bodies in an order estimated to fail sooner at a lower cost. Cheap and selective
+     * checks, e.g. <code>input.method == "GET"</code>, run before iterations and expression calls, which a failing
+     * check then skips. Literals keep the order their variables and loops depend on, and literals calling impure
+     * expressions never move ahead of another literal, see {@link #pureExpressions}.
+     * A skipped literal does not report its errors.
+     * Not used with coverage, tracing or breakpoints.
+     */
+    public RegoExecutorBuilder reorderLiterals(boolean reorderLiterals) {
+        this.reorderLiterals = reorderLiterals;
+        return this;
+    }
+
+    /**
+     * Order literals by how often they passed in earlier executions instead of estimates from their operators,
+     * see {@link #reorderLiterals}.
+     */
+    public RegoExecutorBuilder literalStats(boolean literalStats) {
+        this.literalStats = literalStats;
+        return this;
+    }
+
+    /**
+     * Return the output of an earlier execution for an equal input, see {@link RegoExecutor#executePolicy(JsonObject)}.
+     * Outputs are kept for the time to live, least recently used outputs are dropped when the estimated size of
+     * the cached inputs and outputs exceeds maxBytes. Expressions are not called for a cached output, so it only
+     * suits policies whose expressions return the same values during the time to live.
+     * Disabled with coverage, tracing or breakpoints.
+     */
+    public RegoExecutorBuilder decisionCache(long maxBytes, Duration timeToLive) {
+        this.decisionCacheBytes = maxBytes;
+        this.decisionCacheTtl = timeToLive;
+        return this;
+    }
+
+    /**
+     * Names of registered expressions whose result depends only on their arguments, see {@link Pure}.
+     */
+    public RegoExecutorBuilder pureExpressions(String... names) {
+        this.pureExpressions = new HashSet<>(Arrays.asList(names));
+        return this;
+    }
+
+    /**
+     * Executor running the inputs of {@link RegoExecutor#executeBatch} and resuming
+     * {@link RegoExecutor#executePolicyAsync asynchronous executions}. By default a virtual thread per task
+     * when the runtime has virtual threads, otherwise the common pool.
+     */
+    public RegoExecutorBuilder batchExecutor(Executor batchExecutor) {
+        this.batchExecutor = batchExecutor;
+        return this;
+    }
+
+    /**
+     * Gather the calls of {@link com.amazon.antlr4.rego.interpreter.type.BatchExpression BatchExpression}s made
+     * by an execution into batches. The policy is evaluated again for each wave of calls that depend on results
+     * of the one before, see the expression for what this means for other expressions.
+     * Disabled by default, each call of a batch expression is then a batch of one.
+     */
+    public RegoExecutorBuilder gatherBatchCalls(boolean gatherBatchCalls) {
+        this.gatherBatchCalls = gatherBatchCalls;
+        return this;
+    }
+
     public RegoExecutor build() throws IOException, BadPolicyException {
         return new RegoExecutor(this);
     }
@@ -137,10 +395,21 @@ public class RegoExecutorBuilder {
         return policy;
     }
 
+    ParseTree policyTree() {
+        return policyTree;
+    }
+
     InputStream data() {
         return data;
     }
 
+    /**
+     * Data already parsed, e.g. from a snapshot, null to read {@link #data()}.
+     */
+    JsonObject parsedData() {
+        return parsedData;
+    }
+
     RegoExecutorBuilder dependentBuilder() {
         return dependentBuilder;
     }
@@ -201,4 +470,111 @@ public class RegoExecutorBuilder {
     boolean coverage() {
         return coverage;
     }
+
+    boolean parseTreeCache() {
+        return parseTreeCache;
+    }
+
+    ForkJoinPool rulePool() {
+        return rulePool;
+    }
+
+    ForkJoinPool iterationPool() {
+        return iterationPool;
+    }
+
+    int iterationThreshold() {
+        return iterationThreshold;
+    }
+
+    int expressionCacheEntries() {
+        boolean sharedResults = functionCache || ruleCache;
+        return expressionCacheEntries == 0 && sharedResults ? DEFAULT_EXPRESSION_CACHE_ENTRIES : expressionCacheEntries;
+    }
+
+    boolean functionCache() {
+        return functionCache;
+    }
+
+    boolean ruleCache() {
+        return ruleCache;
+    }
+
+    boolean precomputeDataRules() {
+        return precomputeDataRules;
+    }
+
+    boolean hashJoins() {
+        return hashJoins;
+    }
+
+    boolean reorderLiterals() {
+        return reorderLiterals;
+    }
+
+    boolean literalStats() {
+        return literalStats;
+    }
+
+    Map<List<String>, Set<List<String>>> dataIndexes() {
+        return dataIndexes;
+    }
+
+    RegoExecutor indexesFrom() {
+        return indexesFrom;
+    }
+
+    DecisionCache decisionCache() {
+        return decisionCacheTtl != null ? new DecisionCache(decisionCacheBytes, decisionCacheTtl.toNanos()) : null;
+    }
+
+    Set<String> pureExpressions() {
+        return pureExpressions;
+    }
+
+    boolean gatherBatchCalls() {
+        return gatherBatchCalls;
+    }
+
+    Executor batchExecutor() {
+        return batchExecutor != null ? batchExecutor : DefaultBatchExecutor.INSTANCE;
+    }
+
+    /**
+     * Parse sample policies to fill the prediction cache that all parsers share.
+     * Policies built afterwards, from any thread, parse faster. Call once at startup before bulk loading.
+     */
+    public static void warmUpParser(String... samplePolicies) throws BadPolicyException {
+        for (String policy: samplePolicies) {
+            try {
+                RegoExecutor.prepPolicyTree(CharStreams.fromString(policy));
+            } catch (ParseCancellationException e) {
+                throw new BadPolicyException(e);
+            }
+        }
+    }
+
+    /**
+     * Maximum number of parse trees kept for {@link #parseTreeCache}, least recently used trees are dropped.
+     * The cache is global to the JVM, like the parser state of {@link #warmUpParser}: the size applies to all
+     * executors, whichever builder they come from. It can be changed from any thread at any time.
+     */
+    public static void setParseTreeCacheSize(int size) {
+        ParseTreeCache.setMaxSize(size);
+    }
+
+    /**
+     * Virtual threads are looked up at runtime, the sources still compile for Java 8.
+     */
+    private static final class DefaultBatchExecutor {
+        static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return ForkJoinPool.commonPool();
+            }
+        }
+    }
 }
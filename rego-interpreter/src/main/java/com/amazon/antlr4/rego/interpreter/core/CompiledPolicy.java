@@ -0,0 +1,660 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.RegoBaseListener;
+import com.amazon.antlr4.rego.RegoParser;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.core.lib.KeyFinder;
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+import com.amazon.antlr4.rego.interpreter.core.type.OperatorType;
+import com.amazon.antlr4.rego.interpreter.core.type.Rule;
+import com.amazon.antlr4.rego.interpreter.core.type.RuleFactory;
+import com.amazon.antlr4.rego.interpreter.core.type.RuleTemplate;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+/**
+ * Facts about the policy tree that never change between executions.
+ *
+ * <p>The policy is walked once when the {@link com.amazon.antlr4.rego.interpreter.RegoExecutor RegoExecutor}
+ * is built. Operators, constant scalars, ref names, function names, the order of operator chains and
+ * rule templates are resolved and stored against the tree node they came from. {@link PolicyVisitor} reads
+ * them back instead of re-deriving them from token text on every execution.
+ * The rule dependency graph, the groups of independent rules, the rule indexes over equality guarded definitions
+ * and the plans of equality joins are built in the same pass.
+ *
+ * <p>The tables are immutable after compilation and safe to share across executions.
+ * Nodes missing from the tables (e.g. a visitor created without a compiled policy) are resolved on the fly.
+ */
+@SkipMethodTrace
+public final class CompiledPolicy {
+
+    /**
+     * Resolves everything on the fly.
+     */
+    public static final CompiledPolicy EMPTY = new CompiledPolicy();
+
+    private static final String INPUT = "input";
+    private static final String ELSE = "else";
+
+    private final Map<ParseTree, OperatorType> operators;
+    private final Map<ParseTree, JsonValue> constants;
+    private final Map<ParseTree, String> names;
+    private final Map<ParseTree, List<String>> arguments;
+    private final Map<ParseTree, List<RuleTemplate>> templates;
+    private final Map<ParseTree, ItermVisitor> operatorOrders;
+    private final Map<String, Set<String>> ruleDependencies;
+    private final Map<String, Set<String>> referencedNames;
+    private final Map<String, List<List<String>>> inputPaths;
+    private final List<String> ruleOrder;
+    private final Map<String, Integer> ruleGroups;
+    private final Map<String, RuleIndex> ruleIndexes;
+    private final Map<ParseTree, EqualityJoin> equalityJoins;
+    private final Map<ParseTree, Integer> loopSites;
+
+    private CompiledPolicy() {
+        operators = Collections.emptyMap();
+        constants = Collections.emptyMap();
+        names = Collections.emptyMap();
+        arguments = Collections.emptyMap();
+        templates = Collections.emptyMap();
+        operatorOrders = Collections.emptyMap();
+        ruleDependencies = Collections.emptyMap();
+        referencedNames = Collections.emptyMap();
+        inputPaths = Collections.emptyMap();
+        ruleOrder = Collections.emptyList();
+        ruleGroups = Collections.emptyMap();
+        ruleIndexes = Collections.emptyMap();
+        equalityJoins = Collections.emptyMap();
+        loopSites = Collections.emptyMap();
+    }
+
+    private CompiledPolicy(PolicyCompiler compiler) {
+        operators = Collections.unmodifiableMap(compiler.operators);
+        constants = Collections.unmodifiableMap(compiler.constants);
+        names = Collections.unmodifiableMap(compiler.names);
+        arguments = Collections.unmodifiableMap(compiler.arguments);
+        templates = Collections.unmodifiableMap(compiler.templates);
+        operatorOrders = Collections.unmodifiableMap(compiler.operatorOrders);
+        ruleDependencies = Collections.unmodifiableMap(compiler.ruleDependencies);
+        referencedNames = Collections.unmodifiableMap(compiler.referencedNames);
+        inputPaths = Collections.unmodifiableMap(compiler.inputPaths);
+        ruleOrder = Collections.unmodifiableList(compiler.ruleOrder);
+        ruleGroups = Collections.unmodifiableMap(compiler.ruleGroups);
+        ruleIndexes = Collections.unmodifiableMap(compiler.ruleIndexes);
+        equalityJoins = Collections.unmodifiableMap(compiler.equalityJoins);
+        loopSites = Collections.unmodifiableMap(compiler.loopSites);
+    }
+
+    public static CompiledPolicy compile(ParseTree policyTree) {
+        PolicyCompiler compiler = new PolicyCompiler();
+        ParseTreeWalker.DEFAULT.walk(compiler, policyTree);
+        return new CompiledPolicy(compiler);
+    }
+
+    public OperatorType operator(RegoParser.Infix_operatorContext ctx) {
+        return lookup(operators, ctx, CompiledPolicy::toOperator);
+    }
+
+    public JsonValue scalar(RegoParser.ScalarContext ctx) {
+        return lookup(constants, ctx, CompiledPolicy::toScalar);
+    }
+
+    /**
+     * Key of a <code>.VAR</code> ref argument.
+     */
+    public JsonValue refArgKey(RegoParser.Ref_argContext ctx) {
+        return lookup(constants, ctx, CompiledPolicy::toRefArgKey);
+    }
+
+    public String refName(RegoParser.RefContext ctx) {
+        return lookup(names, ctx, CompiledPolicy::toRefName);
+    }
+
+    public String functionName(RegoParser.Expr_callContext ctx) {
+        return lookup(names, ctx, CompiledPolicy::toFunctionName);
+    }
+
+    public String ruleName(RegoParser.Rule_definitionContext ctx) {
+        return lookup(names, ctx, CompiledPolicy::toRuleName);
+    }
+
+    public String importName(RegoParser.RimportContext ctx) {
+        return lookup(names, ctx, CompiledPolicy::toImportName);
+    }
+
+    public String statKey(RegoParser.StatContext ctx) {
+        return lookup(names, ctx, KeyFinder::getKeyFromContext);
+    }
+
+    /**
+     * Is the body followed by an else branch, e.g. <code>{ input.a } else = 2 { input.b }</code>.
+     * The else branch runs when the body fails, so the body alone does not decide the rule.
+     */
+    public static boolean hasElse(RegoParser.Rule_bodyContext ctx) {
+        for (int i = 0; i < ctx.getChildCount(); i++) {
+            if (ctx.getChild(i) instanceof TerminalNode && ELSE.equals(ctx.getChild(i).getText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<String> argumentNames(RegoParser.User_functionContext ctx) {
+        return lookup(arguments, ctx, CompiledPolicy::toArgumentNames);
+    }
+
+    /**
+     * Order in which the operators of the chain rooted at this iterm apply.
+     */
+    public ItermVisitor operatorOrder(RegoParser.ItermContext ctx) {
+        return lookup(operatorOrders, ctx, c -> ItermVisitor.order(this, c));
+    }
+
+    /**
+     * Names of the policy rules and functions referenced by the named rule.
+     */
+    public Set<String> ruleDependencies(String ruleName) {
+        return ruleDependencies.getOrDefault(ruleName, Collections.emptySet());
+    }
+
+    /**
+     * Every name the named rule reads, directly or through the rules and functions it depends on.
+     * Besides rules these are <code>input</code>, <code>data</code>, expressions and local variables.
+     * Names imported from input count as <code>input</code>.
+     */
+    public Set<String> referencedNames(String ruleName) {
+        return referencedNames.getOrDefault(ruleName, Collections.emptySet());
+    }
+
+    /**
+     * Input paths the named rule reads, directly or through the rules and functions it depends on.
+     * A path holds the <code>.VAR</code> keys of an input ref up to its first bracket, an empty path is the whole input.
+     * Paths below another path are left out.
+     */
+    public List<List<String>> inputPaths(String ruleName) {
+        return inputPaths.getOrDefault(ruleName, Collections.emptyList());
+    }
+
+    /**
+     * Rule names ordered so that dependencies come before the rules that reference them.
+     * Ties and cycles keep the order of the policy source.
+     */
+    public List<String> ruleOrder() {
+        return ruleOrder;
+    }
+
+    /**
+     * Group of the named rule. Rules in different groups never reference each other, directly or through other rules,
+     * so groups can be evaluated independently. Groups are numbered in policy order, -1 for unknown rules.
+     */
+    public int ruleGroup(String ruleName) {
+        return ruleGroups.getOrDefault(ruleName, -1);
+    }
+
+    /**
+     * Index over the equality guarded definitions of the named rule, null when none of them is guarded.
+     */
+    RuleIndex ruleIndex(String ruleName) {
+        return ruleIndexes.get(ruleName);
+    }
+
+    /**
+     * Element paths compared by the equality joins over data, by the path of the collection below data.
+     * e.g. <code>data.acl[_].owner == input.user</code> compares <code>[owner]</code> of <code>[acl]</code>.
+     */
+    public Map<List<JsonValue>, Set<List<JsonValue>>> dataJoinPaths() {
+        Map<List<JsonValue>, Set<List<JsonValue>>> paths = new HashMap<>();
+        for (EqualityJoin join: equalityJoins.values()) {
+            if (join.dataPath() != null) {
+                paths.computeIfAbsent(join.dataPath(), k -> new HashSet<>()).add(join.path());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Plan for an equality literal that can be evaluated as a hash join, null for other literals.
+     */
+    EqualityJoin equalityJoin(RegoParser.Stat_infixContext ctx) {
+        if (this == EMPTY) {
+            return EqualityJoin.plan(ctx);
+        }
+        return equalityJoins.get(ctx);
+    }
+
+    /**
+     * Number of places the query iterates: <code>_</code> keys and keys holding a <code>some</code> variable.
+     * Each one finds choice points of its own, so a query with a single site runs a single loop. A key holding
+     * a <code>some</code> variable is one site however often it is written after the same ref, e.g.
+     * <code>input.items[i]</code>, it reads the same choice point. Sites in comprehensions count too,
+     * even though comprehensions iterate on their own.
+     */
+    public int loopSites(RegoParser.QueryContext ctx) {
+        return lookup(loopSites, ctx, CompiledPolicy::toLoopSites);
+    }
+
+    public List<Rule> buildFromPolicy(RegoParser.PolicyContext ctx) {
+        return RuleFactory.buildFromTemplates(lookup(templates, ctx, RuleFactory::templatesFromPolicy));
+    }
+
+    public List<Rule> buildFromQuery(RegoParser.QueryContext ctx) {
+        return RuleFactory.buildFromTemplates(lookup(templates, ctx, RuleFactory::templatesFromQuery));
+    }
+
+    private static <C extends ParseTree, T> T lookup(Map<ParseTree, T> table, C ctx, Function<C, T> compute) {
+        T value = table.get(ctx);
+        if (value == null) {
+            return compute.apply(ctx);
+        }
+        return value;
+    }
+
+    private static int toLoopSites(RegoParser.QueryContext ctx) {
+        Set<String> someVariables = new HashSet<>();
+        ParseTreeWalker.DEFAULT.walk(new RegoBaseListener() {
+            @Override
+            public void enterSome_decl(RegoParser.Some_declContext sctx) {
+                sctx.VAR().forEach(variable -> someVariables.add(variable.getText()));
+            }
+        }, ctx);
+        int[] underscores = {0};
+        Set<String> someKeys = new HashSet<>();
+        ParseTreeWalker.DEFAULT.walk(new RegoBaseListener() {
+            @Override
+            public void enterRef(RegoParser.RefContext rctx) {
+                StringBuilder prefix = new StringBuilder(rctx.getChild(0).getText());
+                for (RegoParser.Ref_argContext ractx: rctx.ref_arg()) {
+                    RegoParser.Ref_arg_brackContext bctx = ractx.ref_arg_brack();
+                    if (bctx != null && bctx.iterm() == null) {
+                        underscores[0]++;
+                    } else if (bctx != null && holdsVariable(bctx.iterm(), someVariables)) {
+                        someKeys.add(prefix + ractx.getText());
+                    }
+                    prefix.append(ractx.getText());
+                }
+            }
+        }, ctx);
+        return underscores[0] + someKeys.size();
+    }
+
+    private static boolean holdsVariable(ParseTree ctx, Set<String> variables) {
+        boolean[] holds = {false};
+        ParseTreeWalker.DEFAULT.walk(new RegoBaseListener() {
+            @Override
+            public void enterRef(RegoParser.RefContext rctx) {
+                if (rctx.VAR() != null && variables.contains(rctx.VAR().getText())) {
+                    holds[0] = true;
+                }
+            }
+        }, ctx);
+        return holds[0];
+    }
+
+    private static OperatorType toOperator(RegoParser.Infix_operatorContext ctx) {
+        return OperatorType.of(ctx.getText());
+    }
+
+    private static JsonValue toScalar(RegoParser.ScalarContext ctx) {
+        if (ctx.STRING() != null) {
+            return JsonResolver.nativeToJson(ctx.STRING().getText().replaceAll("^\"|^`|`$|\"$", ""));
+        } else if (ctx.NUMBER() != null) {
+            return JsonResolver.nativeToJson(new BigDecimal(ctx.NUMBER().getText()));
+        } else if (ctx.FALSE() != null) {
+            return JsonValue.FALSE;
+        } else if (ctx.TRUE() != null) {
+            return JsonValue.TRUE;
+        }
+        return JsonValue.NULL;
+    }
+
+    private static JsonValue toRefArgKey(RegoParser.Ref_argContext ctx) {
+        return JsonResolver.nativeToJson(ctx.VAR().getText());
+    }
+
+    private static String toRefName(RegoParser.RefContext ctx) {
+        return ctx.VAR().getText();
+    }
+
+    private static String toFunctionName(RegoParser.Expr_callContext ctx) {
+        return ctx.VAR().stream().map((v) -> v.getText()).collect(Collectors.joining("."));
+    }
+
+    private static String toRuleName(RegoParser.Rule_definitionContext ctx) {
+        if (ctx.DEFAULT() != null) {
+            return ctx.VAR().getText();
+        }
+        return ctx.rule_head().VAR().getText();
+    }
+
+    private static String toImportName(RegoParser.RimportContext ctx) {
+        if (ctx.VAR() != null) {
+            return ctx.VAR().getText();
+        }
+        List<RegoParser.Ref_argContext> refArg = ctx.ref().ref_arg();
+        return refArg.get(refArg.size() - 1).VAR().getText();
+    }
+
+    private static List<String> toArgumentNames(RegoParser.User_functionContext ctx) {
+        return ctx.dest_args().VAR().stream().map((v) -> v.getText()).collect(Collectors.toList());
+    }
+
+    /**
+     * Equality literals of a definition body comparing an input path to a constant, see {@link RuleIndex}.
+     * Bodies with an else branch are left out, the else branch runs when the guards fail.
+     */
+    private static Map<List<JsonValue>, JsonValue> toIndexGuards(RegoParser.Rule_definitionContext ctx) {
+        Map<List<JsonValue>, JsonValue> guards = new LinkedHashMap<>();
+        RegoParser.Rule_bodyContext bctx = ctx.rule_body();
+        if (ctx.DEFAULT() != null || bctx == null || hasElse(bctx)) {
+            return guards;
+        }
+        for (RegoParser.LiteralContext lctx: bctx.query().literal()) {
+            RegoParser.Stat_infixContext sctx = lctx.stat() != null ? lctx.stat().stat_infix() : null;
+            if (sctx == null || lctx.NOT() != null || !lctx.with_modifier().isEmpty() || sctx.VAR() != null
+                || sctx.infix_operator() == null || toOperator(sctx.infix_operator()) != OperatorType.EQUAL) {
+                continue;
+            }
+            addIndexGuard(guards, sctx.term(0), sctx.term(1));
+            addIndexGuard(guards, sctx.term(1), sctx.term(0));
+        }
+        return guards;
+    }
+
+    private static void addIndexGuard(
+        Map<List<JsonValue>, JsonValue> guards, RegoParser.TermContext refTerm, RegoParser.TermContext scalarTerm
+    ) {
+        RegoParser.RefContext rctx = refTerm.ref();
+        if (rctx == null || scalarTerm.scalar() == null || rctx.VAR() == null || !toRefName(rctx).equals(INPUT)) {
+            return;
+        }
+        List<JsonValue> path = new ArrayList<>();
+        for (RegoParser.Ref_argContext ractx: rctx.ref_arg()) {
+            if (ractx.VAR() == null) {
+                return;
+            }
+            path.add(toRefArgKey(ractx));
+        }
+        guards.putIfAbsent(Collections.unmodifiableList(path), toScalar(scalarTerm.scalar()));
+    }
+
+    /**
+     * Single pass over the policy tree collecting the tables.
+     */
+    private static class PolicyCompiler extends RegoBaseListener {
+
+        private final Map<ParseTree, OperatorType> operators = new IdentityHashMap<>();
+        private final Map<ParseTree, JsonValue> constants = new IdentityHashMap<>();
+        private final Map<ParseTree, String> names = new IdentityHashMap<>();
+        private final Map<ParseTree, List<String>> arguments = new IdentityHashMap<>();
+        private final Map<ParseTree, List<RuleTemplate>> templates = new IdentityHashMap<>();
+        private final Map<ParseTree, ItermVisitor> operatorOrders = new IdentityHashMap<>();
+        private final Map<String, Set<String>> ruleDependencies = new LinkedHashMap<>();
+        private final Map<String, Set<String>> referencedNames = new HashMap<>();
+        private final Map<String, Set<List<String>>> ruleInputPaths = new HashMap<>();
+        private final Map<String, List<List<String>>> inputPaths = new HashMap<>();
+        private final Map<String, List<String>> inputImports = new HashMap<>();
+        private final Set<String> bracketImports = new HashSet<>();
+        private final List<String> ruleOrder = new ArrayList<>();
+        private final Map<String, Integer> ruleGroups = new HashMap<>();
+        private Set<String> currentDependencies = null;
+        private Set<List<String>> currentInputPaths = null;
+        private final Map<String, Map<ParseTree, Map<List<JsonValue>, JsonValue>>> indexGuards = new HashMap<>();
+        private final Map<String, RuleIndex> ruleIndexes = new HashMap<>();
+        private final Map<ParseTree, EqualityJoin> equalityJoins = new IdentityHashMap<>();
+        private final Map<ParseTree, Integer> loopSites = new IdentityHashMap<>();
+
+        @Override
+        public void enterRrule(RegoParser.RruleContext ctx) {
+            String ruleName = ctx.user_function() != null
+                ? ctx.user_function().VAR().getText()
+                : toRuleName(ctx.rule_definition());
+            currentDependencies = ruleDependencies.computeIfAbsent(ruleName, k -> new LinkedHashSet<>());
+            currentInputPaths = ruleInputPaths.computeIfAbsent(ruleName, k -> new HashSet<>());
+        }
+
+        @Override
+        public void exitRrule(RegoParser.RruleContext ctx) {
+            currentDependencies = null;
+            currentInputPaths = null;
+        }
+
+        @Override
+        public void exitPolicy(RegoParser.PolicyContext ctx) {
+            Map<String, Set<String>> references = new HashMap<>();
+            ruleDependencies.forEach((name, dependencies) -> references.put(name, new HashSet<>(dependencies)));
+            ruleDependencies.forEach((name, dependencies) -> {
+                dependencies.retainAll(ruleDependencies.keySet());
+                dependencies.remove(name);
+            });
+            Set<String> visited = new LinkedHashSet<>();
+            ruleDependencies.keySet().forEach(name -> orderRule(name, visited));
+            groupRules();
+            ruleDependencies.keySet().forEach(name -> collectReferences(name, references));
+            ruleDependencies.replaceAll((name, dependencies) -> Collections.unmodifiableSet(dependencies));
+            indexGuards.forEach((name, guardsByBody) -> ruleIndexes.put(name, new RuleIndex(guardsByBody)));
+        }
+
+        private void orderRule(String name, Set<String> visited) {
+            if (!visited.add(name)) {
+                return;
+            }
+            ruleDependencies.get(name).forEach(dependency -> orderRule(dependency, visited));
+            ruleOrder.add(name);
+        }
+
+        /**
+         * Connected components of the dependency graph, with the edges taken in both directions.
+         */
+        private void groupRules() {
+            Map<String, Set<String>> neighbours = new HashMap<>();
+            ruleDependencies.forEach((name, dependencies) -> dependencies.forEach(dependency -> {
+                neighbours.computeIfAbsent(name, k -> new HashSet<>()).add(dependency);
+                neighbours.computeIfAbsent(dependency, k -> new HashSet<>()).add(name);
+            }));
+            int group = 0;
+            for (String name: ruleDependencies.keySet()) {
+                if (ruleGroups.containsKey(name)) {
+                    continue;
+                }
+                Deque<String> pending = new ArrayDeque<>(Collections.singleton(name));
+                while (!pending.isEmpty()) {
+                    String member = pending.pop();
+                    if (ruleGroups.putIfAbsent(member, group) == null) {
+                        pending.addAll(neighbours.getOrDefault(member, Collections.emptySet()));
+                    }
+                }
+                group++;
+            }
+        }
+
+        private void collectReferences(String ruleName, Map<String, Set<String>> references) {
+            Set<String> names = new HashSet<>();
+            Set<List<String>> paths = new HashSet<>();
+            Set<String> visited = new HashSet<>();
+            Deque<String> pending = new ArrayDeque<>(Collections.singleton(ruleName));
+            while (!pending.isEmpty()) {
+                String name = pending.pop();
+                if (visited.add(name)) {
+                    names.addAll(references.get(name));
+                    paths.addAll(ruleInputPaths.get(name));
+                    pending.addAll(ruleDependencies.get(name));
+                }
+            }
+            if (names.removeAll(inputImports.keySet())) {
+                names.add(INPUT);
+            }
+            referencedNames.put(ruleName, Collections.unmodifiableSet(names));
+            inputPaths.put(ruleName, Collections.unmodifiableList(outermostPaths(paths)));
+        }
+
+        private static List<List<String>> outermostPaths(Set<List<String>> paths) {
+            List<List<String>> sorted = new ArrayList<>(paths);
+            sorted.sort(Comparator.<List<String>>comparingInt(List::size).thenComparing(Object::toString));
+            List<List<String>> outermost = new ArrayList<>();
+            for (List<String> path: sorted) {
+                if (outermost.stream().noneMatch(prefix -> path.subList(0, prefix.size()).equals(prefix))) {
+                    outermost.add(path);
+                }
+            }
+            return outermost;
+        }
+
+        /**
+         * Keys of an input ref, or of a ref to a name imported from input, up to its first bracket.
+         * Names imported through a bracket stand for the keys before it.
+         */
+        private void addInputPath(RegoParser.RefContext ctx) {
+            String name = toRefName(ctx);
+            List<String> prefix = name.equals(INPUT) ? Collections.emptyList() : inputImports.get(name);
+            if (currentInputPaths == null || prefix == null) {
+                return;
+            }
+            currentInputPaths.add(bracketImports.contains(name) ? prefix : toInputPath(prefix, ctx));
+        }
+
+        private static List<String> toInputPath(List<String> prefix, RegoParser.RefContext ctx) {
+            List<String> path = new ArrayList<>(prefix);
+            for (RegoParser.Ref_argContext ractx: ctx.ref_arg()) {
+                if (ractx.VAR() == null) {
+                    break;
+                }
+                path.add(ractx.VAR().getText());
+            }
+            return Collections.unmodifiableList(path);
+        }
+
+        private void addDependency(String name) {
+            if (currentDependencies != null) {
+                currentDependencies.add(name);
+            }
+        }
+
+        /**
+         * Only the root of an operator chain is planned. Its lhs operands are part of the same chain.
+         */
+        @Override
+        public void enterIterm(RegoParser.ItermContext ctx) {
+            if (ctx.infix_operator() == null) {
+                return;
+            }
+            if (ctx.getParent() instanceof RegoParser.ItermContext) {
+                RegoParser.ItermContext parent = (RegoParser.ItermContext) ctx.getParent();
+                if (parent.infix_operator() != null && parent.iterm(0) == ctx) {
+                    return;
+                }
+            }
+            operatorOrders.put(ctx, ItermVisitor.order(EMPTY, ctx));
+        }
+
+        @Override
+        public void enterInfix_operator(RegoParser.Infix_operatorContext ctx) {
+            operators.put(ctx, toOperator(ctx));
+        }
+
+        @Override
+        public void enterScalar(RegoParser.ScalarContext ctx) {
+            constants.put(ctx, toScalar(ctx));
+        }
+
+        @Override
+        public void enterRef_arg(RegoParser.Ref_argContext ctx) {
+            if (ctx.VAR() != null) {
+                constants.put(ctx, toRefArgKey(ctx));
+            }
+        }
+
+        @Override
+        public void enterRef(RegoParser.RefContext ctx) {
+            if (ctx.VAR() != null) {
+                names.put(ctx, toRefName(ctx));
+                addDependency(toRefName(ctx));
+                addInputPath(ctx);
+            }
+        }
+
+        @Override
+        public void enterExpr_call(RegoParser.Expr_callContext ctx) {
+            names.put(ctx, toFunctionName(ctx));
+            addDependency(toFunctionName(ctx));
+        }
+
+        @Override
+        public void enterRule_definition(RegoParser.Rule_definitionContext ctx) {
+            names.put(ctx, toRuleName(ctx));
+            Map<List<JsonValue>, JsonValue> guards = toIndexGuards(ctx);
+            if (!guards.isEmpty()) {
+                indexGuards.computeIfAbsent(toRuleName(ctx), k -> new LinkedHashMap<>()).put(ctx.rule_body(), guards);
+            }
+        }
+
+        @Override
+        public void enterRimport(RegoParser.RimportContext ctx) {
+            List<RegoParser.Ref_argContext> refArg = ctx.ref().ref_arg();
+            if (ctx.VAR() != null || (refArg.size() > 0 && refArg.get(refArg.size() - 1).VAR() != null)) {
+                names.put(ctx, toImportName(ctx));
+                if (ctx.ref().VAR() != null && toRefName(ctx.ref()).equals(INPUT)) {
+                    List<String> path = toInputPath(Collections.emptyList(), ctx.ref());
+                    inputImports.put(toImportName(ctx), path);
+                    if (path.size() < ctx.ref().ref_arg().size()) {
+                        bracketImports.add(toImportName(ctx));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void enterStat(RegoParser.StatContext ctx) {
+            if (ctx.stat_infix() != null) {
+                names.put(ctx, KeyFinder.getKeyFromContext(ctx));
+            }
+        }
+
+        @Override
+        public void enterStat_infix(RegoParser.Stat_infixContext ctx) {
+            EqualityJoin join = EqualityJoin.plan(ctx);
+            if (join != null) {
+                equalityJoins.put(ctx, join);
+            }
+        }
+
+        @Override
+        public void enterUser_function(RegoParser.User_functionContext ctx) {
+            arguments.put(ctx, Collections.unmodifiableList(toArgumentNames(ctx)));
+        }
+
+        @Override
+        public void enterPolicy(RegoParser.PolicyContext ctx) {
+            templates.put(ctx, Collections.unmodifiableList(RuleFactory.templatesFromPolicy(ctx)));
+        }
+
+        @Override
+        public void enterQuery(RegoParser.QueryContext ctx) {
+            templates.put(ctx, Collections.unmodifiableList(RuleFactory.templatesFromQuery(ctx)));
+            loopSites.put(ctx, toLoopSites(ctx));
+        }
+    }
+}
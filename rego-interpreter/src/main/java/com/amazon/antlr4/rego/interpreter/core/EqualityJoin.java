@@ -0,0 +1,152 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.RegoParser;
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+import com.amazon.antlr4.rego.interpreter.core.type.OperatorType;
+
+/**
+ * Equality literal that iterates a collection on one side, e.g. <code>data.acl[_].owner == input.user</code>
+ * or <code>some u; data.users[u].id == input.resources[_].owner</code>.
+ * The other side is evaluated first and probes a hash index of the collection, keyed by the path after the
+ * iteration, see {@link com.amazon.antlr4.rego.interpreter.core.lib.JoinIndex JoinIndex}.
+ * The iteration then only visits the elements that can be equal, instead of all of them.
+ *
+ * <p>The indexed side is a ref with exactly one <code>[_]</code> or <code>[var]</code> argument, all other arguments
+ * are constant keys. A side rooted at <code>data</code> is preferred, its index is built with the executor.
+ */
+@SkipMethodTrace
+final class EqualityJoin {
+
+    private static final String DATA = "data";
+
+    private final int indexedTerm;
+    private final RegoParser.RefContext ref;
+    private final int loopArg;
+    private final List<JsonValue> collectionPath;
+    private final List<JsonValue> path;
+
+    private EqualityJoin(int indexedTerm, RegoParser.RefContext ref, int loopArg, List<JsonValue> collectionPath,
+            List<JsonValue> path) {
+        this.indexedTerm = indexedTerm;
+        this.ref = ref;
+        this.loopArg = loopArg;
+        this.collectionPath = collectionPath;
+        this.path = path;
+    }
+
+    /**
+     * @return plan for the literal, null when it is not an equality with an indexable side
+     */
+    static EqualityJoin plan(RegoParser.Stat_infixContext ctx) {
+        RegoParser.LiteralContext lctx = (RegoParser.LiteralContext) ctx.getParent().getParent();
+        if (lctx.NOT() != null || !lctx.with_modifier().isEmpty() || ctx.VAR() != null
+            || ctx.infix_operator() == null || OperatorType.of(ctx.infix_operator().getText()) != OperatorType.EQUAL) {
+            return null;
+        }
+        EqualityJoin lhs = plan(ctx, 0);
+        EqualityJoin rhs = plan(ctx, 1);
+        if (lhs != null && (rhs == null || lhs.isDataRooted() && !rhs.isDataRooted())) {
+            return lhs;
+        }
+        return rhs;
+    }
+
+    private static EqualityJoin plan(RegoParser.Stat_infixContext ctx, int term) {
+        RegoParser.RefContext rctx = ctx.term(term).ref();
+        if (rctx == null || rctx.VAR() == null) {
+            return null;
+        }
+        int loopArg = -1;
+        List<JsonValue> collectionPath = new ArrayList<>();
+        List<JsonValue> path = new ArrayList<>();
+        List<RegoParser.Ref_argContext> args = rctx.ref_arg();
+        for (int i = 0; i < args.size(); i++) {
+            JsonValue key = constantKey(args.get(i));
+            if (key != null) {
+                (loopArg >= 0 ? path : collectionPath).add(key);
+            } else if (loopArg < 0 && isLoop(args.get(i))) {
+                loopArg = i;
+            } else {
+                return null;
+            }
+        }
+        if (loopArg < 0) {
+            return null;
+        }
+        return new EqualityJoin(term, rctx, loopArg, Collections.unmodifiableList(collectionPath),
+            Collections.unmodifiableList(path));
+    }
+
+    private static JsonValue constantKey(RegoParser.Ref_argContext ctx) {
+        if (ctx.VAR() != null) {
+            return CompiledPolicy.EMPTY.refArgKey(ctx);
+        }
+        RegoParser.ItermContext ictx = ctx.ref_arg_brack().iterm();
+        if (ictx != null && ictx.term() != null && ictx.term().scalar() != null) {
+            return CompiledPolicy.EMPTY.scalar(ictx.term().scalar());
+        }
+        return null;
+    }
+
+    /**
+     * <code>[_]</code>, or <code>[var]</code> which iterates when the variable is declared by <code>some</code>.
+     */
+    private static boolean isLoop(RegoParser.Ref_argContext ctx) {
+        RegoParser.ItermContext ictx = ctx.ref_arg_brack().iterm();
+        if (ictx == null) {
+            return true;
+        }
+        RegoParser.RefContext rctx = ictx.term() != null ? ictx.term().ref() : null;
+        return rctx != null && rctx.VAR() != null && rctx.ref_arg().isEmpty();
+    }
+
+    int indexedTerm() {
+        return indexedTerm;
+    }
+
+    int probeTerm() {
+        return 1 - indexedTerm;
+    }
+
+    RegoParser.RefContext ref() {
+        return ref;
+    }
+
+    /**
+     * Arguments of the ref before the iteration, they select the collection.
+     */
+    List<RegoParser.Ref_argContext> collectionArgs() {
+        return ref.ref_arg().subList(0, loopArg);
+    }
+
+    RegoParser.Ref_argContext loopArg() {
+        return ref.ref_arg(loopArg);
+    }
+
+    /**
+     * Constant keys after the iteration, from an element of the collection to the compared value.
+     */
+    List<JsonValue> path() {
+        return path;
+    }
+
+    boolean isDataRooted() {
+        return ref.VAR().getText().equals(DATA);
+    }
+
+    /**
+     * Constant keys of the collection below data, null when the collection does not come from data.
+     */
+    List<JsonValue> dataPath() {
+        return isDataRooted() ? collectionPath : null;
+    }
+}
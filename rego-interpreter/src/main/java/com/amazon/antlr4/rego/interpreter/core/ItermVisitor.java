@@ -7,10 +7,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Set;
 
 import javax.json.JsonValue;
@@ -21,24 +18,35 @@ import com.amazon.antlr4.rego.interpreter.core.type.OperatorType;
 
 /**
  * Resolve operators in order of precedence.
+ *
+ * <p>The order in which the operators of a chain apply is worked out once per chain:
+ * its operands, and the operator applications sorted by precedence over the operand slots.
+ * Instances are immutable and cached by {@link CompiledPolicy}.
+ * Evaluating a chain visits the operands and applies the operators in that order.
  */
 public final class ItermVisitor {
 
-    private final ItermContext ctx;
-    private final PolicyVisitor policyVisitor;
-    private final List<OperatorType> ops = new LinkedList<>();
-    private final List<JsonValue> vals = new LinkedList<>();
-    private final List<Integer> opsComputeOrder = new ArrayList<>();
-
-    private ItermVisitor(PolicyVisitor policyVisitor, ItermContext ctx) {
-        this.ctx = ctx;
-        this.policyVisitor = policyVisitor;
+    private final List<ItermContext> operands = new ArrayList<>();
+    private final List<OperatorType> steps = new ArrayList<>();
+    private final List<Integer> lhsSlots = new ArrayList<>();
+    private final List<Integer> rhsSlots = new ArrayList<>();
+
+    private ItermVisitor(CompiledPolicy compiledPolicy, ItermContext ctx) {
+        List<OperatorType> ops = new ArrayList<>();
+        List<Integer> opsComputeOrder = itermTreeToList(compiledPolicy, ctx, ops);
+        List<Integer> slots = new ArrayList<>();
+        for (int i = 0; i < operands.size(); i++) {
+            slots.add(i);
+        }
+        for (int opPrecedence: opsComputeOrder) {
+            orderOperatorsOfPrecedence(opPrecedence, ops, slots);
+        }
     }
 
     /**
      * Visits single term directly.
      * This includes expressions inside <code>()</code>.
-     * For expressions involving 2 or more terms, defers to <code>MultiItermVisitor</code>.
+     * For expressions involving 2 or more terms, applies the operator order cached in {@link CompiledPolicy}.
      */
     public static JsonValue visit(PolicyVisitor policyVisitor, ItermContext ctx) {
         if (ctx.term() != null) {
@@ -46,88 +54,72 @@ public final class ItermVisitor {
         } else if (ctx.iterm().size() == 1) {
             return policyVisitor.visit(ctx.iterm(0));
         }
-        return new ItermVisitor(policyVisitor, ctx).visit();
+        return policyVisitor.getCompiledPolicy().operatorOrder(ctx).visit(policyVisitor);
     }
 
-    private JsonValue visit() {
-        itermTreeToList();
-        computeOperatorsInOrder();
-        return vals.get(0);
+    static ItermVisitor order(CompiledPolicy compiledPolicy, ItermContext ctx) {
+        return new ItermVisitor(compiledPolicy, ctx);
     }
 
-    private void computeOperatorsInOrder() {
-        for (int opPrecedence: opsComputeOrder) {
-            computeOperatorsOfPrecedence(opPrecedence);
+    /**
+     * Operands are visited right to left, which is the order they are found in the tree.
+     */
+    private JsonValue visit(PolicyVisitor policyVisitor) {
+        JsonValue[] vals = new JsonValue[operands.size()];
+        for (int i = vals.length - 1; i >= 0; i--) {
+            vals[i] = policyVisitor.visit(operands.get(i));
         }
+        for (int i = 0; i < steps.size(); i++) {
+            int lhs = lhsSlots.get(i);
+            vals[lhs] = InfixOperator.applyInfixOperator(vals[lhs], steps.get(i), vals[rhsSlots.get(i)]);
+        }
+        return vals[0];
     }
 
     /**
-     * Compute all operators at given (highest) precedence.
+     * Order all operators at given (highest) precedence.
+     * Applying an operator replaces its two input slots with the lhs slot.
      */
-    private void computeOperatorsOfPrecedence(int opPref) {
-        Iterator<OperatorType> opIter = ops.iterator();
-        ListIterator<JsonValue> valIter = vals.listIterator();
-        JsonValue lhs = valIter.next();
-        while (opIter.hasNext()) {
-            OperatorType op = opIter.next();
-            JsonValue rhs = valIter.next();
+    private void orderOperatorsOfPrecedence(int opPref, List<OperatorType> ops, List<Integer> slots) {
+        int i = 0;
+        while (i < ops.size()) {
+            OperatorType op = ops.get(i);
             if (op.getPreference() != opPref) {
-                lhs = rhs;
+                i++;
                 continue;
             }
-            lhs = InfixOperator.applyInfixOperator(lhs, op, rhs);
-            updateComputedOperator(opIter, valIter, lhs);
+            steps.add(op);
+            lhsSlots.add(slots.get(i));
+            rhsSlots.add(slots.get(i + 1));
+            ops.remove(i);
+            slots.remove(i + 1);
         }
     }
 
-    /**
-     * Remove operator. Replace two input values with one output value.
-     */
-    private void updateComputedOperator(
-        Iterator<OperatorType> opIter,
-        ListIterator<JsonValue> valIter, JsonValue lhs) {
-
-        opIter.remove();
-        valIter.remove();
-        valIter.previous();
-        valIter.remove();
-        valIter.add(lhs);
-    }
-
     /**
      * ANTLR4 will create a tree with the rightmost operator at the root.
      * Expressions inside <code>()</code> are independent trees latched to
      * one of the right leaves of the parent tree.
      */
-    private void itermTreeToList() {
+    private List<Integer> itermTreeToList(CompiledPolicy compiledPolicy, ItermContext ctx, List<OperatorType> ops) {
         Set<Integer> uniquePrecedences = new HashSet<>();
         ItermContext currCtx = ctx;
         while (currCtx.infix_operator() != null) {
-            currCtx = collapseSingleItermNode(uniquePrecedences, currCtx);
+            OperatorType op = compiledPolicy.operator(currCtx.infix_operator());
+            ops.add(op);
+            uniquePrecedences.add(op.getPreference());
+            operands.add(currCtx.iterm(1));
+            currCtx = currCtx.iterm(0);
         }
-        vals.add(policyVisitor.visit(currCtx));
+        operands.add(currCtx);
 
         // Tree was rooted at right. Lists need to start at left.
         Collections.reverse(ops);
-        Collections.reverse(vals);
+        Collections.reverse(operands);
 
         // Order of precedences to compute.
-        uniquePrecedences.stream()
-            .sorted(Comparator.reverseOrder())
-            .forEachOrdered(opsComputeOrder::add);
-    }
-
-    /**
-     * Push operator and computed rhs into lists.
-     * Update operator precedence set.
-     * Return lhs.
-     */
-    private ItermContext collapseSingleItermNode(Set<Integer> uniquePrecedences, ItermContext currCtx) {
-        String opText = currCtx.infix_operator().getText();
-        OperatorType op = OperatorType.of(opText);
-        ops.add(op);
-        uniquePrecedences.add(op.getPreference());
-        vals.add(policyVisitor.visit(currCtx.iterm(1)));
-        return currCtx.iterm(0);
+        List<Integer> opsComputeOrder = new ArrayList<>(uniquePrecedences);
+        opsComputeOrder.sort(Comparator.reverseOrder());
+        return opsComputeOrder;
     }
 }
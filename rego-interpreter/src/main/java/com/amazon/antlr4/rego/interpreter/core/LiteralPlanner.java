@@ -0,0 +1,388 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.amazon.antlr4.rego.RegoParser;
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+import com.amazon.antlr4.rego.interpreter.core.type.OperatorType;
+import com.amazon.antlr4.rego.interpreter.core.type.Rule;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * Order of the literals of query bodies, so that cheap and selective checks run before iterations and expensive
+ * calls. e.g. in <code>x := data.users[_]; check(x); input.method == "GET"</code> the input check runs first,
+ * and when it fails neither the loop nor the expression run.
+ *
+ * <p>Literals are ranked by their estimated cost over their chance to fail, which orders conjunctive checks for
+ * the lowest expected cost. Costs are static: references, calls by kind, comprehensions, and iterations that
+ * multiply the work of the literals after them. The chance to fail is estimated from the operator, or with
+ * selectivity stats observed by the executions. A literal only moves ahead of another when that cannot change
+ * the outcome: it stays after the literals defining the local variables it reads and before those redefining
+ * a name it reads, iterations keep their nesting order, literals calling impure expressions never move ahead
+ * of another literal and no literal moves across a <code>with</code> modifier.
+ *
+ * <p>Plans are shared by executions. With stats they are computed again each time the runs of a query double,
+ * an execution keeps the order it first used for a query.
+ */
+@SkipMethodTrace
+public final class LiteralPlanner {
+
+    private static final int[] SOURCE_ORDER = new int[0];
+    private static final String UNDERSCORE = "_";
+    private static final double REF_COST = 1;
+    private static final double BUILTIN_COST = 5;
+    private static final double RULE_COST = 10;
+    private static final double FUNCTION_COST = 20;
+    private static final double COMPREHENSION_COST = 50;
+    private static final double EXPRESSION_COST = 100;
+    private static final double LOOP_FACTOR = 10;
+    private static final double MIN_FAIL_RATE = 0.01;
+    private static final double STATS_WEIGHT = 8;
+    private static final long FIRST_REPLAN = 64;
+
+    private final CompiledPolicy compiledPolicy;
+    private final Set<String> expressionNames;
+    private final Set<String> impureNames;
+    private final boolean selectivityStats;
+    private final Map<ParseTree, Plan> plans;
+    private final Map<ParseTree, Literal> literals;
+    private final Map<ParseTree, int[]> executionOrders = new ConcurrentHashMap<>();
+
+    /**
+     * @param expressionNames registered expressions, calls to them are the most expensive
+     * @param impureNames registered expressions whose calls must not move ahead, see {@link #order}
+     * @param selectivityStats whether the chance of a literal to fail is observed instead of estimated
+     */
+    public LiteralPlanner(CompiledPolicy compiledPolicy, Set<String> expressionNames, Set<String> impureNames,
+            boolean selectivityStats) {
+        this.compiledPolicy = compiledPolicy;
+        this.expressionNames = expressionNames;
+        this.impureNames = impureNames;
+        this.selectivityStats = selectivityStats;
+        this.plans = new ConcurrentHashMap<>();
+        this.literals = new ConcurrentHashMap<>();
+    }
+
+    private LiteralPlanner(LiteralPlanner shared) {
+        this.compiledPolicy = shared.compiledPolicy;
+        this.expressionNames = shared.expressionNames;
+        this.impureNames = shared.impureNames;
+        this.selectivityStats = shared.selectivityStats;
+        this.plans = shared.plans;
+        this.literals = shared.literals;
+    }
+
+    /**
+     * Planner for one execution, sharing plans and stats with this one.
+     */
+    public LiteralPlanner forExecution() {
+        return new LiteralPlanner(this);
+    }
+
+    /**
+     * Rules of the query, see {@link CompiledPolicy#buildFromQuery}, in the planned order of their literals.
+     * The rules of a <code>some</code> declaration stay together.
+     */
+    List<Rule> order(RegoParser.QueryContext query, List<Rule> rules) {
+        int[] order = executionOrders.computeIfAbsent(query, q -> plan(query).currentOrder());
+        if (order == SOURCE_ORDER) {
+            return rules;
+        }
+        List<List<Rule>> byLiteral = new ArrayList<>(order.length);
+        for (Rule rule: rules) {
+            if (byLiteral.isEmpty() || byLiteral.get(byLiteral.size() - 1).get(0).ruleContext != rule.ruleContext) {
+                byLiteral.add(new ArrayList<>(1));
+            }
+            byLiteral.get(byLiteral.size() - 1).add(rule);
+        }
+        List<Rule> ordered = new ArrayList<>(rules.size());
+        for (int literal: order) {
+            ordered.addAll(byLiteral.get(literal));
+        }
+        return ordered;
+    }
+
+    /**
+     * Outcome of a planned literal, kept with selectivity stats.
+     */
+    void record(RegoParser.LiteralContext ctx, boolean passed) {
+        if (!selectivityStats) {
+            return;
+        }
+        Literal literal = literals.get(ctx);
+        if (literal != null) {
+            literal.runs.increment();
+            if (passed) {
+                literal.passes.increment();
+            }
+        }
+    }
+
+    /**
+     * Planned order of the literals of the query, by literal index.
+     */
+    List<Integer> plannedOrder(RegoParser.QueryContext query) {
+        int[] order = plan(query).currentOrder();
+        List<Integer> indexes = new ArrayList<>(query.literal().size());
+        for (int i = 0; i < query.literal().size(); i++) {
+            indexes.add(order == SOURCE_ORDER ? i : order[i]);
+        }
+        return indexes;
+    }
+
+    private Plan plan(RegoParser.QueryContext query) {
+        return plans.computeIfAbsent(query, q -> {
+            List<RegoParser.LiteralContext> lctxs = query.literal();
+            Set<String> someVars = new HashSet<>();
+            Set<String> locals = new HashSet<>();
+            for (RegoParser.LiteralContext lctx: lctxs) {
+                if (lctx.some_decl() != null) {
+                    lctx.some_decl().VAR().forEach(v -> someVars.add(v.getText()));
+                } else if (lctx.stat().stat_infix() != null && lctx.stat().stat_infix().VAR() != null) {
+                    locals.add(lctx.stat().stat_infix().VAR().getText());
+                }
+            }
+            Literal[] planned = new Literal[lctxs.size()];
+            for (int i = 0; i < planned.length; i++) {
+                planned[i] = analyze(lctxs.get(i), someVars, locals);
+                literals.put(lctxs.get(i), planned[i]);
+            }
+            return new Plan(planned);
+        });
+    }
+
+    private Literal analyze(RegoParser.LiteralContext lctx, Set<String> someVars, Set<String> locals) {
+        Literal literal = new Literal();
+        literal.barrier = !lctx.with_modifier().isEmpty();
+        if (lctx.some_decl() != null) {
+            lctx.some_decl().VAR().forEach(v -> literal.defines.add(v.getText()));
+            literal.passRate = 1;
+            return literal;
+        }
+        RegoParser.Stat_infixContext infix = lctx.stat().stat_infix();
+        if (infix != null && infix.VAR() != null) {
+            literal.defines.add(infix.VAR().getText());
+        }
+        collect(lctx.stat(), literal, someVars, locals, false);
+        for (RegoParser.With_modifierContext wctx: lctx.with_modifier()) {
+            collect(wctx, literal, someVars, locals, false);
+        }
+        if (infix != null && infix.infix_operator() != null
+                && compiledPolicy.operator(infix.infix_operator()) == OperatorType.UNIFICATION) {
+            // unification binds the variables on either side, also inside array, object and set patterns
+            for (RegoParser.TermContext term: infix.term()) {
+                collectPatternVars(term, literal.defines);
+            }
+        }
+        if (literal.iterates) {
+            literal.cost *= LOOP_FACTOR;
+        }
+        literal.passRate = literal.iterates || !literal.defines.isEmpty() ? 1 : estimatePassRate(lctx, infix);
+        return literal;
+    }
+
+    /**
+     * Bare variables of a unification pattern, e.g. <code>x</code> and <code>y</code> in <code>[x, {"k": y}]</code>.
+     * Ref arguments are only read.
+     */
+    private void collectPatternVars(ParseTree tree, Set<String> vars) {
+        if (tree instanceof RegoParser.RefContext) {
+            RegoParser.RefContext ref = (RegoParser.RefContext) tree;
+            if (ref.VAR() != null && ref.ref_arg().isEmpty()) {
+                vars.add(compiledPolicy.refName(ref));
+            }
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            if (!(tree.getChild(i) instanceof RegoParser.Ref_argContext)) {
+                collectPatternVars(tree.getChild(i), vars);
+            }
+        }
+    }
+
+    private void collect(ParseTree tree, Literal literal, Set<String> someVars, Set<String> locals, boolean nested) {
+        if (tree instanceof RegoParser.RefContext) {
+            RegoParser.RefContext ref = (RegoParser.RefContext) tree;
+            if (ref.VAR() != null) {
+                String name = compiledPolicy.refName(ref);
+                literal.reads.add(name);
+                if (someVars.contains(name)) {
+                    literal.someVars.add(name);
+                }
+                if (compiledPolicy.ruleGroup(name) >= 0) {
+                    literal.cost += RULE_COST;
+                    literal.impure |= isImpure(name);
+                }
+            }
+            literal.cost += REF_COST * ref.ref_arg().size();
+        } else if (tree instanceof RegoParser.Expr_callContext) {
+            String name = compiledPolicy.functionName((RegoParser.Expr_callContext) tree);
+            if (expressionNames.contains(name)) {
+                literal.cost += EXPRESSION_COST;
+            } else if (compiledPolicy.ruleGroup(name) >= 0) {
+                literal.cost += FUNCTION_COST;
+            } else {
+                literal.cost += BUILTIN_COST;
+            }
+            literal.impure |= isImpure(name);
+        } else if (tree instanceof RegoParser.Ref_arg_brackContext && !nested) {
+            String loopVar = loopVar((RegoParser.Ref_arg_brackContext) tree, someVars, locals);
+            if (loopVar != null) {
+                // bound by the iteration, also when it is not declared
+                literal.iterates = true;
+                if (!loopVar.equals(UNDERSCORE)) {
+                    literal.defines.add(loopVar);
+                }
+            }
+        } else if (tree instanceof RegoParser.Array_comprContext || tree instanceof RegoParser.Set_comprContext
+                || tree instanceof RegoParser.Object_comprContext) {
+            // loops of a comprehension are its own
+            literal.cost += COMPREHENSION_COST;
+            nested = true;
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            collect(tree.getChild(i), literal, someVars, locals, nested);
+        }
+    }
+
+    /**
+     * Variable the bracket iterates: <code>_</code>, or a variable that is not known to hold a single value,
+     * i.e. a some variable, an implicit one or one declared by an outer query. Null when it does not iterate.
+     */
+    private String loopVar(RegoParser.Ref_arg_brackContext ctx, Set<String> someVars, Set<String> locals) {
+        if (ctx.iterm() == null) {
+            return UNDERSCORE;
+        }
+        RegoParser.TermContext term = ctx.iterm().term();
+        if (term == null || term.ref() == null || term.ref().VAR() == null || !term.ref().ref_arg().isEmpty()) {
+            return null;
+        }
+        String name = compiledPolicy.refName(term.ref());
+        return someVars.contains(name) || !locals.contains(name) && compiledPolicy.ruleGroup(name) < 0 ? name : null;
+    }
+
+    private boolean isImpure(String name) {
+        return impureNames.contains(name) || !Collections.disjoint(compiledPolicy.referencedNames(name), impureNames);
+    }
+
+    private double estimatePassRate(RegoParser.LiteralContext lctx, RegoParser.Stat_infixContext infix) {
+        double passRate = 0.5;
+        if (infix != null && infix.infix_operator() != null) {
+            OperatorType operator = compiledPolicy.operator(infix.infix_operator());
+            if (operator == OperatorType.EQUAL || operator == OperatorType.UNIFICATION) {
+                passRate = infix.term(0).scalar() != null || infix.term(1).scalar() != null ? 0.1 : 0.3;
+            } else if (operator == OperatorType.NOT_EQUAL) {
+                passRate = 0.9;
+            }
+        }
+        return lctx.NOT() != null ? 1 - passRate : passRate;
+    }
+
+    /**
+     * Facts about a literal of a query, and its observed outcomes.
+     */
+    private static final class Literal {
+        final Set<String> defines = new HashSet<>();
+        final Set<String> reads = new HashSet<>();
+        final Set<String> someVars = new HashSet<>();
+        final LongAdder runs = new LongAdder();
+        final LongAdder passes = new LongAdder();
+        boolean iterates = false;
+        boolean impure = false;
+        boolean barrier = false;
+        double cost = REF_COST;
+        double passRate;
+
+        /**
+         * Must this literal, found later in the query, still run after the earlier one.
+         */
+        boolean follows(Literal earlier) {
+            return !Collections.disjoint(reads, earlier.defines) || !Collections.disjoint(defines, earlier.reads)
+                || !Collections.disjoint(defines, earlier.defines) || !Collections.disjoint(someVars, earlier.someVars)
+                || iterates && earlier.iterates || impure || barrier || earlier.barrier;
+        }
+
+        double rank(boolean observed) {
+            double rate = passRate;
+            if (observed && passRate < 1) {
+                rate = (passes.sum() + passRate * STATS_WEIGHT) / (runs.sum() + STATS_WEIGHT);
+            }
+            return cost / Math.max(1 - rate, MIN_FAIL_RATE);
+        }
+    }
+
+    /**
+     * Order of the literals of a query, computed again with stats.
+     */
+    private final class Plan {
+        final Literal[] literals;
+        volatile int[] order;
+        long replanAt = FIRST_REPLAN;
+
+        Plan(Literal[] literals) {
+            this.literals = literals;
+            this.order = schedule(false);
+        }
+
+        int[] currentOrder() {
+            if (selectivityStats && literals.length > 1) {
+                long runs = 0;
+                for (Literal literal: literals) {
+                    runs += literal.runs.sum();
+                }
+                synchronized (this) {
+                    if (runs >= replanAt) {
+                        replanAt = runs * 2;
+                        order = schedule(true);
+                    }
+                }
+            }
+            return order;
+        }
+
+        /**
+         * Greedy list schedule: the literal of lowest rank among those whose earlier dependencies already run.
+         */
+        private int[] schedule(boolean observed) {
+            int n = literals.length;
+            double[] ranks = new double[n];
+            for (int i = 0; i < n; i++) {
+                ranks[i] = literals[i].rank(observed);
+            }
+            boolean[] placed = new boolean[n];
+            int[] scheduled = new int[n];
+            boolean reordered = false;
+            for (int next = 0; next < n; next++) {
+                int best = -1;
+                for (int j = 0; j < n; j++) {
+                    if (!placed[j] && isReady(j, placed) && (best < 0 || ranks[j] < ranks[best])) {
+                        best = j;
+                    }
+                }
+                placed[best] = true;
+                scheduled[next] = best;
+                reordered |= best != next;
+            }
+            return reordered ? scheduled : SOURCE_ORDER;
+        }
+
+        private boolean isReady(int j, boolean[] placed) {
+            for (int i = 0; i < j; i++) {
+                if (!placed[i] && literals[j].follows(literals[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import com.amazon.antlr4.rego.RegoParser;
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.Pair;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.v4.runtime.tree.TerminalNodeImpl;
+
+/**
+ * Binary snapshot of a parsed policy and its data.
+ *
+ * <p>The snapshot holds the policy text, its tokens and the shape of the parse tree. Loading rebuilds the
+ * parse tree node by node, so neither the lexer nor the parser run and there is no ANTLR prediction cost.
+ * The interpreter still visits ANTLR parse tree classes, only the runtime library is needed.
+ *
+ * <p>Snapshots are tied to the snapshot format version and to the grammar they were parsed with.
+ * A snapshot written with a different version or grammar is rejected.
+ */
+@SkipMethodTrace
+public final class PolicySnapshot {
+
+    private static final int MAGIC = 0x5245474f; // REGO
+    private static final int VERSION = 1;
+    private static final int GRAMMAR = RegoParser._serializedATN.hashCode();
+    private static final int TERMINAL = -1;
+
+    private static final Constructor<?>[] CONTEXT_CONSTRUCTORS = contextConstructors();
+
+    private final ParseTree policyTree;
+    private final JsonObject data;
+
+    private PolicySnapshot(ParseTree policyTree, JsonObject data) {
+        this.policyTree = policyTree;
+        this.data = data;
+    }
+
+    public ParseTree getPolicyTree() {
+        return policyTree;
+    }
+
+    public JsonObject getData() {
+        return data;
+    }
+
+    public static void write(ParseTree policyTree, JsonObject data, OutputStream os) throws IOException {
+        ParserRuleContext module = (ParserRuleContext) policyTree;
+        CharStream policy = module.start.getInputStream();
+        Map<Integer, Token> tokens = new TreeMap<>();
+        collectTokens(policyTree, tokens);
+
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(GRAMMAR);
+        writeString(out, policy.getText(Interval.of(0, policy.size() - 1)));
+        writeString(out, data.toString());
+        out.writeInt(tokens.size());
+        for (Token token: tokens.values()) {
+            out.writeInt(token.getTokenIndex());
+            out.writeInt(token.getType());
+            out.writeInt(token.getStartIndex());
+            out.writeInt(token.getStopIndex());
+            out.writeInt(token.getLine());
+            out.writeInt(token.getCharPositionInLine());
+        }
+        writeNode(out, policyTree);
+        out.flush();
+    }
+
+    public static PolicySnapshot read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a policy snapshot");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported policy snapshot version: " + version);
+        }
+        if (in.readInt() != GRAMMAR) {
+            throw new IOException("Policy snapshot was written with a different grammar");
+        }
+        CharStream policy = CharStreams.fromString(readString(in));
+        JsonObject data = Json.createReader(new StringReader(readString(in))).readObject();
+
+        Pair<TokenSource, CharStream> source = new Pair<>(null, policy);
+        Map<Integer, Token> tokens = new TreeMap<>();
+        int tokenCount = in.readInt();
+        for (int i = 0; i < tokenCount; i++) {
+            int tokenIndex = in.readInt();
+            int type = in.readInt();
+            int start = in.readInt();
+            CommonToken token = new CommonToken(source, type, Token.DEFAULT_CHANNEL, start, in.readInt());
+            token.setTokenIndex(tokenIndex);
+            token.setLine(in.readInt());
+            token.setCharPositionInLine(in.readInt());
+            tokens.put(tokenIndex, token);
+        }
+        return new PolicySnapshot(readNode(in, null, tokens), data);
+    }
+
+    private static void collectTokens(ParseTree node, Map<Integer, Token> tokens) {
+        if (node instanceof TerminalNode) {
+            Token token = ((TerminalNode) node).getSymbol();
+            tokens.put(token.getTokenIndex(), token);
+            return;
+        }
+        ParserRuleContext ctx = (ParserRuleContext) node;
+        tokens.put(ctx.start.getTokenIndex(), ctx.start);
+        if (ctx.stop != null) {
+            tokens.put(ctx.stop.getTokenIndex(), ctx.stop);
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            collectTokens(node.getChild(i), tokens);
+        }
+    }
+
+    private static void writeNode(DataOutputStream out, ParseTree node) throws IOException {
+        if (node instanceof TerminalNode) {
+            out.writeInt(TERMINAL);
+            out.writeInt(((TerminalNode) node).getSymbol().getTokenIndex());
+            return;
+        }
+        ParserRuleContext ctx = (ParserRuleContext) node;
+        out.writeInt(ctx.getRuleIndex());
+        out.writeInt(ctx.start.getTokenIndex());
+        out.writeInt(ctx.stop == null ? TERMINAL : ctx.stop.getTokenIndex());
+        out.writeInt(ctx.getChildCount());
+        for (int i = 0; i < ctx.getChildCount(); i++) {
+            writeNode(out, ctx.getChild(i));
+        }
+    }
+
+    private static ParseTree readNode(DataInputStream in, ParserRuleContext parent, Map<Integer, Token> tokens)
+            throws IOException {
+        int ruleIndex = in.readInt();
+        if (ruleIndex == TERMINAL) {
+            TerminalNodeImpl terminal = new TerminalNodeImpl(token(tokens, in.readInt()));
+            parent.addChild(terminal);
+            return terminal;
+        }
+        if (ruleIndex < 0 || ruleIndex >= CONTEXT_CONSTRUCTORS.length) {
+            throw new IOException("Corrupt policy snapshot, unknown rule: " + ruleIndex);
+        }
+        ParserRuleContext ctx = newContext(ruleIndex, parent);
+        ctx.start = token(tokens, in.readInt());
+        int stop = in.readInt();
+        ctx.stop = stop == TERMINAL ? null : token(tokens, stop);
+        if (parent != null) {
+            parent.addChild(ctx);
+        }
+        int childCount = in.readInt();
+        for (int i = 0; i < childCount; i++) {
+            readNode(in, ctx, tokens);
+        }
+        return ctx;
+    }
+
+    private static Token token(Map<Integer, Token> tokens, int tokenIndex) throws IOException {
+        Token token = tokens.get(tokenIndex);
+        if (token == null) {
+            throw new IOException("Corrupt policy snapshot, unknown token: " + tokenIndex);
+        }
+        return token;
+    }
+
+    private static ParserRuleContext newContext(int ruleIndex, ParserRuleContext parent) throws IOException {
+        try {
+            return (ParserRuleContext) CONTEXT_CONSTRUCTORS[ruleIndex].newInstance(parent, -1);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Cannot create context for rule " + RegoParser.ruleNames[ruleIndex], e);
+        }
+    }
+
+    /**
+     * Constructors of the generated contexts, indexed like {@link RegoParser#ruleNames}.
+     */
+    private static Constructor<?>[] contextConstructors() {
+        Constructor<?>[] constructors = new Constructor<?>[RegoParser.ruleNames.length];
+        for (int i = 0; i < constructors.length; i++) {
+            String ruleName = RegoParser.ruleNames[i];
+            String className = RegoParser.class.getName() + "$"
+                + Character.toUpperCase(ruleName.charAt(0)) + ruleName.substring(1) + "Context";
+            try {
+                constructors[i] = Class.forName(className).getConstructor(ParserRuleContext.class, int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("No context class for rule " + ruleName, e);
+            }
+        }
+        return constructors;
+    }
+
+    /**
+     * Strings are written as UTF-8 bytes with their length, policies can be longer than writeUTF allows.
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -3,11 +3,15 @@
 
 package com.amazon.antlr4.rego.interpreter.core;
 
-import java.math.BigDecimal;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -16,14 +20,19 @@ import javax.json.JsonNumber;
 import javax.json.JsonObject;
 import javax.json.JsonValue;
 
+import com.amazon.antlr4.rego.RegoBaseListener;
 import com.amazon.antlr4.rego.RegoBaseVisitor;
 import com.amazon.antlr4.rego.RegoParser;
-import com.amazon.antlr4.rego.RegoParser.Ref_argContext;
 import com.amazon.antlr4.rego.RegoParser.Rule_bodyContext;
 import com.amazon.antlr4.rego.RegoParser.Rule_definitionContext;
+import com.amazon.antlr4.rego.interpreter.core.lib.AsyncCalls;
+import com.amazon.antlr4.rego.interpreter.core.lib.BatchCalls;
 import com.amazon.antlr4.rego.interpreter.core.lib.ExprLibrary;
+import com.amazon.antlr4.rego.interpreter.core.lib.ExpressionCache;
 import com.amazon.antlr4.rego.interpreter.core.lib.InfixOperator;
+import com.amazon.antlr4.rego.interpreter.core.lib.JoinIndex;
 import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.core.lib.RuleCache;
 import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
 import com.amazon.antlr4.rego.interpreter.core.type.BaseExpression;
 import com.amazon.antlr4.rego.interpreter.core.type.CompleteRule;
@@ -32,13 +41,13 @@ import com.amazon.antlr4.rego.interpreter.core.type.ObjectRule;
 import com.amazon.antlr4.rego.interpreter.core.type.OperatorType;
 import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
 import com.amazon.antlr4.rego.interpreter.core.type.Rule;
-import com.amazon.antlr4.rego.interpreter.core.type.RuleFactory;
 import com.amazon.antlr4.rego.interpreter.core.type.SetRule;
 import com.amazon.antlr4.rego.interpreter.core.type.SomeRule;
 import com.amazon.antlr4.rego.interpreter.core.type.UnderscoreLocation;
 
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
 /**
  * Visitor for ANTLR4 tree generated for Rego DSL.
@@ -65,6 +74,19 @@ public class PolicyVisitor extends RegoBaseVisitor<JsonValue> {
     private final RuleRunner ruleRunner;
     private final ExprLibrary exprLibrary;
     private boolean withKeywordEnabled = false;
+    private CompiledPolicy compiledPolicy = CompiledPolicy.EMPTY;
+    private Set<String> targetRules = null;
+    private boolean ruleIndexEnabled = true;
+    private JsonValue indexedInput = null;
+    private final Map<String, Set<ParseTree>> indexCandidates = new HashMap<>();
+    private ForkJoinPool rulePool = null;
+    private ForkJoinPool iterationPool = null;
+    private int iterationThreshold = Integer.MAX_VALUE;
+    private ExpressionCache functionCache = null;
+    private RuleCache ruleCache = null;
+    private Map<ParseTree, Rule> precomputedRules = Collections.emptyMap();
+    private JoinIndex joinIndex = null;
+    private LiteralPlanner literalPlanner = null;
 
     /**
      * By adding input and data to the RuleManager.globalRuleFrame we avoid writing
@@ -88,7 +110,32 @@ public class PolicyVisitor extends RegoBaseVisitor<JsonValue> {
             (JsonObject) ruleManager.getRuleValue("data")
         );
         exprLibrary.strictTypeCheckEnabled(visitor.exprLibrary.strictTypeCheckEnabled());
+        exprLibrary.asyncCalls(visitor.exprLibrary.asyncCalls());
+        exprLibrary.batchCalls(visitor.exprLibrary.batchCalls());
+        exprLibrary.expressionCache(visitor.exprLibrary.expressionCache());
         withKeywordEnabled = true;
+        compiledPolicy = visitor.compiledPolicy;
+        ruleIndexEnabled = visitor.ruleIndexEnabled;
+    }
+
+    /**
+     * Visitor for a group of policy rules evaluated on another thread, see {@link ThreadedRuleRunner}.
+     * It has its own rule manager, forked from the root scope of the given visitor, and its own expression cache.
+     */
+    PolicyVisitor(PolicyVisitor visitor) {
+        ruleManager = visitor.ruleManager.fork();
+        ruleRunner = new RuleRunner(this, ruleManager);
+        exprLibrary = new ExprLibrary(visitor.exprLibrary);
+        withKeywordEnabled = visitor.withKeywordEnabled;
+        compiledPolicy = visitor.compiledPolicy;
+        targetRules = visitor.targetRules;
+        ruleIndexEnabled = visitor.ruleIndexEnabled;
+        iterationPool = visitor.iterationPool;
+        iterationThreshold = visitor.iterationThreshold;
+        functionCache = visitor.functionCache;
+        ruleCache = visitor.ruleCache;
+        joinIndex = visitor.joinIndex;
+        literalPlanner = visitor.literalPlanner;
     }
 
     @Override
@@ -103,27 +150,25 @@ public class PolicyVisitor extends RegoBaseVisitor<JsonValue> {
     @Override
     public JsonValue visitRimport(RegoParser.RimportContext ctx) {
         JsonValue value = visit(ctx.ref());
-        String name = getImportName(ctx);
+        String name = compiledPolicy.importName(ctx);
         Rule rule = new CompleteRule(name, null, value);
         ruleManager.putRule(rule);
         return null;
     }
 
-    private String getImportName(RegoParser.RimportContext ctx) {
-        if (ctx.VAR() != null) {
-            return ctx.VAR().getText();
-        }
-        List<Ref_argContext> refArg = ctx.ref().ref_arg();
-        int refArgSize = refArg.size();
-        return refArg.get(refArgSize - 1).VAR().getText();
-    }
-
     /**
-     * Create list of Policy.RRule[] and execute in parallel.
+     * Create list of Policy.RRule[] and execute in dependency order.
+     * Rules referenced before their turn are executed on demand.
+     * When target rules are set, only those are executed and the rest run only if referenced.
      */
     @Override
     public JsonValue visitPolicy(RegoParser.PolicyContext ctx) {
-        ruleRunner.runAllRules(RuleFactory.buildFromPolicy(ctx), false);
+        Predicate<Rule> isTarget = targetRules == null ? rule -> true : rule -> targetRules.contains(rule.key);
+        List<Rule> rules = compiledPolicy.buildFromPolicy(ctx);
+        if (!precomputedRules.isEmpty()) {
+            rules.replaceAll(rule -> precomputedRules.getOrDefault(rule.ruleContext, rule));
+        }
+        ruleRunner.runPolicyRules(rules, isTarget);
         return null;
     }
 
@@ -132,7 +177,8 @@ public class PolicyVisitor extends RegoBaseVisitor<JsonValue> {
      */
     @Override
     public JsonValue visitQuery(RegoParser.QueryContext ctx) {
-        ruleRunner.runAllRules(RuleFactory.buildFromQuery(ctx), true);
+        List<Rule> rules = compiledPolicy.buildFromQuery(ctx);
+        ruleRunner.runQueryRules(ctx, literalPlanner != null ? literalPlanner.order(ctx, rules) : rules);
         return null;
     }
 
@@ -179,7 +225,7 @@ public class PolicyVisitor extends RegoBaseVisitor<JsonValue> {
     }
 
     private Rule getRuleFromDefinitionContext(Rule_definitionContext ctx) {
-        String ruleName = ctx.rule_head().VAR().getText();
+        String ruleName = compiledPolicy.ruleName(ctx);
         return ruleManager.getRule(ctx.getParent(), ruleName);
     }
 
@@ -218,17 +264,20 @@ public class PolicyVisitor extends RegoBaseVisitor<JsonValue> {
         return null;
     }
 
+    /**
+     * Definitions of the rule may already be registered. Only another default rule is a conflict.
+     */
     private CompleteRule getOrPutRule(Rule_definitionContext ctx) {
-        String ruleName = ctx.VAR().getText();
-        try {
-            ruleManager.getRule(ctx.getParent(), ruleName);
-            throw new RegoProcessorException.UncheckedBadPolicyException(
+        String ruleName = compiledPolicy.ruleName(ctx);
+        for (Rule rule: ruleManager.searchRuleStackRecursively(ruleName)) {
+            if (rule instanceof CompleteRule && ((CompleteRule) rule).getDefaultValue() != null) {
+                throw new RegoProcessorException.UncheckedBadPolicyException(
                     String.format("rego_type_error: multiple default rules named `%s` found", ruleName));
-        } catch (RegoProcessorException.UndefinedRuleException e) {
-            CompleteRule rule = new CompleteRule(ruleName, ctx);
-            ruleManager.putRule(rule);
-            return rule;
+            }
         }
+        CompleteRule rule = new CompleteRule(ruleName, ctx);
+        ruleManager.putRule(rule);
+        return rule;
     }
 
     @Override
@@ -243,14 +292,24 @@ public class PolicyVisitor extends RegoBaseVisitor<JsonValue> {
         try {
             statValue = executeStat(ctx, lctx);
         } catch (RegoProcessorException.UndefinedRuleException | RegoProcessorException.BadReferenceException e) {
-            if (!hasNot(ctx)) {
+            // a pending batch call is not known to be undefined, its negation is not true either
+            if (!hasNot(ctx) || e instanceof RegoProcessorException.PendingCallException) {
+                recordOutcome(lctx, false);
                 throw e;
             }
         }
-        ruleManager.getRule(ctx).setValue(visitStatNOT(ctx, statValue));
+        statValue = visitStatNOT(ctx, statValue);
+        recordOutcome(lctx, statValue != JsonValue.FALSE);
+        ruleManager.getRule(ctx, compiledPolicy.statKey(ctx)).setValue(statValue);
         return null;
     }
 
+    private void recordOutcome(RegoParser.LiteralContext lctx, boolean passed) {
+        if (literalPlanner != null) {
+            literalPlanner.record(lctx, passed);
+        }
+    }
+
     private JsonValue executeStat(RegoParser.StatContext ctx, RegoParser.LiteralContext lctx) {
         if (lctx.with_modifier().size() > 0) {
             if (!withKeywordEnabled) {
@@ -285,19 +344,46 @@ public class PolicyVisitor extends RegoBaseVisitor<JsonValue> {
     @Override
     @SuppressWarnings("checkstyle:MethodName")
     public JsonValue visitStat_infix(RegoParser.Stat_infixContext ctx) {
+        EqualityJoin join = joinIndex != null ? compiledPolicy.equalityJoin(ctx) : null;
+        if (join != null && joinIndex.joins(join.dataPath(), join.path())) {
+            return visitEqualityJoin(ctx, join);
+        }
         JsonValue rhs = visit(ctx.term(0));
         if (ctx.term().size() == 2) {
-            OperatorType op = OperatorType.of(ctx.infix_operator().getText());
+            OperatorType op = compiledPolicy.operator(ctx.infix_operator());
             rhs = InfixOperator.applyInfixOperator(rhs, op, visit(ctx.term(1)));
         }
         return rhs;
     }
 
+    /**
+     * The probe side is evaluated first, then the iteration of the other side is restricted to the elements
+     * the join index finds for the probe value. Evaluating the indexed side checks the equality as usual.
+     */
+    private JsonValue visitEqualityJoin(RegoParser.Stat_infixContext ctx, EqualityJoin join) {
+        JsonValue probe = visit(ctx.term(join.probeTerm()));
+        JsonValue collection = ruleManager.getRuleValue(compiledPolicy.refName(join.ref()));
+        collection = visitRefArgs(collection, join.collectionArgs());
+        JsonValue key = getRefArgKey(join.loopArg());
+        if (collection instanceof JsonArray && (key instanceof UnderscoreLocation || key instanceof SomeRule)) {
+            JsonArray array = (JsonArray) collection;
+            int[] positions = joinIndex.positions(ctx, join.dataPath(), array, join.path(), probe);
+            if (positions != null) {
+                Object choice = key instanceof SomeRule ? ((SomeRule) key).key : join.loopArg();
+                ruleManager.getUnderscoreLocation().restrictChoice(choice, array, () -> positions);
+            }
+        }
+        JsonValue indexed = visit(ctx.term(join.indexedTerm()));
+        return join.indexedTerm() == 0
+            ? InfixOperator.applyInfixOperator(indexed, OperatorType.EQUAL, probe)
+            : InfixOperator.applyInfixOperator(probe, OperatorType.EQUAL, indexed);
+    }
+
     @Override
     public JsonValue visitRef(RegoParser.RefContext ctx) {
         JsonValue retVal = visit(ctx.getChild(0));
         if (ctx.VAR() != null) {
-            retVal = ruleManager.getRuleValue(ctx.VAR().getText());
+            retVal = ruleManager.getRuleValue(compiledPolicy.refName(ctx));
         }
         if (ctx.ref_arg() != null) {
             retVal = visitRefArgs(retVal, ctx.ref_arg());
@@ -347,7 +433,7 @@ public class PolicyVisitor extends RegoBaseVisitor<JsonValue> {
     @SuppressWarnings("checkstyle:MethodName")
     public JsonValue visitExpr_call(RegoParser.Expr_callContext ctx) {
         List<JsonValue> args = ctx.iterm().stream().map((t) -> visit(t)).collect(Collectors.toList());
-        String functionName = ctx.VAR().stream().map((v) -> v.getText()).collect(Collectors.joining("."));
+        String functionName = compiledPolicy.functionName(ctx);
         if (exprLibrary.isJavaFunction(functionName)) {
             return exprLibrary.executeJavaFunction(functionName, args);
         }
@@ -377,16 +463,7 @@ public class PolicyVisitor extends RegoBaseVisitor<JsonValue> {
     @Override
     @SuppressWarnings("checkstyle:MethodName")
     public JsonValue visitScalar(RegoParser.ScalarContext ctx) {
-        if (ctx.STRING() != null) {
-            return JsonResolver.nativeToJson(ctx.STRING().getText().replaceAll("^\"|^`|`$|\"$", ""));
-        } else if (ctx.NUMBER() != null) {
-            return JsonResolver.nativeToJson(new BigDecimal(ctx.NUMBER().getText()));
-        } else if (ctx.FALSE() != null) {
-            return JsonValue.FALSE;
-        } else if (ctx.TRUE() != null) {
-            return JsonValue.TRUE;
-        }
-        return JsonValue.NULL;
+        return compiledPolicy.scalar(ctx);
     }
 
     @Override
@@ -421,10 +498,67 @@ public class PolicyVisitor extends RegoBaseVisitor<JsonValue> {
             return resolveSetRef(ctx, state, key);
         } else if (key instanceof SomeRule) {
             return resolveSomeVariable(state, key);
+        } else if (hasSomeVariable(key)) {
+            return resolveSomePattern(ctx, state, key);
         }
         return JsonResolver.resolveJsonRef(state, key);
     }
 
+    /**
+     * A key holding unbound some variables, e.g. <code>some i; s[[1, i]]</code>, iterates the values of the set.
+     * A value is read when it unifies with the key, which binds the variables to the matching parts of the value.
+     */
+    private JsonValue resolveSomePattern(ParserRuleContext ctx, JsonValue state, JsonValue pattern) {
+        if (!(state instanceof JsonArray)) {
+            throw new RegoProcessorException.BadReferenceException("Variable key needs a set: " + ctx.getText());
+        }
+        JsonValue value = ruleManager.getUnderscoreLocation().peek(ctx, (JsonArray) state);
+        Map<SomeRule, JsonValue> bindings = new IdentityHashMap<>();
+        if (!unify(pattern, value, bindings)) {
+            throw new RegoProcessorException.UndefinedRuleException("No value matches " + ctx.getText());
+        }
+        bindings.forEach(SomeRule::setLastValue);
+        return value;
+    }
+
+    private static boolean hasSomeVariable(JsonValue value) {
+        if (value instanceof SomeRule) {
+            return true;
+        } else if (value instanceof JsonArray) {
+            return ((JsonArray) value).stream().anyMatch(PolicyVisitor::hasSomeVariable);
+        } else if (value instanceof JsonObject) {
+            return ((JsonObject) value).values().stream().anyMatch(PolicyVisitor::hasSomeVariable);
+        }
+        return false;
+    }
+
+    private static boolean unify(JsonValue pattern, JsonValue value, Map<SomeRule, JsonValue> bindings) {
+        if (pattern instanceof SomeRule) {
+            JsonValue bound = bindings.putIfAbsent((SomeRule) pattern, value);
+            return bound == null || bound.equals(value);
+        } else if (pattern instanceof JsonArray && value instanceof JsonArray) {
+            JsonArray patterns = (JsonArray) pattern;
+            JsonArray values = (JsonArray) value;
+            if (patterns.size() != values.size()) {
+                return false;
+            }
+            for (int i = 0; i < patterns.size(); i++) {
+                if (!unify(patterns.get(i), values.get(i), bindings)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (pattern instanceof JsonObject && value instanceof JsonObject) {
+            JsonObject patterns = (JsonObject) pattern;
+            JsonObject values = (JsonObject) value;
+            if (!patterns.keySet().equals(values.keySet())) {
+                return false;
+            }
+            return patterns.entrySet().stream().allMatch(e -> unify(e.getValue(), values.get(e.getKey()), bindings));
+        }
+        return !hasSomeVariable(pattern) && pattern.equals(value);
+    }
+
     private JsonValue resolveSomeVariable(JsonValue state, JsonValue key) {
         SomeRule some = (SomeRule) key;
         JsonArray array = (JsonArray) state;
@@ -441,7 +575,7 @@ public class PolicyVisitor extends RegoBaseVisitor<JsonValue> {
 
     private JsonValue getRefArgKey(RegoParser.Ref_argContext ractx) {
         if (ractx.VAR() != null) {
-            return JsonResolver.nativeToJson(ractx.VAR().getText());
+            return compiledPolicy.refArgKey(ractx);
         } else if (ractx.ref_arg_brack().iterm() != null) {
             return visit(ractx.ref_arg_brack().iterm());
         }
@@ -459,12 +593,213 @@ public class PolicyVisitor extends RegoBaseVisitor<JsonValue> {
         return this;
     }
 
+    @SkipMethodTrace
+    public PolicyVisitor withCompiledPolicy(CompiledPolicy compiledPolicy) {
+        this.compiledPolicy = compiledPolicy;
+        return this;
+    }
+
+    /**
+     * Restrict policy execution to the named rules and the rules they depend on.
+     */
+    @SkipMethodTrace
+    public PolicyVisitor withTargetRules(Set<String> targetRules) {
+        this.targetRules = targetRules;
+        return this;
+    }
+
+    /**
+     * Skip rule definitions whose equality guards do not match the input, see {@link RuleIndex}.
+     * Enabled by default, debugging decorators need every definition visited.
+     */
+    @SkipMethodTrace
+    public PolicyVisitor withRuleIndexEnabled(boolean ruleIndexEnabled) {
+        this.ruleIndexEnabled = ruleIndexEnabled;
+        return this;
+    }
+
+    /**
+     * Can the rule body produce a value for the current input. Candidates are looked up once per rule and input.
+     */
+    boolean isIndexCandidate(String ruleName, ParseTree ruleBody) {
+        RuleIndex index = compiledPolicy.ruleIndex(ruleName);
+        if (!ruleIndexEnabled || index == null || !index.isIndexed(ruleBody)) {
+            return true;
+        }
+        JsonValue input = ruleManager.getRuleValue("input");
+        if (input != indexedInput) {
+            indexedInput = input;
+            indexCandidates.clear();
+        }
+        return indexCandidates.computeIfAbsent(ruleName, k -> index.candidates(input)).contains(ruleBody);
+    }
+
+    /**
+     * Evaluate independent groups of policy rules in parallel on the pool, null to evaluate them in order.
+     * Debugging decorators need a single thread.
+     */
+    @SkipMethodTrace
+    public PolicyVisitor withRulePool(ForkJoinPool rulePool) {
+        this.rulePool = rulePool;
+        return this;
+    }
+
+    @SkipMethodTrace
+    ForkJoinPool getRulePool() {
+        return rulePool;
+    }
+
+    /**
+     * Split loops over arrays of at least <code>threshold</code> values in chunks run in parallel on the pool,
+     * null to run loops in order. See {@link ScopedRuleRunner}.
+     */
+    @SkipMethodTrace
+    public PolicyVisitor withIterationPool(ForkJoinPool iterationPool, int threshold) {
+        this.iterationPool = iterationPool;
+        this.iterationThreshold = threshold;
+        return this;
+    }
+
+    @SkipMethodTrace
+    ForkJoinPool getIterationPool() {
+        return iterationPool;
+    }
+
+    @SkipMethodTrace
+    int getIterationThreshold() {
+        return iterationThreshold;
+    }
+
+    @SkipMethodTrace
+    CompiledPolicy getCompiledPolicy() {
+        return compiledPolicy;
+    }
+
+    /**
+     * Does the context call an expression registered with the executor, directly or through the policy rules
+     * and functions it references. Such calls may have side effects, so their evaluation can't be skipped.
+     */
+    @SkipMethodTrace
+    boolean callsUserExpression(ParseTree ctx) {
+        boolean[] calls = {false};
+        ParseTreeWalker.DEFAULT.walk(new RegoBaseListener() {
+            @Override
+            public void enterRef(RegoParser.RefContext rctx) {
+                if (rctx.VAR() != null) {
+                    check(compiledPolicy.refName(rctx));
+                }
+            }
+
+            @Override
+            public void enterExpr_call(RegoParser.Expr_callContext ectx) {
+                check(compiledPolicy.functionName(ectx));
+            }
+
+            private void check(String name) {
+                calls[0] |= exprLibrary.isUserExpression(name)
+                    || compiledPolicy.referencedNames(name).stream().anyMatch(exprLibrary::isUserExpression);
+            }
+        }, ctx);
+        return calls[0];
+    }
+
     @SkipMethodTrace
     public PolicyVisitor withKeywordEnabled(boolean withKeywordEnabled) {
         this.withKeywordEnabled = withKeywordEnabled;
         return this;
     }
 
+    /**
+     * Calls of asynchronous expressions of the execution this visitor runs for, see {@link AsyncCalls}.
+     */
+    @SkipMethodTrace
+    public PolicyVisitor withAsyncCalls(AsyncCalls asyncCalls) {
+        exprLibrary.asyncCalls(asyncCalls);
+        return this;
+    }
+
+    /**
+     * Results of pure expressions shared by all executions of the executor, see {@link ExpressionCache}.
+     */
+    @SkipMethodTrace
+    public PolicyVisitor withExpressionCache(ExpressionCache expressionCache) {
+        exprLibrary.expressionCache(expressionCache);
+        return this;
+    }
+
+    /**
+     * Results of policy functions shared by executions, only functions named by the cache are looked up.
+     * They must not read input, see {@link CompiledPolicy#referencedNames}.
+     */
+    @SkipMethodTrace
+    public PolicyVisitor withFunctionCache(ExpressionCache functionCache) {
+        this.functionCache = functionCache;
+        return this;
+    }
+
+    @SkipMethodTrace
+    ExpressionCache getFunctionCache() {
+        return functionCache;
+    }
+
+    /**
+     * Outcomes of rule definitions shared by executions, keyed by the input values the rules read.
+     */
+    @SkipMethodTrace
+    public PolicyVisitor withRuleCache(RuleCache ruleCache) {
+        this.ruleCache = ruleCache;
+        return this;
+    }
+
+    @SkipMethodTrace
+    RuleCache getRuleCache() {
+        return ruleCache;
+    }
+
+    /**
+     * Evaluated policy rule definitions, by definition context, used instead of evaluating the definitions.
+     * They are shared by executions and must not be modified, see {@link RuleManager#getDecidedDefinitions}.
+     */
+    @SkipMethodTrace
+    public PolicyVisitor withPrecomputedRules(Map<ParseTree, Rule> precomputedRules) {
+        this.precomputedRules = precomputedRules;
+        return this;
+    }
+
+    /**
+     * Hash indexes for equality literals that iterate a collection, see {@link EqualityJoin}.
+     */
+    @SkipMethodTrace
+    public PolicyVisitor withJoinIndex(JoinIndex joinIndex) {
+        this.joinIndex = joinIndex;
+        return this;
+    }
+
+    /**
+     * Order of the literals of query bodies, see {@link LiteralPlanner}.
+     */
+    @SkipMethodTrace
+    public PolicyVisitor withLiteralPlanner(LiteralPlanner literalPlanner) {
+        this.literalPlanner = literalPlanner;
+        return this;
+    }
+
+    /**
+     * Calls of batch expressions of the execution this visitor runs for, see {@link BatchCalls}.
+     */
+    @SkipMethodTrace
+    public PolicyVisitor withBatchCalls(BatchCalls batchCalls) {
+        exprLibrary.batchCalls(batchCalls);
+        return this;
+    }
+
+    /**
+     * @return true when batch expressions were called and the policy must run again, see {@link BatchCalls}
+     */
+    public boolean runBatchCalls() {
+        return exprLibrary.runBatchCalls();
+    }
+
     @SkipMethodTrace
     public PolicyVisitor withStrictTypeCheckEnabled(boolean strictTypeCheckEnabled) {
         exprLibrary.strictTypeCheckEnabled(strictTypeCheckEnabled);
@@ -0,0 +1,126 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * Index over the definitions of a rule, keyed on equality literals that compare an input path to a constant.
+ * e.g. <code>allow { input.method == "GET"; input.path == "/x" }</code> is guarded by
+ * <code>[method] == "GET"</code> and <code>[path] == "/x"</code>.
+ * A definition whose guards do not match the input fails, so its body does not need to be evaluated.
+ *
+ * <p>This is a simplified take on the OPA rule indexer. Definitions are hashed on the input path that guards
+ * most of them, a single lookup selects the candidates and only their other guards are checked.
+ */
+@SkipMethodTrace
+final class RuleIndex {
+
+    private final List<JsonValue> primaryPath;
+    private final Map<JsonValue, List<Definition>> primaryDefinitions = new HashMap<>();
+    private final List<Definition> otherDefinitions = new ArrayList<>();
+    private final Set<ParseTree> indexedBodies = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * @param guardsByBody guards of each definition, definitions without guards are left out
+     */
+    RuleIndex(Map<ParseTree, Map<List<JsonValue>, JsonValue>> guardsByBody) {
+        primaryPath = findPrimaryPath(guardsByBody.values());
+        guardsByBody.forEach((body, guards) -> {
+            Definition definition = new Definition(body, guards);
+            JsonValue primaryValue = guards.get(primaryPath);
+            if (primaryValue != null) {
+                primaryDefinitions.computeIfAbsent(primaryValue, k -> new ArrayList<>()).add(definition);
+            } else {
+                otherDefinitions.add(definition);
+            }
+            indexedBodies.add(body);
+        });
+    }
+
+    /**
+     * Is the definition body covered by this index. Bodies that are not indexed always need to run.
+     */
+    boolean isIndexed(ParseTree ruleBody) {
+        return indexedBodies.contains(ruleBody);
+    }
+
+    /**
+     * Indexed definition bodies whose guards all match the input.
+     */
+    Set<ParseTree> candidates(JsonValue input) {
+        Set<ParseTree> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+        JsonValue primaryValue = resolvePath(input, primaryPath);
+        if (primaryValue != null) {
+            addCandidates(candidates, primaryDefinitions.getOrDefault(primaryValue, Collections.emptyList()), input);
+        }
+        addCandidates(candidates, otherDefinitions, input);
+        return candidates;
+    }
+
+    private static void addCandidates(Set<ParseTree> candidates, List<Definition> definitions, JsonValue input) {
+        for (Definition definition: definitions) {
+            if (definition.matches(input)) {
+                candidates.add(definition.body);
+            }
+        }
+    }
+
+    private static List<JsonValue> findPrimaryPath(Iterable<Map<List<JsonValue>, JsonValue>> allGuards) {
+        Map<List<JsonValue>, Integer> pathCounts = new LinkedHashMap<>();
+        allGuards.forEach(guards -> guards.keySet().forEach(path -> pathCounts.merge(path, 1, Integer::sum)));
+        return pathCounts.entrySet().stream()
+            .reduce((a, b) -> b.getValue() > a.getValue() ? b : a)
+            .map(Map.Entry::getKey)
+            .orElse(Collections.emptyList());
+    }
+
+    /**
+     * Same lookup as the interpreter does for <code>input.a.b</code>, null when the path is missing.
+     */
+    private static JsonValue resolvePath(JsonValue state, List<JsonValue> path) {
+        try {
+            for (JsonValue key: path) {
+                state = JsonResolver.resolveJsonRef(state, key);
+            }
+            return state;
+        } catch (RegoProcessorException.BadReferenceException e) {
+            return null;
+        }
+    }
+
+    private static final class Definition {
+        private final ParseTree body;
+        private final Map<List<JsonValue>, JsonValue> guards;
+
+        Definition(ParseTree body, Map<List<JsonValue>, JsonValue> guards) {
+            this.body = body;
+            this.guards = guards;
+        }
+
+        boolean matches(JsonValue input) {
+            for (Map.Entry<List<JsonValue>, JsonValue> guard: guards.entrySet()) {
+                if (!guard.getValue().equals(resolvePath(input, guard.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -3,23 +3,32 @@
 
 package com.amazon.antlr4.rego.interpreter.core;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import javax.json.JsonValue;
 
+import com.amazon.antlr4.rego.RegoParser.RruleContext;
 import com.amazon.antlr4.rego.interpreter.core.lib.KeyFinder;
+import com.amazon.antlr4.rego.interpreter.core.type.CompleteRule;
+import com.amazon.antlr4.rego.interpreter.core.type.ObjectRule;
 import com.amazon.antlr4.rego.interpreter.core.type.RegoFunction;
 import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
 import com.amazon.antlr4.rego.interpreter.core.type.Rule;
+import com.amazon.antlr4.rego.interpreter.core.type.SetRule;
 import com.amazon.antlr4.rego.interpreter.core.type.SomeRule;
 import com.amazon.antlr4.rego.interpreter.core.type.UnderscoreLocation;
 
 import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
 
 /**
  * Provides stacks of rules managed by RuleRunner.
@@ -32,10 +41,32 @@ import org.antlr.v4.runtime.ParserRuleContext;
  * <p>This class also provides an inverted implementation of the
  * <a href="https://en.wikipedia.org/wiki/Observer_pattern">Observer</a> design pattern.
  * Rules can <code>get</code> other Rules, which will block till the Rule being read has finished execution.
+ *
+ * <p>Rules can be registered as deferred. A deferred rule is evaluated the first time its value is read,
+ * in the root scope, and the result is kept for all later reads.
  */
 public class RuleManager {
 
     private SymbolTableStack<Set<Rule>> ruleStack = new SymbolTableStack<>();
+    private final Set<Rule> deferredRules = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Consumer<Rule> deferredRuleHandler = null;
+
+    /**
+     * New manager whose root scope holds the root scope rules of this one, e.g. input, data, imports and functions.
+     * The rules are shared, not copied, so the fork must only read the rules that are already evaluated.
+     */
+    public RuleManager fork() {
+        RuleManager fork = new RuleManager();
+        ruleStack.getGlobalTable().values().forEach(rules -> rules.forEach(fork::putRule));
+        return fork;
+    }
+
+    /**
+     * Can rules of this manager be evaluated on a fork, see {@link #fork()}.
+     */
+    public boolean isForkable() {
+        return true;
+    }
 
     public void pushScope(List<Rule> rules) {
         ruleStack.pushScope();
@@ -69,9 +100,48 @@ public class RuleManager {
 
     public JsonValue getRuleValue(String ruleName) {
         Set<Rule> rules = searchRuleStackRecursively(ruleName);
+        resolveDeferredRules(rules);
         return getRuleValue(ruleName, rules);
     }
 
+    /**
+     * Register rules to the current scope without evaluating them.
+     * The handler evaluates a rule when it is first read.
+     */
+    public void deferRules(Collection<Rule> rules, Consumer<Rule> handler) {
+        rules.forEach(r -> putRule(r));
+        deferredRules.addAll(rules);
+        deferredRuleHandler = handler;
+    }
+
+    public boolean isDeferred(Rule rule) {
+        return deferredRules.contains(rule);
+    }
+
+    /**
+     * Evaluate a deferred rule with local scopes hidden. Rules already evaluated, or being evaluated, are skipped.
+     */
+    public void resolveDeferredRule(Rule rule) {
+        if (!deferredRules.remove(rule)) {
+            return;
+        }
+        ruleStack.suspendScopes();
+        try {
+            deferredRuleHandler.accept(rule);
+        } finally {
+            ruleStack.resumeScopes();
+        }
+    }
+
+    private void resolveDeferredRules(Set<Rule> rules) {
+        if (deferredRules.isEmpty()) {
+            return;
+        }
+        for (Rule rule: new ArrayList<>(rules)) {
+            resolveDeferredRule(rule);
+        }
+    }
+
     protected JsonValue getRuleValue(String ruleName, Set<Rule> rules) {
         if (rules.size() == 0) {
             return newSomeRule(ruleName);
@@ -103,6 +173,14 @@ public class RuleManager {
         return (UnderscoreLocation) locationSet.iterator().next();
     }
 
+    /**
+     * Underscore location of the current scope, null when the scope is not a run of a query body.
+     */
+    public UnderscoreLocation findUnderscoreLocation() {
+        Set<Rule> locationSet = ruleStack.get(UnderscoreLocation.UNDERSCORE_RULE_KEY);
+        return locationSet == null ? null : (UnderscoreLocation) locationSet.iterator().next();
+    }
+
     public void putRule(Rule rule) {
         ruleStack.computeIfAbsent(rule.key, k -> new HashSet<>()).add(rule);
     }
@@ -144,6 +222,31 @@ public class RuleManager {
         return ruleStack.searchRuleStack(ruleName, () -> Collections.emptySet());
     }
 
+    /**
+     * Evaluated definitions of the named policy rules in the root scope, by definition context.
+     * Default values and functions are left out.
+     */
+    public Map<ParseTree, Rule> getDecidedDefinitions(Collection<String> ruleNames) {
+        Map<ParseTree, Rule> definitions = new IdentityHashMap<>();
+        for (String ruleName: ruleNames) {
+            for (Rule rule: ruleStack.getGlobalTable().getOrDefault(ruleName, Collections.emptySet())) {
+                if (!rule.isRequested() && isPolicyRuleDefinition(rule)) {
+                    definitions.put(rule.ruleContext, rule);
+                }
+            }
+        }
+        return definitions;
+    }
+
+    private static boolean isPolicyRuleDefinition(Rule rule) {
+        if (!(rule instanceof CompleteRule || rule instanceof SetRule || rule instanceof ObjectRule)
+            || !(rule.ruleContext instanceof RruleContext)) {
+            return false;
+        }
+        RruleContext rctx = (RruleContext) rule.ruleContext;
+        return rctx.rule_definition() != null && rctx.rule_definition().DEFAULT() == null;
+    }
+
     public Map<String, Set<Rule>> getRules(boolean withFunctions) {
         return ruleStack.getGlobalTable().entrySet().stream()
         .filter(es -> withFunctions || !(es.getValue().iterator().next() instanceof RegoFunction))
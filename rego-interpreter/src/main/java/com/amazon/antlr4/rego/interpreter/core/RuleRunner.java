@@ -4,8 +4,13 @@
 package com.amazon.antlr4.rego.interpreter.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import javax.json.JsonArray;
@@ -15,17 +20,19 @@ import com.amazon.antlr4.rego.RegoParser.Rule_bodyContext;
 import com.amazon.antlr4.rego.RegoParser.ItermContext;
 import com.amazon.antlr4.rego.RegoParser.LiteralContext;
 import com.amazon.antlr4.rego.RegoParser.User_functionContext;
+import com.amazon.antlr4.rego.interpreter.core.lib.ExpressionCache;
 import com.amazon.antlr4.rego.interpreter.core.type.Rule;
 import com.amazon.antlr4.rego.interpreter.core.type.SomeRule;
+import com.amazon.antlr4.rego.interpreter.core.type.UnderscoreLocation;
 import com.amazon.antlr4.rego.interpreter.core.with.WithRuleRunner;
 import com.amazon.antlr4.rego.interpreter.core.type.CompleteRule;
 import com.amazon.antlr4.rego.interpreter.core.type.IndexAssignment;
+import com.amazon.antlr4.rego.interpreter.core.type.LiteralTrail;
 import com.amazon.antlr4.rego.interpreter.core.type.RegoFunction;
 import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
 
 import org.antlr.v4.runtime.RuleContext;
 import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.TerminalNode;
 
 /**
  * Provides parallel and scoped rule execution.
@@ -37,6 +44,7 @@ class RuleRunner {
 
     private final RuleManager ruleManager;
     private final PolicyVisitor visitor;
+    private final Map<List<Object>, Optional<JsonValue>> functionResults = new HashMap<>();
 
     RuleRunner(PolicyVisitor visitor, RuleManager ruleScopeStack) {
         this.ruleManager = ruleScopeStack;
@@ -50,10 +58,64 @@ class RuleRunner {
         new ThreadedRuleRunner(visitor, ruleManager, runRequests, shortCircuit).runAllRules();
     }
 
+    /**
+     * Executes Query.Literal[] of a query body. On later runs of the body's underscore location,
+     * literals that still hold from the previous run are not evaluated again, see {@link LiteralTrail}.
+     */
+    public void runQueryRules(ParseTree query, List<Rule> runRequests) {
+        UnderscoreLocation underscore = ruleManager.findUnderscoreLocation();
+        LiteralTrail trail = underscore != null ? underscore.claimTrail(query) : null;
+        if (trail == null) {
+            runAllRules(runRequests, true);
+            return;
+        }
+        List<Rule> rules = trail.resume(runRequests, underscore.getLastAdvanced());
+        new ThreadedRuleRunner(visitor, ruleManager, rules, true).runAllRules(underscore, trail);
+    }
+
+    /**
+     * Executes Policy.RRule[] definitions on demand, see {@link ThreadedRuleRunner#runAllRulesOnDemand(Predicate)}.
+     */
+    public void runPolicyRules(List<Rule> runRequests, Predicate<Rule> isTarget) {
+        new ThreadedRuleRunner(visitor, ruleManager, runRequests, false).runAllRulesOnDemand(isTarget);
+    }
+
     /**
      * Run a user function with initialized arguments.
+     *
+     * <p>Results are kept for the rest of the execution, keyed by function name and argument values.
+     * Functions that read no input may also share results with other executions,
+     * see {@link PolicyVisitor#withFunctionCache}. Under a <code>with</code> modifier functions always run.
      */
     public JsonValue executeRegoFunction(String functionName, List<JsonValue> terms) {
+        if (!ruleManager.isForkable()) {
+            return computeRegoFunction(functionName, terms);
+        }
+        List<Object> call = Arrays.asList(functionName, terms);
+        Optional<JsonValue> result = functionResults.get(call);
+        if (result == null) {
+            ExpressionCache functionCache = visitor.getFunctionCache();
+            result = Optional.ofNullable(functionCache != null && functionCache.isCached(functionName)
+                ? functionCache.get(functionName, terms, () -> computeDefinedRegoFunction(functionName, terms))
+                : computeDefinedRegoFunction(functionName, terms));
+            functionResults.put(call, result);
+        }
+        return result.orElseThrow(() -> new RegoProcessorException.RuleEvaluationException(
+            "Failed to evaluate " + functionName));
+    }
+
+    /**
+     * @return value or null when no definition of the function succeeded
+     */
+    private JsonValue computeDefinedRegoFunction(String functionName, List<JsonValue> terms) {
+        try {
+            return computeRegoFunction(functionName, terms);
+        } catch (RegoProcessorException.RuleEvaluationException e) {
+            return null;
+        }
+    }
+
+    private JsonValue computeRegoFunction(String functionName, List<JsonValue> terms) {
         JsonArray functions = findFunctionsByName(functionName);
         List<JsonValue> returns = functions.stream()
             .map(f -> executeRegoFunction((RegoFunction) f, terms))
@@ -85,10 +147,10 @@ class RuleRunner {
 
     private JsonValue executeRegoFunction(RegoFunction userFunction, List<JsonValue> terms) {
         User_functionContext ctx = userFunction.getUserFunction();
-        List<TerminalNode> argNames = ctx.dest_args().VAR();
+        List<String> argNames = visitor.getCompiledPolicy().argumentNames(ctx);
         List<Rule> initRules = new ArrayList<>();
         for (int i = 0; i < argNames.size(); i++) {
-            initRules.add(new CompleteRule(argNames.get(i).getText(), null, terms.get(i)));
+            initRules.add(new CompleteRule(argNames.get(i), null, terms.get(i)));
         }
         return executeFunctionElse(initRules, ctx.rule_body(), ctx.iterm());
     }
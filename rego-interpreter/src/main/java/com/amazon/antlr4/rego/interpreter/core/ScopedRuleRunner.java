@@ -3,11 +3,26 @@
 
 package com.amazon.antlr4.rego.interpreter.core;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import javax.json.JsonArray;
+
+import com.amazon.antlr4.rego.RegoParser.Rule_bodyContext;
+import com.amazon.antlr4.rego.RegoParser.RruleContext;
+
+import com.amazon.antlr4.rego.interpreter.core.type.CompleteRule;
 import com.amazon.antlr4.rego.interpreter.core.type.IndexAssignment;
+import com.amazon.antlr4.rego.interpreter.core.type.ObjectRule;
 import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
 import com.amazon.antlr4.rego.interpreter.core.type.Rule;
+import com.amazon.antlr4.rego.interpreter.core.type.SetRule;
 import com.amazon.antlr4.rego.interpreter.core.type.UnderscoreLocation;
 
 import org.antlr.v4.runtime.RuleContext;
@@ -19,6 +34,10 @@ import org.antlr.v4.runtime.tree.ParseTree;
  * Since several variables need to be referenced throught this code, they are made available as final members.
  * Which forces a new instance of this class for each execution of a Rule_body.
  *
+ * <p>With an iteration pool, a loop over a single large array in a partial policy rule is split in chunks.
+ * Each chunk runs in its own visitor and scope with a slice of the underscore and a copy of the destination rule.
+ * The copies are merged into the destination rule in chunk order.
+ *
  * This class implements the <a href="https://en.wikipedia.org/wiki/Mediator_pattern">Mediator</a> design pattern.
  * A quick look at the constructor will confirm this role.
  */
@@ -33,6 +52,11 @@ class ScopedRuleRunner {
     private final boolean isPartial;
     private final UnderscoreLocation underscore = new UnderscoreLocation();
 
+    /**
+     * Smallest number of loop values worth a task of its own.
+     */
+    private static final int MIN_CHUNK_SIZE = 64;
+
     ScopedRuleRunner(PolicyVisitor visitor, RuleManager ruleScopeStack, List<Rule> initRules,
         RuleContext ruleContext, Rule destRule, IndexAssignment<ParseTree> ia, boolean isPartial
     ) {
@@ -46,15 +70,17 @@ class ScopedRuleRunner {
     }
 
     /**
-     * Run rules in a bubble:
+     * Run rules in a bubble, unless the rule index shows the body cannot match:
      * In loop for _ variables:
      *   Initialize stack with initial rules,
      *   Process body + reference,
      *   Pop stack and save results.
      */
     public void executeRuleContext() {
-        runInLocalScope(underscore);
-        executeUnderscoreLoops();
+        if (visitor.isIndexCandidate(destRule.key, ruleContext)) {
+            runInLocalScope(underscore);
+            executeUnderscoreLoops();
+        }
         if (!destRule.hasValue()) {
             if (!isPartial) {
                 throw new RegoProcessorException.RuleEvaluationException("No results for rule: " + destRule.key);
@@ -64,14 +90,89 @@ class ScopedRuleRunner {
     }
 
     private void executeUnderscoreLoops() {
-        while (underscore.isReadyForNext()) {
+        if (!isDecided() && isParallelLoop()) {
+            executeUnderscoreLoopsInParallel();
+            return;
+        }
+        while (!isDecided() && underscore.isReadyForNext()) {
             runInLocalScope(underscore);
         }
     }
 
+    /**
+     * Only a single loop in the body of a partial set or object policy rule is split. The body must have a single
+     * loop site, see {@link CompiledPolicy#loopSites}, so that no value of the loop can find a nested one.
+     * Nested loops, comprehensions, functions and bodies run for a <code>with</code> modifier stay sequential.
+     */
+    private boolean isParallelLoop() {
+        JsonArray array = underscore.getSingleLoopArray();
+        return visitor.getIterationPool() != null
+            && array != null && array.size() >= visitor.getIterationThreshold()
+            && (destRule instanceof SetRule || destRule instanceof ObjectRule)
+            && destRule.ruleContext instanceof RruleContext
+            && ruleContext instanceof Rule_bodyContext
+            && visitor.getCompiledPolicy().loopSites(((Rule_bodyContext) ruleContext).query()) == 1
+            && ruleManager.isForkable();
+    }
+
+    /**
+     * The first value was run already, the remaining values are split in chunks.
+     */
+    private void executeUnderscoreLoopsInParallel() {
+        resolveDependencies();
+        ForkJoinPool pool = visitor.getIterationPool();
+        int size = underscore.getSingleLoopArray().size();
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (size - 1) / (pool.getParallelism() * 2) + 1);
+        List<Rule> chunkRules = new ArrayList<>();
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int from = 1; from < size; from += chunkSize) {
+            UnderscoreLocation chunk = underscore.slice(from, Math.min(from + chunkSize, size));
+            Rule chunkRule = destRule.copy();
+            PolicyVisitor worker = new PolicyVisitor(visitor);
+            ScopedRuleRunner runner = new ScopedRuleRunner(worker, worker.getRuleManager(),
+                initRules, ruleContext, chunkRule, ia, isPartial);
+            chunkRules.add(chunkRule);
+            tasks.add(pool.submit(() -> runner.executeSingleLoop(chunk)));
+        }
+        ThreadedRuleRunner.awaitAll(tasks);
+        chunkRules.stream().filter(Rule::isSuccessful).forEach(destRule::addValues);
+    }
+
+    private void executeSingleLoop(UnderscoreLocation chunk) {
+        runInLocalScope(chunk);
+        while (chunk.isReadyForNext()) {
+            runInLocalScope(chunk);
+        }
+    }
+
+    /**
+     * Deferred rules are evaluated on demand in the root scope, which only the thread owning it can do.
+     * So the rules the loop may read are evaluated before the chunks fork the root scope.
+     */
+    private void resolveDependencies() {
+        CompiledPolicy compiledPolicy = visitor.getCompiledPolicy();
+        Set<String> visited = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(compiledPolicy.ruleDependencies(destRule.key));
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            if (visited.add(name)) {
+                new ArrayList<>(ruleManager.searchRuleStackRecursively(name)).forEach(ruleManager::resolveDeferredRule);
+                pending.addAll(compiledPolicy.ruleDependencies(name));
+            }
+        }
+    }
+
+    /**
+     * A complete rule without assignment can only be true, the remaining permutations cannot change it.
+     */
+    private boolean isDecided() {
+        return destRule instanceof CompleteRule && ia.assignContext == null && destRule.isSuccessful();
+    }
+
     private void runInLocalScope(UnderscoreLocation job) {
         ruleManager.pushScope(initRules);
         try {
+            job.startRun();
             ruleManager.putRule(job);
             if (ruleContext != null) {
                 visitor.visit(ruleContext);
@@ -28,6 +28,11 @@ public final class SymbolTableStack<T> {
     private RuleStack<T> ruleStack = new RuleStack<>();
     { ruleStack.add(rootScope); }
 
+    /**
+     * Stacks set aside while a root scope symbol is evaluated on demand.
+     */
+    private final Stack<RuleStack<T>> suspendedStacks = new Stack<>();
+
     public void pushScope() {
         ruleStack.add(new RuleScopeImpl<T>());
     }
@@ -36,6 +41,19 @@ public final class SymbolTableStack<T> {
         ruleStack.pop();
     }
 
+    /**
+     * Hide all local scopes. Only the root scope remains visible till {@link #resumeScopes()}.
+     */
+    public void suspendScopes() {
+        suspendedStacks.push(ruleStack);
+        ruleStack = new RuleStack<>();
+        ruleStack.add(rootScope);
+    }
+
+    public void resumeScopes() {
+        ruleStack = suspendedStacks.pop();
+    }
+
     public T get(String key) {
         RuleScope<T> ruleScope = ruleStack.peek();
         return ruleScope.get(key);
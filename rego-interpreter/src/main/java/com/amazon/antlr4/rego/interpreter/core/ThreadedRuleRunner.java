@@ -3,13 +3,36 @@
 
 package com.amazon.antlr4.rego.interpreter.core;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.RegoParser.Rule_definitionContext;
+import com.amazon.antlr4.rego.RegoParser.Rule_headContext;
+import com.amazon.antlr4.rego.RegoParser.RruleContext;
+import com.amazon.antlr4.rego.interpreter.core.lib.RuleCache;
+import com.amazon.antlr4.rego.interpreter.core.type.CompleteRule;
+import com.amazon.antlr4.rego.interpreter.core.type.LiteralTrail;
 import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
 import com.amazon.antlr4.rego.interpreter.core.type.Rule;
+import com.amazon.antlr4.rego.interpreter.core.type.UnderscoreLocation;
 
 /**
  * Executes Policy.RRule[] or Query.Literal[] definitions in sequential order.
+ * With a rule pool, groups of policy rules that don't reference each other run in parallel,
+ * each in its own visitor and rule manager, see {@link CompiledPolicy#ruleGroup(String)}.
  * Executions are scoped to a new RuleFrame but the results are collected in the current top level RuleFrame.
  * Since the runRequests need to be referenced throught this code, they are made available as a final member.
  * Which forces a new instance of this class for each list of requests.
@@ -45,6 +68,172 @@ class ThreadedRuleRunner {
         runPendingRules();
     }
 
+    /**
+     * Literals reused from the previous run come evaluated, the others are run in order.
+     * The choice points of the underscore location read by each literal are recorded on the trail.
+     */
+    public void runAllRules(UnderscoreLocation underscore, LiteralTrail trail) {
+        if (runRequests.size() == 0) {
+            return;
+        }
+        registerSuccessfulRules();
+        for (int i = trail.getReused(); i < runRequests.size(); i++) {
+            Rule rule = runRequests.get(i);
+            underscore.takeLastRead();
+            if (rule.isRequested()) {
+                handleRule(rule);
+            }
+            trail.record(i, underscore.takeLastRead());
+        }
+    }
+
+    /**
+     * Policy rules are registered as deferred and run in dependency order.
+     * A rule read before its turn is evaluated on demand by the {@link RuleManager} and its value is kept.
+     * Default rules run first, so a default value is in place before its rule can be read.
+     * Only target rules and default values are run, the others stay deferred and run only if a target reads them.
+     * With a rule cache, definitions of cached rules take their outcome from earlier executions, see {@link RuleCache}.
+     */
+    public void runAllRulesOnDemand(Predicate<Rule> isTarget) {
+        if (runRequests.size() == 0) {
+            return;
+        }
+        registerDecidedRules();
+        List<Rule> pendingRules = orderPendingRules();
+        if (visitor.getRulePool() != null) {
+            pendingRules = runRuleGroupsInParallel(pendingRules, isTarget);
+        }
+        ruleManager.deferRules(pendingRules, this::handleCachedRule);
+        pendingRules.stream()
+            .filter(rule -> isDefaultRule(rule) || isTarget.test(rule))
+            .forEach(ruleManager::resolveDeferredRule);
+    }
+
+    /**
+     * Groups holding a target or default rule are evaluated as tasks on the rule pool.
+     * Once all tasks are done, the root scope rules of each group are put in this rule manager in policy order,
+     * so the result doesn't depend on task timing. The first error in policy order is thrown.
+     *
+     * @return rules of the groups that were not run
+     */
+    private List<Rule> runRuleGroupsInParallel(List<Rule> pendingRules, Predicate<Rule> isTarget) {
+        CompiledPolicy compiledPolicy = visitor.getCompiledPolicy();
+        Map<Integer, List<Rule>> groups = new TreeMap<>();
+        pendingRules.forEach(rule -> groups.computeIfAbsent(
+            compiledPolicy.ruleGroup(rule.key), k -> new ArrayList<>()).add(rule));
+        List<List<Rule>> activeGroups = groups.values().stream()
+            .filter(group -> group.stream().anyMatch(rule -> isDefaultRule(rule) || isTarget.test(rule)))
+            .collect(Collectors.toList());
+        if (activeGroups.size() < 2 || groups.containsKey(-1)) {
+            return pendingRules;
+        }
+
+        List<PolicyVisitor> workers = new ArrayList<>();
+        List<Future<?>> tasks = new ArrayList<>();
+        for (List<Rule> group: activeGroups) {
+            PolicyVisitor worker = new PolicyVisitor(visitor);
+            workers.add(worker);
+            tasks.add(visitor.getRulePool().submit(() -> new ThreadedRuleRunner(
+                worker, worker.getRuleManager(), group, false).runAllRulesOnDemand(isTarget)));
+        }
+        awaitAll(tasks);
+        for (int i = 0; i < tasks.size(); i++) {
+            mergeRuleGroup(workers.get(i).getRuleManager(), activeGroups.get(i));
+        }
+        Set<Rule> ranRules = Collections.newSetFromMap(new IdentityHashMap<>());
+        activeGroups.forEach(ranRules::addAll);
+        return pendingRules.stream()
+            .filter(rule -> !ranRules.contains(rule))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Wait for all tasks, then throw the error of the first failed task in list order.
+     */
+    static void awaitAll(List<Future<?>> tasks) {
+        RuntimeException error = null;
+        for (Future<?> task: tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Default rules add the rule holding the default value, so all rules under the group's names are taken.
+     */
+    private void mergeRuleGroup(RuleManager groupRuleManager, List<Rule> group) {
+        group.stream()
+            .map(rule -> rule.key)
+            .distinct()
+            .forEach(name -> groupRuleManager.searchRuleStackRecursively(name).forEach(ruleManager::putRule));
+    }
+
+    private List<Rule> orderPendingRules() {
+        Map<String, Integer> ruleRanks = new HashMap<>();
+        List<String> ruleOrder = visitor.getCompiledPolicy().ruleOrder();
+        for (int i = 0; i < ruleOrder.size(); i++) {
+            ruleRanks.put(ruleOrder.get(i), i);
+        }
+        return runRequests.stream()
+            .filter(Rule::isRequested)
+            .sorted(Comparator.comparingInt(rule -> getRank(ruleRanks, rule)))
+            .collect(Collectors.toList());
+    }
+
+    private static int getRank(Map<String, Integer> ruleRanks, Rule rule) {
+        if (isDefaultRule(rule)) {
+            return -1;
+        }
+        return ruleRanks.getOrDefault(rule.key, Integer.MAX_VALUE);
+    }
+
+    private static boolean isDefaultRule(Rule rule) {
+        if (!(rule.ruleContext instanceof RruleContext)) {
+            return false;
+        }
+        RruleContext rctx = (RruleContext) rule.ruleContext;
+        return rctx.rule_definition() != null && rctx.rule_definition().DEFAULT() != null;
+    }
+
+    /**
+     * A definition that can only make its rule true is redundant once another definition did.
+     * Definitions calling registered expressions still run, for the side effects of the calls.
+     */
+    private boolean isDecidedByOtherDefinition(Rule rule) {
+        if (!canOnlyBeTrue(rule)) {
+            return false;
+        }
+        return ruleManager.searchRuleStackRecursively(rule.key).stream()
+            .anyMatch(other -> other != rule && other instanceof CompleteRule && other.isSuccessful()
+                && JsonValue.TRUE.equals(other.getValue()))
+            && !visitor.callsUserExpression(rule.ruleContext);
+    }
+
+    private static boolean canOnlyBeTrue(Rule rule) {
+        if (!(rule instanceof CompleteRule) || !(rule.ruleContext instanceof RruleContext)) {
+            return false;
+        }
+        Rule_definitionContext dctx = ((RruleContext) rule.ruleContext).rule_definition();
+        if (dctx == null || dctx.DEFAULT() != null || dctx.rule_body() == null) {
+            return false;
+        }
+        Rule_headContext hctx = dctx.rule_head();
+        return hctx.rule_args() == null && hctx.rule_index() == null && hctx.rule_assignment() == null
+            && !CompiledPolicy.hasElse(dctx.rule_body());
+    }
+
     private void runPendingRules() {
         runRequests.stream()
             .filter(Rule::isRequested)
@@ -57,10 +246,30 @@ class ThreadedRuleRunner {
             .forEach(rule -> ruleManager.putRule(rule));
     }
 
+    /**
+     * Policy rules may come evaluated, see {@link PolicyVisitor#withPrecomputedRules}.
+     * Failed ones are registered too, so reading them is undefined instead of unknown.
+     */
+    private void registerDecidedRules() {
+        runRequests.stream()
+            .filter(rule -> !rule.isRequested())
+            .forEach(rule -> ruleManager.putRule(rule));
+    }
+
+    private void handleCachedRule(Rule rule) {
+        RuleCache ruleCache = visitor.getRuleCache();
+        if (ruleCache == null || !ruleManager.isForkable() || isDefaultRule(rule) || !ruleCache.isCached(rule)) {
+            handleRule(rule);
+            return;
+        }
+        ruleManager.putRule(rule);
+        ruleCache.evaluate(rule, ruleManager.getRuleValue("input"), () -> handleRule(rule));
+    }
+
     private void handleRule(Rule rule) {
         try {
             ruleManager.putRule(rule);
-            if (!rule.isSuccessful()) {
+            if (!rule.isSuccessful() && !isDecidedByOtherDefinition(rule)) {
                 visitor.visit(rule.ruleContext);
             }
         } catch (RegoProcessorException.UncheckedBadPolicyException e) {
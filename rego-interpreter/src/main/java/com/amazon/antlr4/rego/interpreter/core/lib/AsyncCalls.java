@@ -0,0 +1,90 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
+import com.amazon.antlr4.rego.interpreter.type.AsyncExpression;
+
+/**
+ * Calls of {@link AsyncExpression}s made by one asynchronous execution, kept across its runs.
+ *
+ * <p>A call whose future isn't done is recorded as pending and is undefined in the current run, like a pending
+ * call of {@link BatchCalls}. At the end of the run {@link #suspend} waits for all pending calls at once,
+ * the next run of the execution gets their results. The calls are shared by the threads of the execution.
+ */
+@SkipMethodTrace
+public final class AsyncCalls {
+
+    private final Map<List<Object>, CompletableFuture<JsonValue>> calls = new ConcurrentHashMap<>();
+    private final Set<CompletableFuture<JsonValue>> pending = ConcurrentHashMap.newKeySet();
+
+    public JsonValue get(String name, List<JsonValue> terms, Supplier<CompletableFuture<JsonValue>> call) {
+        CompletableFuture<JsonValue> result = calls.computeIfAbsent(Arrays.asList(name, terms), k -> call.get());
+        if (!result.isDone()) {
+            pending.add(result);
+            throw new RegoProcessorException.PendingCallException(name);
+        }
+        return join(result);
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Stop the execution until every call found pending in this run completes.
+     */
+    public Suspension suspend() {
+        List<CompletableFuture<JsonValue>> waiting = new ArrayList<>(pending);
+        pending.removeAll(waiting);
+        return new Suspension(CompletableFuture.allOf(waiting.toArray(new CompletableFuture<?>[0])));
+    }
+
+    /**
+     * Result of a call, errors are thrown as they were raised by the expression.
+     */
+    public static JsonValue join(CompletableFuture<JsonValue> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Ends a run of the execution that found pending calls, the execution runs again once they complete.
+     * Not an evaluation error, thrown by the executor after the run.
+     */
+    public static final class Suspension extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient CompletableFuture<Void> pending;
+
+        Suspension(CompletableFuture<Void> pending) {
+            super("Waiting for asynchronous expressions", null, false, false);
+            this.pending = pending;
+        }
+
+        public CompletableFuture<Void> getPending() {
+            return pending;
+        }
+    }
+}
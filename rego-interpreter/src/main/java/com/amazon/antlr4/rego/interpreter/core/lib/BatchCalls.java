@@ -0,0 +1,91 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
+import com.amazon.antlr4.rego.interpreter.type.BatchExpression;
+
+/**
+ * Calls of {@link BatchExpression}s made by one execution, kept across its runs.
+ *
+ * <p>A call without result is recorded as pending and is undefined in the current run.
+ * {@link #run} calls each expression once with all its pending arguments, the next run of the execution
+ * finds the results. Results of the other registered expressions are kept too, so that each is called once
+ * per execution and not once per run. The calls are shared by the threads of the execution.
+ */
+@SkipMethodTrace
+public final class BatchCalls {
+
+    private final Map<List<Object>, Optional<JsonValue>> results = new ConcurrentHashMap<>();
+    private final Map<String, Set<List<JsonValue>>> pending = new ConcurrentHashMap<>();
+    private final Map<String, BatchExpression> expressions = new ConcurrentHashMap<>();
+    private final Map<List<Object>, Optional<JsonValue>> resolved = new ConcurrentHashMap<>();
+
+    public JsonValue get(String name, BatchExpression expr, List<JsonValue> terms) {
+        Optional<JsonValue> result = results.get(Arrays.asList(name, terms));
+        if (result != null) {
+            return result.orElse(null);
+        }
+        expressions.putIfAbsent(name, expr);
+        pending.computeIfAbsent(name, k -> Collections.synchronizedSet(new LinkedHashSet<>())).add(terms);
+        throw new RegoProcessorException.PendingCallException(name);
+    }
+
+    /**
+     * Result of a call of another registered expression, from an earlier run when there was one.
+     * Errors are not kept, the call is repeated by the next run.
+     */
+    public JsonValue resolve(String name, List<JsonValue> terms, Supplier<JsonValue> call) {
+        List<Object> key = Arrays.asList(name, terms);
+        Optional<JsonValue> result = resolved.get(key);
+        if (result == null) {
+            result = Optional.ofNullable(call.get());
+            resolved.putIfAbsent(key, result);
+        }
+        return result.orElse(null);
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Call each expression with its pending arguments.
+     *
+     * @return false when there were no pending calls
+     */
+    public boolean run(JsonObject inputJson, JsonObject dataJson, Map<String, Object> contextMap) {
+        if (!hasPending()) {
+            return false;
+        }
+        for (String name: new ArrayList<>(pending.keySet())) {
+            List<List<JsonValue>> argsList = new ArrayList<>(pending.remove(name));
+            List<JsonValue> values = expressions.get(name).run(argsList, inputJson, dataJson, contextMap);
+            if (values == null || values.size() != argsList.size()) {
+                throw new RegoProcessorException.UncheckedBadPolicyException(
+                    name + " returned " + (values == null ? 0 : values.size()) + " results for "
+                    + argsList.size() + " calls");
+            }
+            for (int i = 0; i < argsList.size(); i++) {
+                results.put(Arrays.asList(name, argsList.get(i)), Optional.ofNullable(values.get(i)));
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,121 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.json.JsonArray;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
+import com.amazon.antlr4.rego.interpreter.core.type.Rule;
+
+/**
+ * Hash index over an array, from the value at a path of each element to the positions of the elements holding it.
+ * Values are keyed by their JSON text, which is how <code>==</code> compares anything but two arrays.
+ * Elements missing the path are left out.
+ *
+ * <p>Instances are immutable. {@link #update(JsonArray)} indexes a new version of the array, elements kept from
+ * the previous version are not looked up again and the positions of untouched values are shared with the
+ * previous index.
+ */
+@SkipMethodTrace
+public final class CollectionIndex {
+
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final JsonArray collection;
+    private final List<JsonValue> path;
+    private final String[] keys;
+    private final Map<String, int[]> positions;
+
+    public CollectionIndex(JsonArray collection, List<JsonValue> path) {
+        this.collection = collection;
+        this.path = path;
+        this.keys = new String[collection.size()];
+        Map<String, List<Integer>> grouped = new HashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keyOf(collection.get(i), path);
+            if (keys[i] != null) {
+                grouped.computeIfAbsent(keys[i], k -> new ArrayList<>()).add(i);
+            }
+        }
+        this.positions = new HashMap<>();
+        grouped.forEach((key, list) -> positions.put(key, list.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    private CollectionIndex(JsonArray collection, List<JsonValue> path, String[] keys, Map<String, int[]> positions) {
+        this.collection = collection;
+        this.path = path;
+        this.keys = keys;
+        this.positions = positions;
+    }
+
+    public JsonArray getCollection() {
+        return collection;
+    }
+
+    /**
+     * Positions, in ascending order, of the elements whose value at the path may equal the probe.
+     *
+     * @return null when the probe cannot be looked up, e.g. an array compared as a set
+     */
+    public int[] positions(JsonValue probe) {
+        if (probe instanceof JsonArray || probe instanceof Rule) {
+            return null;
+        }
+        return positions.getOrDefault(probe.toString(), NO_POSITIONS);
+    }
+
+    /**
+     * Index of a new version of the array. The value of an element found in the previous version, the same instance
+     * at any position, is taken from the previous index, the others are looked up. Values whose positions didn't
+     * change keep their positions array, so an insertion only regroups the values of the elements after it.
+     */
+    public CollectionIndex update(JsonArray newCollection) {
+        if (newCollection == collection) {
+            return this;
+        }
+        Map<JsonValue, String> previousKeys = new IdentityHashMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            previousKeys.put(collection.get(i), keys[i]);
+        }
+        String[] newKeys = new String[newCollection.size()];
+        Map<String, List<Integer>> grouped = new HashMap<>();
+        for (int i = 0; i < newKeys.length; i++) {
+            JsonValue element = newCollection.get(i);
+            newKeys[i] = previousKeys.containsKey(element) ? previousKeys.get(element) : keyOf(element, path);
+            if (newKeys[i] != null) {
+                grouped.computeIfAbsent(newKeys[i], k -> new ArrayList<>()).add(i);
+            }
+        }
+        Map<String, int[]> newPositions = new HashMap<>();
+        grouped.forEach((key, list) -> {
+            int[] keyPositions = list.stream().mapToInt(Integer::intValue).toArray();
+            int[] previous = positions.get(key);
+            newPositions.put(key, Arrays.equals(previous, keyPositions) ? previous : keyPositions);
+        });
+        return new CollectionIndex(newCollection, path, newKeys, newPositions);
+    }
+
+    /**
+     * Same lookup as the interpreter does for <code>element.a.b</code>, null when the path is missing.
+     */
+    private static String keyOf(JsonValue state, List<JsonValue> path) {
+        try {
+            for (JsonValue key: path) {
+                state = JsonResolver.resolveJsonRef(state, key);
+            }
+            return state.toString();
+        } catch (RegoProcessorException.BadReferenceException e) {
+            return null;
+        }
+    }
+}
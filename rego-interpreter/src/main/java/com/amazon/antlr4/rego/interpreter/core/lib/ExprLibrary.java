@@ -4,6 +4,8 @@
 package com.amazon.antlr4.rego.interpreter.core.lib;
 
 import java.lang.reflect.AnnotatedType;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +30,8 @@ import com.amazon.antlr4.rego.interpreter.core.type.BaseExpression;
 import com.amazon.antlr4.rego.interpreter.core.type.ExpressionArguments;
 import com.amazon.antlr4.rego.interpreter.core.type.RegoFunction;
 import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
+import com.amazon.antlr4.rego.interpreter.type.AsyncExpression;
+import com.amazon.antlr4.rego.interpreter.type.BatchExpression;
 import com.amazon.antlr4.rego.interpreter.type.ContextAwareExpression;
 import com.amazon.antlr4.rego.interpreter.type.ContextAwarePersistentExpression;
 import com.amazon.antlr4.rego.interpreter.type.Expression;
@@ -43,27 +47,34 @@ import com.amazon.antlr4.rego.interpreter.type.Expression;
  *
  * <p>This class will prioritize user registered functions over built-in functions.
  * For prioritization with Rego functions see {@link PolicyVisitor#visitExpr_call()}.
+ *
+ * <p>A library is created per execution and confined to its thread, including the execution cache.
+ * The built-in expressions are stateless and shared. User expressions are shared by all executions of an executor.
  */
 @SkipMethodTrace
 public final class ExprLibrary {
 
     public final Map<String, Object> userContext;
     private final Map<String, BaseExpression> userExpressions = new HashMap<>();
-    private final Map<Integer, JsonValue> executionCache = new HashMap<>();
+    private final Map<List<Object>, JsonValue> executionCache = new HashMap<>();
     private final JsonObject inputJson;
     private final JsonObject dataJson;
+    private AsyncCalls asyncCalls = null;
+    private BatchCalls batchCalls = null;
+    private ExpressionCache expressionCache = null;
 
-    private static final Map<String, Expression> EXPRESSIONS = new HashMap<>();
-
+    private static final Map<String, Expression> EXPRESSIONS;
     static {
-        EXPRESSIONS.putAll(Aggregates.EXPRESSIONS);
-        EXPRESSIONS.putAll(Array.EXPRESSIONS);
-        EXPRESSIONS.putAll(EncodingBase64.EXPRESSIONS);
-        EXPRESSIONS.putAll(EncodingJson.EXPRESSIONS);
-        EXPRESSIONS.putAll(Numbers.EXPRESSIONS);
-        EXPRESSIONS.putAll(Objects.EXPRESSIONS);
-        EXPRESSIONS.putAll(Set.EXPRESSIONS);
-        EXPRESSIONS.putAll(Strings.EXPRESSIONS);
+        Map<String, Expression> expressions = new HashMap<>();
+        expressions.putAll(Aggregates.EXPRESSIONS);
+        expressions.putAll(Array.EXPRESSIONS);
+        expressions.putAll(EncodingBase64.EXPRESSIONS);
+        expressions.putAll(EncodingJson.EXPRESSIONS);
+        expressions.putAll(Numbers.EXPRESSIONS);
+        expressions.putAll(Objects.EXPRESSIONS);
+        expressions.putAll(Set.EXPRESSIONS);
+        expressions.putAll(Strings.EXPRESSIONS);
+        EXPRESSIONS = Collections.unmodifiableMap(expressions);
     }
 
     public ExprLibrary(Map<String, Object> userContext, JsonObject inputJson, JsonObject dataJson) {
@@ -72,6 +83,18 @@ public final class ExprLibrary {
         this.dataJson = dataJson;
     }
 
+    /**
+     * Library for another thread of the same execution. Expressions and context are shared, the cache is not.
+     */
+    public ExprLibrary(ExprLibrary library) {
+        this(library.userContext, library.inputJson, library.dataJson);
+        userExpressions.putAll(library.userExpressions);
+        strictTypeCheckEnabled = library.strictTypeCheckEnabled;
+        asyncCalls = library.asyncCalls;
+        batchCalls = library.batchCalls;
+        expressionCache = library.expressionCache;
+    }
+
     public JsonValue executeJavaFunction(String name, List<JsonValue> terms) {
         if (!isJavaFunction(name)) {
             throw new RegoProcessorException.UncheckedBadPolicyException("Unknown expression: " + name);
@@ -80,32 +103,25 @@ public final class ExprLibrary {
     }
 
     private JsonValue cachedExecutionResults(String name, List<JsonValue> terms) {
-        final int requestHash = hashRequest(name, terms);
-        if (executionCache.containsKey(requestHash)) {
-            return executionCache.get(requestHash);
+        final List<Object> request = Arrays.asList(name, terms);
+        if (executionCache.containsKey(request)) {
+            return executionCache.get(request);
         }
-        JsonValue result = computeExpression(name, terms);
-        executionCache.put(requestHash, result);
+        JsonValue result = expressionCache != null && expressionCache.isCached(name)
+            ? expressionCache.get(name, terms, () -> computeExpression(name, terms))
+            : computeExpression(name, terms);
+        executionCache.put(request, result);
         return result;
     }
 
     private JsonValue computeExpression(String name, List<JsonValue> terms) {
         BaseExpression expr = userExpressions.get(name);
         if (expr != null) {
-            return executeUserExpression(expr, terms);
+            return executeUserExpression(name, expr, terms);
         }
         return executeInBuiltExpression(name, terms);
     }
 
-    // based on Eclipse sample code
-    private int hashRequest(String name, List<JsonValue> terms) {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + name.hashCode();
-        result = prime * result + terms.hashCode();
-        return result;
-    }
-
     private JsonValue executeInBuiltExpression(String name, List<JsonValue> terms) {
         BaseExpression expr = EXPRESSIONS.get(name);
         validateExpressionArguments(expr, terms);
@@ -117,14 +133,83 @@ public final class ExprLibrary {
         }
     }
 
-    private JsonValue executeUserExpression(BaseExpression expr, List<JsonValue> terms) {
+    private JsonValue executeUserExpression(String name, BaseExpression expr, List<JsonValue> terms) {
         validateExpressionArguments(expr, terms);
+        if (batchCalls != null && !(expr instanceof BatchExpression)) {
+            return batchCalls.resolve(name, terms, () -> runUserExpression(name, expr, terms));
+        }
+        return runUserExpression(name, expr, terms);
+    }
+
+    private JsonValue runUserExpression(String name, BaseExpression expr, List<JsonValue> terms) {
         if (expr instanceof Expression) {
             return ((Expression) expr).run(terms, inputJson, dataJson);
         }
+        if (expr instanceof AsyncExpression) {
+            return executeAsyncExpression(name, (AsyncExpression) expr, terms);
+        }
+        if (expr instanceof BatchExpression) {
+            return executeBatchExpression(name, (BatchExpression) expr, terms);
+        }
         return ((ContextAwareExpression) expr).run(terms, inputJson, dataJson, userContext);
     }
 
+    private JsonValue executeAsyncExpression(String name, AsyncExpression expr, List<JsonValue> terms) {
+        if (asyncCalls == null) {
+            return AsyncCalls.join(expr.run(terms, inputJson, dataJson, userContext));
+        }
+        return asyncCalls.get(name, terms, () -> expr.run(terms, inputJson, dataJson, userContext));
+    }
+
+    private JsonValue executeBatchExpression(String name, BatchExpression expr, List<JsonValue> terms) {
+        if (batchCalls == null) {
+            return expr.run(Collections.singletonList(terms), inputJson, dataJson, userContext).get(0);
+        }
+        return batchCalls.get(name, expr, terms);
+    }
+
+    /**
+     * Results of pure expressions shared with other executions, null to compute them in each execution.
+     */
+    public void expressionCache(ExpressionCache expressionCache) {
+        this.expressionCache = expressionCache;
+    }
+
+    public ExpressionCache expressionCache() {
+        return expressionCache;
+    }
+
+    /**
+     * Calls of batch expressions kept across the runs of an execution, null to call them one by one.
+     */
+    public void batchCalls(BatchCalls batchCalls) {
+        this.batchCalls = batchCalls;
+    }
+
+    public BatchCalls batchCalls() {
+        return batchCalls;
+    }
+
+    /**
+     * Run the pending calls of batch expressions, see {@link BatchCalls#run}.
+     *
+     * @return true when the policy must run again to use the results
+     */
+    public boolean runBatchCalls() {
+        return batchCalls != null && batchCalls.run(inputJson, dataJson, userContext);
+    }
+
+    /**
+     * Calls of asynchronous expressions kept across the runs of an execution, null to wait for each call.
+     */
+    public void asyncCalls(AsyncCalls asyncCalls) {
+        this.asyncCalls = asyncCalls;
+    }
+
+    public AsyncCalls asyncCalls() {
+        return asyncCalls;
+    }
+
     /**
      * Triggers cleanup for all expressions. Should be run after the Rego evaluation has completed.
      */
@@ -192,6 +277,13 @@ public final class ExprLibrary {
         return userExpressions.get(name) != null || EXPRESSIONS.get(name) != null;
     }
 
+    /**
+     * Registered with the executor, as opposed to built in.
+     */
+    public boolean isUserExpression(String name) {
+        return userExpressions.get(name) != null;
+    }
+
     public void registerJavaFunctions(Map<String, BaseExpression> exprMap) {
         userExpressions.putAll(exprMap);
     }
@@ -0,0 +1,157 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core.lib;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+import com.amazon.antlr4.rego.interpreter.core.type.BaseExpression;
+import com.amazon.antlr4.rego.interpreter.type.AsyncExpression;
+import com.amazon.antlr4.rego.interpreter.type.BatchExpression;
+import com.amazon.antlr4.rego.interpreter.type.CacheStats;
+import com.amazon.antlr4.rego.interpreter.type.Pure;
+
+/**
+ * Results of pure expressions shared by all executions of an executor.
+ *
+ * <p>Keys are the expression name and the exact argument values. The cache holds at most maxEntries results,
+ * whatever their size, it evicts with the CLOCK algorithm: a result read since the hand last passed it gets
+ * a second chance.
+ * Reads take no lock, only one thread evicts at a time. Undefined results are not cached.
+ */
+@SkipMethodTrace
+public final class ExpressionCache {
+
+    /**
+     * Built-in expressions expensive enough to share their results across executions.
+     */
+    private static final Set<String> PURE_BUILT_INS = Collections.unmodifiableSet(
+        new HashSet<>(Arrays.asList("json.unmarshal", "base64.decode")));
+
+    private final int maxEntries;
+    private final Set<String> pureExpressions;
+    private final Map<List<Object>, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder[]> stats = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private Iterator<Map.Entry<List<Object>, Entry>> hand = null;
+
+    public ExpressionCache(int maxEntries, Set<String> pureExpressions) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache entries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.pureExpressions = Collections.unmodifiableSet(new HashSet<>(pureExpressions));
+    }
+
+    /**
+     * Names of the expressions whose results can be shared across executions: pure built-ins,
+     * user expressions annotated with {@link Pure} and the named ones.
+     * Asynchronous and batch expressions have their own call handling and are never included.
+     */
+    public static Set<String> pureExpressionNames(Map<String, BaseExpression> userExpressions, Set<String> namedPure) {
+        Set<String> names = new HashSet<>();
+        PURE_BUILT_INS.stream()
+            .filter(name -> !userExpressions.containsKey(name))
+            .forEach(names::add);
+        userExpressions.forEach((name, expr) -> {
+            boolean pure = namedPure.contains(name) || expr.getClass().isAnnotationPresent(Pure.class);
+            if (pure && !(expr instanceof AsyncExpression) && !(expr instanceof BatchExpression)) {
+                names.add(name);
+            }
+        });
+        return names;
+    }
+
+    public boolean isCached(String name) {
+        return pureExpressions.contains(name);
+    }
+
+    public JsonValue get(String name, List<JsonValue> terms, Supplier<JsonValue> computation) {
+        return getResult(name, terms, computation);
+    }
+
+    /**
+     * Same as {@link #get} for results of any type, e.g. the outcome of a rule definition, see {@link RuleCache}.
+     * Results must not be modified once cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getResult(String name, List<?> terms, Supplier<T> computation) {
+        List<Object> key = Arrays.asList(name, terms);
+        LongAdder[] counters = stats.computeIfAbsent(name, k -> new LongAdder[] {new LongAdder(), new LongAdder()});
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.referenced = true;
+            counters[0].increment();
+            return (T) entry.value;
+        }
+        counters[1].increment();
+        T value = computation.get();
+        if (value != null) {
+            entries.put(key, new Entry(value));
+            if (entries.size() > maxEntries) {
+                evict();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return hits and misses by expression name
+     */
+    public Map<String, CacheStats> getStats() {
+        Map<String, CacheStats> result = new TreeMap<>();
+        stats.forEach((name, counters) -> result.put(name, new CacheStats(counters[0].sum(), counters[1].sum())));
+        return result;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (entries.size() > maxEntries) {
+                if (hand == null || !hand.hasNext()) {
+                    hand = entries.entrySet().iterator();
+                    if (!hand.hasNext()) {
+                        return;
+                    }
+                }
+                Entry entry = hand.next().getValue();
+                if (entry.referenced) {
+                    entry.referenced = false;
+                } else {
+                    hand.remove();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Entry {
+        final Object value;
+        volatile boolean referenced = false;
+
+        Entry(Object value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core.lib;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * Hash indexes over the collections iterated by equality joins, see {@link CollectionIndex}.
+ *
+ * <p>Indexes over data documents are built with the executor, one per collection path and element path,
+ * and shared by all its executions. They are declared by the application or discovered from the joins of the
+ * policy. Indexes over other collections, or over data a <code>with</code> modifier replaced, are built when
+ * a join first reads them and belong to a single execution, one per join literal.
+ * Collections are compared by identity, an index is rebuilt when its literal iterates another collection.
+ */
+@SkipMethodTrace
+public final class JoinIndex {
+
+    private final boolean joinAll;
+    private final Map<List<List<JsonValue>>, CollectionIndex> dataIndexes;
+    private final Map<ParseTree, CollectionIndex> executionIndexes = new ConcurrentHashMap<>();
+
+    /**
+     * @param dataPaths element paths to index, by the path of the collection below data
+     * @param joinAll whether all joins are evaluated with an index, otherwise only joins over the data paths
+     * @param previous indexes built for an earlier version of data, they are updated instead of rebuilt
+     */
+    public JoinIndex(JsonObject data, Map<List<JsonValue>, Set<List<JsonValue>>> dataPaths, boolean joinAll,
+            JoinIndex previous) {
+        this.joinAll = joinAll;
+        Map<List<List<JsonValue>>, CollectionIndex> indexes = new HashMap<>();
+        dataPaths.forEach((collectionPath, elementPaths) -> {
+            JsonValue collection = resolvePath(data, collectionPath);
+            if (!(collection instanceof JsonArray)) {
+                return;
+            }
+            for (List<JsonValue> elementPath: elementPaths) {
+                List<List<JsonValue>> key = Arrays.asList(collectionPath, elementPath);
+                CollectionIndex index = previous != null ? previous.dataIndexes.get(key) : null;
+                indexes.put(key, index != null
+                    ? index.update((JsonArray) collection)
+                    : new CollectionIndex((JsonArray) collection, elementPath));
+            }
+        });
+        this.dataIndexes = Collections.unmodifiableMap(indexes);
+    }
+
+    private JoinIndex(JoinIndex shared) {
+        this.joinAll = shared.joinAll;
+        this.dataIndexes = shared.dataIndexes;
+    }
+
+    /**
+     * Index for one execution, sharing the indexes over data with this one.
+     */
+    public JoinIndex forExecution() {
+        return new JoinIndex(this);
+    }
+
+    /**
+     * Is a join over the collection evaluated with an index.
+     *
+     * @param dataPath path of the collection below data, null for collections that do not come from data
+     */
+    public boolean joins(List<JsonValue> dataPath, List<JsonValue> path) {
+        return joinAll || dataPath != null && dataIndexes.containsKey(Arrays.asList(dataPath, path));
+    }
+
+    /**
+     * Positions, in ascending order, of the elements of the collection whose value at the path may equal the probe.
+     *
+     * @param literal join literal, identifies the index of a collection that does not come from data
+     * @param dataPath path of the collection below data, null for collections that do not come from data
+     * @return null when the probe cannot be looked up, e.g. an array compared as a set
+     */
+    public int[] positions(ParseTree literal, List<JsonValue> dataPath, JsonArray collection, List<JsonValue> path,
+            JsonValue probe) {
+        CollectionIndex index = dataPath != null ? dataIndexes.get(Arrays.asList(dataPath, path)) : null;
+        if (index == null || index.getCollection() != collection) {
+            index = executionIndexes.get(literal);
+            if (index == null || index.getCollection() != collection) {
+                index = new CollectionIndex(collection, path);
+                executionIndexes.put(literal, index);
+            }
+        }
+        return index.positions(probe);
+    }
+
+    /**
+     * Number of indexes over data, see {@link #JoinIndex}.
+     */
+    public int dataIndexCount() {
+        return dataIndexes.size();
+    }
+
+    private static JsonValue resolvePath(JsonValue state, List<JsonValue> path) {
+        for (JsonValue key: path) {
+            if (!(state instanceof JsonObject) || !((JsonObject) state).containsKey(JsonResolver.jsonToString(key))) {
+                return null;
+            }
+            state = ((JsonObject) state).get(JsonResolver.jsonToString(key));
+        }
+        return state;
+    }
+}
@@ -0,0 +1,126 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core.lib;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+
+/**
+ * 128 bit hash of a JSON value that is the same for equal values.
+ * Object members are combined independent of their order, numbers are compared by value, so <code>1.0</code>
+ * and <code>1</code> match. It is two 64 bit hashes with different seeds.
+ */
+@SkipMethodTrace
+public final class JsonFingerprint {
+
+    private static final long SEED_HIGH = 0x9E3779B97F4A7C15L;
+    private static final long SEED_LOW = 0xC2B2AE3D27D4EB4FL;
+
+    private final long high;
+    private final long low;
+
+    private JsonFingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static JsonFingerprint of(JsonValue value) {
+        return new JsonFingerprint(hash(value, SEED_HIGH), hash(value, SEED_LOW));
+    }
+
+    /**
+     * Rough number of bytes the value takes on the heap.
+     */
+    public static long estimateSize(JsonValue value) {
+        switch (value.getValueType()) {
+            case OBJECT:
+                long objectSize = 48;
+                for (Map.Entry<String, JsonValue> member: ((JsonObject) value).entrySet()) {
+                    objectSize += 32 + 40 + 2L * member.getKey().length() + estimateSize(member.getValue());
+                }
+                return objectSize;
+            case ARRAY:
+                long arraySize = 32;
+                for (JsonValue element: (JsonArray) value) {
+                    arraySize += 8 + estimateSize(element);
+                }
+                return arraySize;
+            case STRING:
+                return 56 + 2L * ((JsonString) value).getString().length();
+            case NUMBER:
+                return 48;
+            default:
+                return 0;
+        }
+    }
+
+    private static long hash(JsonValue value, long seed) {
+        switch (value.getValueType()) {
+            case OBJECT:
+                long members = 0;
+                for (Map.Entry<String, JsonValue> member: ((JsonObject) value).entrySet()) {
+                    members += mix(hash(member.getKey(), seed) * 31 + hash(member.getValue(), seed));
+                }
+                return mix(seed ^ 1 ^ members);
+            case ARRAY:
+                long elements = seed ^ 2;
+                for (JsonValue element: (JsonArray) value) {
+                    elements = mix(elements * 31 + hash(element, seed));
+                }
+                return elements;
+            case STRING:
+                return hash(((JsonString) value).getString(), seed ^ 3);
+            case NUMBER:
+                BigDecimal number = ((JsonNumber) value).bigDecimalValue();
+                BigDecimal canonical = number.signum() == 0 ? BigDecimal.ZERO : number.stripTrailingZeros();
+                return mix(mix(seed ^ 4 ^ canonical.scale()) + canonical.unscaledValue().hashCode());
+            default:
+                return mix(seed ^ value.getValueType().ordinal() << 8);
+        }
+    }
+
+    private static long hash(String string, long seed) {
+        long h = seed;
+        for (int i = 0; i < string.length(); i++) {
+            h = (h ^ string.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(h ^ string.length());
+    }
+
+    /**
+     * Finalizer of SplitMix64.
+     */
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof JsonFingerprint)) {
+            return false;
+        }
+        JsonFingerprint other = (JsonFingerprint) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (high ^ (high >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
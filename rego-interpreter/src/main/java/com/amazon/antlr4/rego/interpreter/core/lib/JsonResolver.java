@@ -22,6 +22,7 @@ import javax.json.JsonValue;
 import com.amazon.antlr4.rego.interpreter.core.RuleManager;
 import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipDeepMethodTrace;
 import com.amazon.antlr4.rego.interpreter.core.type.JsonByteArrayImpl;
+import com.amazon.antlr4.rego.interpreter.core.type.RegoFunction;
 import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException.BadReferenceException;
 import com.amazon.antlr4.rego.interpreter.core.type.Rule;
 
@@ -159,6 +160,35 @@ public final class JsonResolver {
         return root.build();
     }
 
+    /**
+     * Output of the named rules only, undefined rules are left out.
+     */
+    @SkipDeepMethodTrace
+    public static JsonObject extractOutput(RuleManager ruleManager, Set<String> ruleNames) {
+        JsonObjectBuilder root = factory.createObjectBuilder();
+        Map<String, Set<Rule>> rules = ruleManager.getRules(false);
+        ruleNames.stream()
+            .filter(rules::containsKey)
+            .forEach(name -> addRuleTrial(root, rules.get(name)));
+        return root.build();
+    }
+
+    /**
+     * Value of the named rule, or null when it is undefined.
+     */
+    @SkipDeepMethodTrace
+    public static JsonValue extractValue(RuleManager ruleManager, String ruleName) {
+        Set<Rule> rules = ruleManager.searchRuleStackRecursively(ruleName);
+        if (rules.stream().noneMatch(Rule::hasValue) || rules.iterator().next() instanceof RegoFunction) {
+            return null;
+        }
+        try {
+            return rules.iterator().next().mergeValues(rules);
+        } catch (BadReferenceException e) {
+            return null;
+        }
+    }
+
     private static void addRuleTrial(JsonObjectBuilder root, Set<Rule> rules) {
         try {
             Rule firstRule = rules.iterator().next();
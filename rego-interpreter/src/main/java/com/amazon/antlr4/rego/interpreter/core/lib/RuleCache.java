@@ -0,0 +1,109 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core.lib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.SkipMethodTrace;
+import com.amazon.antlr4.rego.interpreter.core.type.CompleteRule;
+import com.amazon.antlr4.rego.interpreter.core.type.ObjectRule;
+import com.amazon.antlr4.rego.interpreter.core.type.Rule;
+import com.amazon.antlr4.rego.interpreter.core.type.SetRule;
+
+/**
+ * Outcomes of rule definitions shared by all executions of an executor.
+ *
+ * <p>A definition is keyed by the values at the input paths its rule reads, directly or through the rules and
+ * functions it depends on, see {@link com.amazon.antlr4.rego.interpreter.core.CompiledPolicy#inputPaths}.
+ * Inputs that agree on those paths get the same outcome, whatever else they hold. A missing path is keyed as null.
+ * The outcomes are kept in an {@link ExpressionCache}, under the rule name.
+ */
+@SkipMethodTrace
+public final class RuleCache {
+
+    private final ExpressionCache cache;
+    private final Map<String, List<List<String>>> inputPaths;
+
+    /**
+     * @param inputPaths input paths of the rules to cache, by rule name.
+     *        These rules must not call expressions whose result may change for the same arguments.
+     */
+    public RuleCache(ExpressionCache cache, Map<String, List<List<String>>> inputPaths) {
+        this.cache = cache;
+        this.inputPaths = Collections.unmodifiableMap(new HashMap<>(inputPaths));
+    }
+
+    public boolean isCached(Rule rule) {
+        return inputPaths.containsKey(rule.key)
+            && (rule instanceof CompleteRule || rule instanceof SetRule || rule instanceof ObjectRule);
+    }
+
+    /**
+     * Put the cached outcome of the definition on the rule, or run the evaluation and cache its outcome.
+     * Rules the evaluation left pending are not cached.
+     */
+    public void evaluate(Rule rule, JsonValue input, Runnable evaluation) {
+        List<Object> key = Arrays.asList(rule.ruleContext, project(inputPaths.get(rule.key), input));
+        boolean[] evaluated = {false};
+        Optional<Rule> outcome = cache.getResult(rule.key, key, () -> {
+            evaluated[0] = true;
+            evaluation.run();
+            return snapshot(rule);
+        });
+        if (!evaluated[0] && outcome != null) {
+            restore(rule, outcome);
+        }
+    }
+
+    private static List<JsonValue> project(List<List<String>> paths, JsonValue input) {
+        List<JsonValue> values = new ArrayList<>(paths.size());
+        for (List<String> path: paths) {
+            JsonValue value = input;
+            for (String key: path) {
+                value = value instanceof JsonObject ? ((JsonObject) value).get(key) : null;
+            }
+            values.add(value);
+        }
+        return values;
+    }
+
+    /**
+     * @return copy holding the values of the rule, empty for a failed rule, null for a pending one
+     */
+    private static Optional<Rule> snapshot(Rule rule) {
+        if (rule.isFailed()) {
+            return Optional.empty();
+        } else if (!rule.isSuccessful()) {
+            return null;
+        } else if (rule instanceof CompleteRule) {
+            return Optional.of(new CompleteRule(rule.key, rule.ruleContext, rule.getValue()));
+        }
+        Rule copy = rule.copy();
+        copy.addValues(rule);
+        return Optional.of(copy);
+    }
+
+    private static void restore(Rule rule, Optional<Rule> outcome) {
+        if (!outcome.isPresent()) {
+            rule.fail();
+        } else if (rule instanceof CompleteRule) {
+            rule.setValue(outcome.get().getValue());
+        } else {
+            rule.addValues(outcome.get());
+            if (!rule.isSuccessful()) {
+                // a partial rule that succeeded without values
+                rule.setValue();
+            }
+        }
+    }
+}
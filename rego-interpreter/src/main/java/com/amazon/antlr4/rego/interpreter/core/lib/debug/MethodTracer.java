@@ -21,6 +21,9 @@ import lombok.extern.log4j.Log4j2;
 /**
  * Set using <code>-DrequireMethodTrace=true</code>
  * (on command line) to enable method tracing.
+ *
+ * <p>The aspect is a singleton woven into every class, so the trace state is kept per thread.
+ * Executions running on different threads are traced independently.
  */
 @Aspect
 @Log4j2
@@ -29,9 +32,13 @@ public class MethodTracer {
     @Pointcut("execution(* *(..))")
     public void methods() {}
 
-    private int callDepth = 0;
-    private String lastEntry = null;
-    private boolean deepSkipEnabled = false;
+    private static final class TraceState {
+        private int callDepth = 0;
+        private String lastEntry = null;
+        private boolean deepSkipEnabled = false;
+    }
+
+    private final ThreadLocal<TraceState> traceState = ThreadLocal.withInitial(TraceState::new);
 
     /**
      * Skip tracing of this method or all methods in this class.
@@ -54,7 +61,11 @@ public class MethodTracer {
     @Around("com.amazon.antlr4.rego.interpreter.core.lib.debug.MethodTracer.methods()")
     @SuppressFBWarnings("ES_COMPARING_STRINGS_WITH_EQ")
     public Object traceMethod(ProceedingJoinPoint joinPoint) throws Throwable {
-        if (!log.isTraceEnabled() || deepSkipEnabled) {
+        if (!log.isTraceEnabled()) {
+            return joinPoint.proceed();
+        }
+        final TraceState state = traceState.get();
+        if (state.deepSkipEnabled) {
             return joinPoint.proceed();
         }
 
@@ -65,11 +76,11 @@ public class MethodTracer {
         if (type.getAnnotation(SkipDeepMethodTrace.class) != null
             || method.getAnnotation(SkipDeepMethodTrace.class) != null) {
 
-            deepSkipEnabled = true;
+            state.deepSkipEnabled = true;
             try {
                 return joinPoint.proceed();
             } finally {
-                deepSkipEnabled = false;
+                state.deepSkipEnabled = false;
             }
         }
 
@@ -83,17 +94,17 @@ public class MethodTracer {
         }
 
         final String loc = type.getSimpleName() + "::" + method.getName();
-        final String indent = String.format("%" + (callDepth + 1) + "s", "");
+        final String indent = String.format("%" + (state.callDepth + 1) + "s", "");
         final String thisEntry = String.format("%s Calling %s", indent, loc);
-        lastEntry = thisEntry;
+        state.lastEntry = thisEntry;
 
         try {
-            callDepth++;
+            state.callDepth++;
             System.out.println(thisEntry);
             return joinPoint.proceed();
         } finally {
-            callDepth--;
-            if (lastEntry != thisEntry) {
+            state.callDepth--;
+            if (state.lastEntry != thisEntry) {
                 System.out.println(String.format("%s Completed %s", indent, loc));
             }
         }
@@ -3,6 +3,8 @@
 
 package com.amazon.antlr4.rego.interpreter.core.lib.debug;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 
 import com.amazon.antlr4.rego.interpreter.core.type.VisitDecorator;
@@ -18,7 +20,7 @@ public class RegoBreakpointVisitor implements VisitDecorator {
     private final Set<String> breakpoints;
 
     public RegoBreakpointVisitor(Set<String> regoBreakpoints) {
-        this.breakpoints = regoBreakpoints;
+        this.breakpoints = Collections.unmodifiableSet(new HashSet<>(regoBreakpoints));
     }
 
     @Override
@@ -5,7 +5,7 @@ package com.amazon.antlr4.rego.interpreter.core.lib.debug;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 import javax.json.JsonValue;
 
@@ -21,11 +21,18 @@ import org.antlr.v4.runtime.tree.TerminalNode;
 
 import lombok.extern.log4j.Log4j2;
 
+/**
+ * Collects which policy nodes were visited successfully or with an error, and renders a colored report.
+ *
+ * <p>One instance is shared by all executions of an executor, possibly on several threads.
+ * Visitations are recorded in a concurrent map and each one is updated under its own lock.
+ * Rendering the report is serialized, it reuses the report state of this instance.
+ */
 @Log4j2
 @SkipMethodTrace
 public class VisitCoverage extends RegoBaseVisitor<JsonValue> implements VisitDecorator {
 
-    private Map<String, VisitationImpl> coverageMap = new TreeMap<>();
+    private final Map<String, VisitationImpl> coverageMap = new ConcurrentSkipListMap<>();
 
     public Map<String, Visitation> getCoverageMap() {
         return new HashMap<>(coverageMap);
@@ -48,8 +55,10 @@ public class VisitCoverage extends RegoBaseVisitor<JsonValue> implements VisitDe
             final int column = prc.start.getCharPositionInLine();
             final String key = getKey(line, column);
             VisitationImpl v = coverageMap.computeIfAbsent(key, (k) -> new VisitationImpl(line, column));
-            v.setSuccess(v.getSuccess() || success);
-            v.setFailure(v.getFailure() || !success);
+            synchronized (v) {
+                v.setSuccess(v.getSuccess() || success);
+                v.setFailure(v.getFailure() || !success);
+            }
             if (node.getParent() instanceof RegoParser.User_functionContext) {
                 updateVisitation(node.getParent(), success);
             }
@@ -57,7 +66,7 @@ public class VisitCoverage extends RegoBaseVisitor<JsonValue> implements VisitDe
     }
 
     @Override
-    public void endVisit(ParseTree policyTree) {
+    public synchronized void endVisit(ParseTree policyTree) {
         newVisit(policyTree);
     }
 
@@ -10,8 +10,8 @@ import com.amazon.antlr4.rego.interpreter.type.Visitation;
 
 @SkipMethodTrace
 public class VisitationImpl implements Visitation {
-    private boolean success = false;
-    private boolean failure = false;
+    private volatile boolean success = false;
+    private volatile boolean failure = false;
     private int line, column;
 
     public VisitationImpl(int line, int column) {
@@ -0,0 +1,453 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core.partial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.RegoBaseListener;
+import com.amazon.antlr4.rego.RegoParser;
+import com.amazon.antlr4.rego.interpreter.core.CompiledPolicy;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.core.type.OperatorType;
+import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+
+/**
+ * Splits a policy into the rules that can be folded into constants and the rules that depend on unknown paths.
+ *
+ * <p>A rule is tainted when it references a path overlapping an unknown path (e.g. <code>input.user</code>),
+ * an import of such a path, a java expression (these receive the whole input), or another tainted rule.
+ * Every other rule depends only on <code>data</code> and the known input. Those rules are evaluated by the caller
+ * and written back as constants. Tainted rules and functions are written back verbatim, except that constant
+ * <code>input</code> and <code>data</code> references outside the unknown paths are replaced by their values.
+ * Body literals left with only constants are decided by the caller too: definitions with a false literal
+ * are dropped and true literals are left out, e.g. <code>allow { "POST" == "GET"; input.user.admin }</code>
+ * is dropped when <code>input.method</code> is known to be <code>"POST"</code>.
+ *
+ * <p>A known reference missing from the known input or data is undefined, as it is for the folded rules.
+ * It is kept as written and counts as a constant, the caller decides its literals against the known input.
+ *
+ * <p>Imports are kept as they are, the paths they reference are resolved when the residual policy is evaluated.
+ */
+public final class PartialEvaluator {
+
+    private static final String INPUT = "input";
+    private static final String DATA = "data";
+
+    private final RegoParser.ModuleContext module;
+    private final CompiledPolicy compiledPolicy;
+    private final List<List<String>> unknownPaths;
+    private final Set<String> taintedNames = new HashSet<>();
+    private final Set<String> foldableRules = new LinkedHashSet<>();
+    private final Set<String> expressionNames;
+    private final Set<String> policyNames = new HashSet<>();
+
+    /**
+     * @param unknownPaths dot separated paths, e.g. <code>input.user</code>
+     * @param expressionNames names of the java expressions registered with the executor
+     */
+    public PartialEvaluator(
+        ParseTree policyTree, CompiledPolicy compiledPolicy, Set<String> unknownPaths, Set<String> expressionNames
+    ) {
+        this.module = (RegoParser.ModuleContext) policyTree;
+        this.compiledPolicy = compiledPolicy;
+        this.unknownPaths = unknownPaths.stream()
+            .map(path -> Arrays.asList(path.split("\\.")))
+            .collect(Collectors.toList());
+        this.expressionNames = expressionNames;
+        module.policy().rrule().forEach(rctx -> policyNames.add(getRuleName(rctx)));
+        findTaintedNames(expressionNames);
+        module.policy().rrule().stream()
+            .filter(rctx -> rctx.rule_definition() != null)
+            .map(this::getRuleName)
+            .filter(name -> !taintedNames.contains(name))
+            .forEach(foldableRules::add);
+    }
+
+    /**
+     * Rules that depend only on data and the known input.
+     */
+    public Set<String> getFoldableRules() {
+        return Collections.unmodifiableSet(foldableRules);
+    }
+
+    /**
+     * Literals of constants of the tainted rules, once the known refs are substituted, for the caller to decide
+     * against the known input and data before writing the residual policy.
+     */
+    public Set<String> constantLiterals(JsonObject knownInput, JsonObject data) {
+        Set<String> literals = new LinkedHashSet<>();
+        for (RegoParser.RruleContext rctx: module.policy().rrule()) {
+            RegoParser.Rule_bodyContext bctx = ruleBody(rctx);
+            if (foldableRules.contains(getRuleName(rctx)) || bctx == null || CompiledPolicy.hasElse(bctx)) {
+                continue;
+            }
+            Map<Integer, Substitution> substitutions = knownRefs(rctx, knownInput, data);
+            for (RegoParser.LiteralContext lctx: bctx.query().literal()) {
+                if (isConstant(lctx, substitutions)) {
+                    literals.add(substitute(lctx, substitutions));
+                }
+            }
+        }
+        return literals;
+    }
+
+    /**
+     * Write the residual policy.
+     *
+     * @param foldedValues values of the defined foldable rules, missing rules are undefined
+     * @param literalOutcomes whether the {@link #constantLiterals} hold, missing when they can't be decided,
+     *                        e.g. on an error
+     */
+    public String residualPolicy(JsonObject foldedValues, JsonObject knownInput, JsonObject data,
+            Map<String, Boolean> literalOutcomes) {
+        StringBuilder residual = new StringBuilder(text(module.rpackage())).append("\n\n");
+        module.rimport().forEach(ictx -> residual.append(text(ictx)).append("\n"));
+        if (!module.rimport().isEmpty()) {
+            residual.append("\n");
+        }
+        Map<RegoParser.RruleContext, String> taintedRules = foldTaintedRules(knownInput, data, literalOutcomes);
+        Set<String> written = new HashSet<>();
+        for (RegoParser.RruleContext rctx: module.policy().rrule()) {
+            String name = getRuleName(rctx);
+            if (!foldableRules.contains(name)) {
+                if (taintedRules.get(rctx) != null) {
+                    residual.append(taintedRules.get(rctx)).append("\n");
+                }
+            } else if (!written.add(name)) {
+                continue;
+            } else if (foldedValues.containsKey(name)) {
+                residual.append(name).append(" := ").append(foldedValues.get(name)).append("\n");
+            } else {
+                residual.append(name).append(" { false }\n");
+            }
+        }
+        return residual.toString();
+    }
+
+    /**
+     * Text of the tainted rules, null for dropped definitions. When every definition of a name is dropped,
+     * and it has no default, the first one is kept with a false body so that references to it stay valid.
+     */
+    private Map<RegoParser.RruleContext, String> foldTaintedRules(JsonObject knownInput, JsonObject data,
+            Map<String, Boolean> literalOutcomes) {
+        Map<RegoParser.RruleContext, String> texts = new HashMap<>();
+        Map<String, RegoParser.RruleContext> firstDropped = new LinkedHashMap<>();
+        Set<String> kept = new HashSet<>();
+        for (RegoParser.RruleContext rctx: module.policy().rrule()) {
+            String name = getRuleName(rctx);
+            if (foldableRules.contains(name)) {
+                continue;
+            }
+            Map<Integer, Substitution> substitutions = knownRefs(rctx, knownInput, data);
+            if (foldBody(ruleBody(rctx), substitutions, literalOutcomes)) {
+                texts.put(rctx, substitute(rctx, substitutions));
+                kept.add(name);
+            } else {
+                firstDropped.putIfAbsent(name, rctx);
+            }
+        }
+        firstDropped.forEach((name, rctx) -> {
+            if (!kept.contains(name)) {
+                Map<Integer, Substitution> substitutions = knownRefs(rctx, knownInput, data);
+                RegoParser.QueryContext query = ruleBody(rctx).query();
+                substitutions.put(query.start.getStartIndex(),
+                    new Substitution(query.start.getStartIndex(), query.stop.getStopIndex(), "false"));
+                texts.put(rctx, substitute(rctx, substitutions));
+            }
+        });
+        return texts;
+    }
+
+    /**
+     * Decide the literals of constants of a body without else branch.
+     * When some are true the query is rewritten with the other literals only, or <code>true</code>.
+     *
+     * @return false when a literal is false and the definition can be dropped
+     */
+    private boolean foldBody(RegoParser.Rule_bodyContext bctx, Map<Integer, Substitution> substitutions,
+            Map<String, Boolean> literalOutcomes) {
+        if (bctx == null || CompiledPolicy.hasElse(bctx)) {
+            return true;
+        }
+        List<String> kept = new ArrayList<>();
+        for (RegoParser.LiteralContext lctx: bctx.query().literal()) {
+            String literal = substitute(lctx, substitutions);
+            Boolean holds = isConstant(lctx, substitutions) ? literalOutcomes.get(literal) : null;
+            if (Boolean.FALSE.equals(holds)) {
+                return false;
+            } else if (holds == null) {
+                kept.add(literal);
+            }
+        }
+        RegoParser.QueryContext query = bctx.query();
+        if (kept.size() < query.literal().size()) {
+            substitutions.put(query.start.getStartIndex(), new Substitution(query.start.getStartIndex(),
+                query.stop.getStopIndex(), kept.isEmpty() ? "true" : String.join("; ", kept)));
+        }
+        return true;
+    }
+
+    /**
+     * Is the literal a check of constants once the known refs are substituted: every ref rooted at a name
+     * is substituted, and it calls only built in functions. Assignments, unifications, some declarations
+     * and with modifiers bind names or change values, they are left alone.
+     */
+    private boolean isConstant(RegoParser.LiteralContext lctx, Map<Integer, Substitution> substitutions) {
+        RegoParser.Stat_infixContext sctx = lctx.stat() != null ? lctx.stat().stat_infix() : null;
+        if (sctx == null || !lctx.with_modifier().isEmpty() || sctx.VAR() != null || sctx.infix_operator() != null
+            && compiledPolicy.operator(sctx.infix_operator()) == OperatorType.UNIFICATION) {
+            return false;
+        }
+        boolean[] constant = {true};
+        ParseTreeWalker.DEFAULT.walk(new RegoBaseListener() {
+            @Override
+            public void enterRef(RegoParser.RefContext ctx) {
+                if (ctx.VAR() != null && !substitutions.containsKey(ctx.start.getStartIndex())) {
+                    constant[0] = false;
+                }
+            }
+
+            @Override
+            public void enterExpr_call(RegoParser.Expr_callContext ctx) {
+                String name = compiledPolicy.functionName(ctx);
+                if (expressionNames.contains(name) || policyNames.contains(name)) {
+                    constant[0] = false;
+                }
+            }
+        }, lctx);
+        return constant[0];
+    }
+
+    private static RegoParser.Rule_bodyContext ruleBody(RegoParser.RruleContext ctx) {
+        if (ctx.user_function() != null) {
+            return ctx.user_function().rule_body();
+        }
+        return ctx.rule_definition().rule_body();
+    }
+
+    private String getRuleName(RegoParser.RruleContext ctx) {
+        if (ctx.user_function() != null) {
+            return ctx.user_function().VAR().getText();
+        }
+        return compiledPolicy.ruleName(ctx.rule_definition());
+    }
+
+    private void findTaintedNames(Set<String> expressionNames) {
+        Set<String> taintedImports = new HashSet<>();
+        for (RegoParser.RimportContext ictx: module.rimport()) {
+            String alias = getImportAlias(ictx);
+            if (alias != null && isUnknown(constantPrefix(ictx.ref()))) {
+                taintedImports.add(alias);
+            }
+        }
+        for (RegoParser.RruleContext rctx: module.policy().rrule()) {
+            TaintListener listener = new TaintListener(taintedImports, expressionNames);
+            ParseTreeWalker.DEFAULT.walk(listener, rctx);
+            if (listener.tainted) {
+                taintedNames.add(getRuleName(rctx));
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (RegoParser.RruleContext rctx: module.policy().rrule()) {
+                String name = getRuleName(rctx);
+                if (!taintedNames.contains(name)
+                    && compiledPolicy.ruleDependencies(name).stream().anyMatch(taintedNames::contains)) {
+                    taintedNames.add(name);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private static String getImportAlias(RegoParser.RimportContext ctx) {
+        if (ctx.VAR() != null) {
+            return ctx.VAR().getText();
+        }
+        List<RegoParser.Ref_argContext> refArg = ctx.ref().ref_arg();
+        if (refArg.size() > 0 && refArg.get(refArg.size() - 1).VAR() != null) {
+            return refArg.get(refArg.size() - 1).VAR().getText();
+        }
+        return null;
+    }
+
+    /**
+     * Root name and leading dot keys of a ref, e.g. <code>input.a.b[x]</code> gives <code>[input, a, b]</code>.
+     * Empty for refs that don't start with a name.
+     */
+    static List<String> constantPrefix(RegoParser.RefContext ctx) {
+        if (ctx.VAR() == null) {
+            return Collections.emptyList();
+        }
+        List<String> path = new ArrayList<>();
+        path.add(ctx.VAR().getText());
+        for (RegoParser.Ref_argContext ractx: ctx.ref_arg()) {
+            if (ractx.VAR() == null) {
+                break;
+            }
+            path.add(ractx.VAR().getText());
+        }
+        return path;
+    }
+
+    /**
+     * A path is unknown when it is a prefix of an unknown path, or an unknown path is a prefix of it.
+     */
+    private boolean isUnknown(List<String> path) {
+        if (path.isEmpty()) {
+            return false;
+        }
+        for (List<String> unknownPath: unknownPaths) {
+            int length = Math.min(path.size(), unknownPath.size());
+            if (path.subList(0, length).equals(unknownPath.subList(0, length))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Constant input and data refs of the rule, to be replaced by their known values, by start index.
+     * A prefix is replaced only when the rest of the ref can be applied to the literal value. Refs that are
+     * missing, or can't be applied, are undefined: their text is kept and they count as known.
+     */
+    private Map<Integer, Substitution> knownRefs(RegoParser.RruleContext rctx, JsonObject knownInput,
+            JsonObject data) {
+        Map<Integer, Substitution> substitutions = new TreeMap<>();
+        ParseTreeWalker.DEFAULT.walk(new RegoBaseListener() {
+            @Override
+            public void enterRef(RegoParser.RefContext ctx) {
+                List<String> path = constantPrefix(ctx);
+                if (path.size() < 2 || !(path.get(0).equals(INPUT) || path.get(0).equals(DATA)) || isUnknown(path)
+                    || isWithTarget(ctx)) {
+                    return;
+                }
+                JsonValue value = resolve(path.get(0).equals(INPUT) ? knownInput : data, path);
+                boolean hasMoreArgs = ctx.ref_arg().size() > path.size() - 1;
+                int stop = ctx.ref_arg(path.size() - 2).stop.getStopIndex();
+                if (value == null || (hasMoreArgs && !(value instanceof JsonObject || value.getValueType()
+                    == JsonValue.ValueType.ARRAY))) {
+                    substitutions.put(ctx.start.getStartIndex(), new Substitution(ctx.start.getStartIndex(),
+                        stop, text(ctx, ctx.start.getStartIndex(), stop)));
+                    return;
+                }
+                substitutions.put(ctx.start.getStartIndex(),
+                    new Substitution(ctx.start.getStartIndex(), stop, value.toString()));
+            }
+        }, rctx);
+        return substitutions;
+    }
+
+    /**
+     * Text of the context with the substitutions within it applied. Substitutions nested in an earlier one
+     * are part of its replaced text.
+     */
+    private static String substitute(ParserRuleContext ctx, Map<Integer, Substitution> substitutions) {
+        StringBuilder text = new StringBuilder();
+        int position = ctx.start.getStartIndex();
+        for (Substitution substitution: substitutions.values()) {
+            if (substitution.start < position || substitution.stop > ctx.stop.getStopIndex()) {
+                continue;
+            }
+            text.append(text(ctx, position, substitution.start - 1)).append(substitution.text);
+            position = substitution.stop + 1;
+        }
+        return text.append(text(ctx, position, ctx.stop.getStopIndex())).toString();
+    }
+
+    private static boolean isWithTarget(RegoParser.RefContext ctx) {
+        ParseTree parent = ctx.getParent();
+        return parent instanceof RegoParser.TermContext
+            && parent.getParent() instanceof RegoParser.With_modifierContext
+            && ((RegoParser.With_modifierContext) parent.getParent()).term(0) == parent;
+    }
+
+    /**
+     * Resolve the keys following the root name of the path, null when the path is missing.
+     */
+    static JsonValue resolve(JsonValue state, List<String> path) {
+        if (state == null) {
+            return null;
+        }
+        try {
+            for (String key: path.subList(1, path.size())) {
+                state = JsonResolver.resolveJsonRef(state, JsonResolver.nativeToJson(key));
+            }
+            return state;
+        } catch (RegoProcessorException.BadReferenceException e) {
+            return null;
+        }
+    }
+
+    private static String text(ParserRuleContext ctx) {
+        return text(ctx, ctx.start.getStartIndex(), ctx.stop.getStopIndex());
+    }
+
+    private static String text(ParserRuleContext ctx, int start, int stop) {
+        if (stop < start) {
+            return "";
+        }
+        return ctx.start.getInputStream().getText(Interval.of(start, stop));
+    }
+
+    private static final class Substitution {
+        private final int start;
+        private final int stop;
+        private final String text;
+
+        Substitution(int start, int stop, String text) {
+            this.start = start;
+            this.stop = stop;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Finds references that make a rule depend on unknown values.
+     */
+    private final class TaintListener extends RegoBaseListener {
+        private final Set<String> taintedImports;
+        private final Set<String> expressionNames;
+        private boolean tainted = false;
+
+        TaintListener(Set<String> taintedImports, Set<String> expressionNames) {
+            this.taintedImports = taintedImports;
+            this.expressionNames = expressionNames;
+        }
+
+        @Override
+        public void enterRef(RegoParser.RefContext ctx) {
+            if (ctx.VAR() != null && (taintedImports.contains(ctx.VAR().getText()) || isUnknown(constantPrefix(ctx)))) {
+                tainted = true;
+            }
+        }
+
+        @Override
+        public void enterExpr_call(RegoParser.Expr_callContext ctx) {
+            if (expressionNames.contains(compiledPolicy.functionName(ctx))) {
+                tainted = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core.partial;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.RegoParser;
+import com.amazon.antlr4.rego.interpreter.core.CompiledPolicy;
+import com.amazon.antlr4.rego.interpreter.core.lib.InfixOperator;
+import com.amazon.antlr4.rego.interpreter.core.type.OperatorType;
+import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * Translates a boolean rule into a {@link Predicate} over records, so a collection can be filtered without
+ * running the interpreter for every record.
+ *
+ * <p>The record is bound to an unknown input path. Supported definitions are conjunctions of literals that
+ * compare record fields with constants, known input, data or folded rules, optionally negated.
+ * The rule is the disjunction of its definitions. Literals are applied with the same {@link InfixOperator} as the
+ * interpreter, and a missing record field leaves the literal undefined as it would in the policy.
+ */
+public final class PredicateCompiler {
+
+    private static final String INPUT = "input";
+    private static final String DATA = "data";
+    private static final Set<OperatorType> COMPARISONS = EnumSet.of(
+        OperatorType.EQUAL, OperatorType.NOT_EQUAL,
+        OperatorType.LESS_THAN, OperatorType.LESS_THAN_EQ,
+        OperatorType.GREATER_THAN, OperatorType.GREATER_THAN_EQ);
+
+    private final CompiledPolicy compiledPolicy;
+    private final List<String> recordPath;
+    private final JsonObject knownInput;
+    private final JsonObject data;
+    private final Set<String> foldableRules;
+    private final JsonObject foldedValues;
+
+    /**
+     * @param recordPath dot separated input path of the record, e.g. <code>input.record</code>
+     * @param foldedValues values of the defined foldable rules, see {@link PartialEvaluator}
+     */
+    public PredicateCompiler(CompiledPolicy compiledPolicy, String recordPath, JsonObject knownInput,
+        JsonObject data, Set<String> foldableRules, JsonObject foldedValues
+    ) {
+        this.compiledPolicy = compiledPolicy;
+        this.recordPath = Arrays.asList(recordPath.split("\\."));
+        this.knownInput = knownInput;
+        this.data = data;
+        this.foldableRules = foldableRules;
+        this.foldedValues = foldedValues;
+    }
+
+    /**
+     * @return the rule as a predicate, null when one of its definitions can't be translated
+     */
+    public Predicate<JsonObject> compile(ParseTree policyTree, String ruleName) {
+        Predicate<JsonObject> rule = record -> false;
+        for (RegoParser.RruleContext rctx: ((RegoParser.ModuleContext) policyTree).policy().rrule()) {
+            RegoParser.Rule_definitionContext dctx = rctx.rule_definition();
+            if (dctx == null || !compiledPolicy.ruleName(dctx).equals(ruleName)) {
+                if (rctx.user_function() != null && rctx.user_function().VAR().getText().equals(ruleName)) {
+                    return null;
+                }
+                continue;
+            }
+            if (dctx.DEFAULT() != null) {
+                if (compiledPolicy.scalar(dctx.scalar()) == JsonValue.TRUE) {
+                    return record -> true;
+                }
+                continue;
+            }
+            Predicate<JsonObject> definition = compileDefinition(dctx);
+            if (definition == null) {
+                return null;
+            }
+            rule = rule.or(definition);
+        }
+        return rule;
+    }
+
+    private Predicate<JsonObject> compileDefinition(RegoParser.Rule_definitionContext ctx) {
+        RegoParser.Rule_headContext hctx = ctx.rule_head();
+        RegoParser.Rule_bodyContext bctx = ctx.rule_body();
+        if (hctx.rule_args() != null || hctx.rule_index() != null || hctx.rule_assignment() != null
+            || bctx == null || CompiledPolicy.hasElse(bctx)) {
+            return null;
+        }
+        Predicate<JsonObject> definition = record -> true;
+        for (RegoParser.LiteralContext lctx: bctx.query().literal()) {
+            Predicate<JsonObject> literal = compileLiteral(lctx);
+            if (literal == null) {
+                return null;
+            }
+            definition = definition.and(literal);
+        }
+        return definition;
+    }
+
+    private Predicate<JsonObject> compileLiteral(RegoParser.LiteralContext ctx) {
+        if (ctx.stat() == null || !ctx.with_modifier().isEmpty() || ctx.stat().stat_infix() == null) {
+            return null;
+        }
+        RegoParser.Stat_infixContext sctx = ctx.stat().stat_infix();
+        if (sctx.VAR() != null) {
+            return null;
+        }
+        Function<JsonObject, JsonValue> lhs = compileOperand(sctx.term(0));
+        if (lhs == null) {
+            return null;
+        }
+        Function<JsonObject, JsonValue> statement = lhs;
+        if (sctx.term().size() == 2) {
+            OperatorType op = compiledPolicy.operator(sctx.infix_operator());
+            Function<JsonObject, JsonValue> rhs = compileOperand(sctx.term(1));
+            if (rhs == null || !COMPARISONS.contains(op)) {
+                return null;
+            }
+            statement = record -> InfixOperator.applyInfixOperator(lhs.apply(record), op, rhs.apply(record));
+        }
+        return toPredicate(statement, ctx.NOT() != null);
+    }
+
+    /**
+     * Same outcome as a literal in a rule body: false fails, an undefined reference fails unless negated.
+     */
+    private static Predicate<JsonObject> toPredicate(Function<JsonObject, JsonValue> statement, boolean negated) {
+        return record -> {
+            JsonValue value;
+            try {
+                value = statement.apply(record);
+            } catch (RegoProcessorException.BadReferenceException e) {
+                return negated;
+            }
+            return negated ? value == JsonValue.FALSE : value != JsonValue.FALSE;
+        };
+    }
+
+    private Function<JsonObject, JsonValue> compileOperand(RegoParser.TermContext ctx) {
+        if (ctx.scalar() != null) {
+            JsonValue value = compiledPolicy.scalar(ctx.scalar());
+            return record -> value;
+        }
+        List<String> path = PartialEvaluator.constantPrefix(ctx.ref());
+        if (path.isEmpty() || path.size() - 1 != ctx.ref().ref_arg().size()) {
+            return null;
+        }
+        if (isPrefix(recordPath, path)) {
+            List<String> recordKeys = path.subList(recordPath.size() - 1, path.size());
+            return record -> orUndefined(PartialEvaluator.resolve(record, recordKeys), path);
+        } else if (isPrefix(path, recordPath)) {
+            return null;
+        }
+        JsonValue value;
+        String root = path.get(0);
+        if (root.equals(INPUT)) {
+            value = PartialEvaluator.resolve(knownInput, path);
+        } else if (root.equals(DATA)) {
+            value = PartialEvaluator.resolve(data, path);
+        } else if (foldableRules.contains(root)) {
+            value = PartialEvaluator.resolve(foldedValues.get(root), path);
+        } else {
+            return null;
+        }
+        return record -> orUndefined(value, path);
+    }
+
+    private static boolean isPrefix(List<String> prefix, List<String> path) {
+        return path.size() >= prefix.size() && path.subList(0, prefix.size()).equals(prefix);
+    }
+
+    private static JsonValue orUndefined(JsonValue value, List<String> path) {
+        if (value == null) {
+            throw new RegoProcessorException.BadReferenceException("Undefined reference: " + String.join(".", path));
+        }
+        return value;
+    }
+}
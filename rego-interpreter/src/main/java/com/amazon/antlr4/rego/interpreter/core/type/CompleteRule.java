@@ -69,6 +69,11 @@ public class CompleteRule extends Rule {
 
     @Override
     public JsonValue mergeValues(Set<Rule> rules) {
+        // a single definition needs no merging, skip hashing its (possibly large) value
+        if (rules.size() == 1) {
+            return rules.iterator().next().getValue();
+        }
+
         // complete rules must not produce multiple outputs
         int countDistinctValues = ((Long) rules.stream()
                 .filter(rule -> rule.hasValue() && !HAS_DEFAULT_VALUE.test(rule))
@@ -0,0 +1,98 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core.type;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.json.JsonValue;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/**
+ * Literal rules of the previous run of a query body, kept by its {@link UnderscoreLocation}.
+ *
+ * <p>For each literal the trail records the highest choice point read while it was evaluated.
+ * When the underscore location backtracks to a choice point, the literals that read only lower choice points,
+ * and all literals before them, still hold. The next run reuses them and resumes from the first other literal.
+ * Some variables get back the value they had after the last reused literal.
+ * Only literals found at the same position of the fresh rules are reused.
+ */
+public class LiteralTrail {
+
+    private static final int NOT_RUN = Integer.MAX_VALUE;
+
+    final ParseTree query;
+    boolean claimed = false;
+    private List<Rule> rules = new ArrayList<>();
+    private int[] lastRead = new int[0];
+    private JsonValue[][] someValues = new JsonValue[0][];
+    private int reused = 0;
+
+    LiteralTrail(ParseTree query) {
+        this.query = query;
+    }
+
+    /**
+     * Rules to run: the literals of the previous run that still hold for the advanced choice point,
+     * then the fresh literals. Start of a new run.
+     */
+    public List<Rule> resume(List<Rule> freshRules, int advanced) {
+        reused = 0;
+        if (advanced >= 0 && rules.size() == freshRules.size()) {
+            while (reused < rules.size() && lastRead[reused] < advanced
+                    && rules.get(reused).ruleContext == freshRules.get(reused).ruleContext) {
+                reused++;
+            }
+        }
+        List<Rule> runRules = new ArrayList<>(freshRules.size());
+        runRules.addAll(rules.subList(0, reused));
+        runRules.addAll(freshRules.subList(reused, freshRules.size()));
+        if (reused > 0) {
+            restoreSomeValues(runRules, someValues[reused - 1]);
+        }
+        if (lastRead.length != runRules.size()) {
+            lastRead = new int[runRules.size()];
+            someValues = new JsonValue[runRules.size()][];
+        }
+        Arrays.fill(lastRead, reused, lastRead.length, NOT_RUN);
+        rules = runRules;
+        return runRules;
+    }
+
+    /**
+     * Number of rules at the start of the run that come from the previous run.
+     */
+    public int getReused() {
+        return reused;
+    }
+
+    /**
+     * Rule at the index was evaluated, or found evaluated, reading choice points up to the given one.
+     */
+    public void record(int index, int read) {
+        lastRead[index] = index > 0 ? Math.max(read, lastRead[index - 1]) : read;
+        someValues[index] = captureSomeValues(index);
+    }
+
+    private JsonValue[] captureSomeValues(int index) {
+        List<JsonValue> values = new ArrayList<>();
+        for (int i = 0; i <= index; i++) {
+            if (rules.get(i) instanceof SomeRule) {
+                values.add(((SomeRule) rules.get(i)).getLastValue());
+            }
+        }
+        return values.toArray(new JsonValue[0]);
+    }
+
+    private static void restoreSomeValues(List<Rule> runRules, JsonValue[] values) {
+        int next = 0;
+        for (Rule rule: runRules) {
+            if (next < values.length && rule instanceof SomeRule) {
+                ((SomeRule) rule).setLastValue(values[next++]);
+            }
+        }
+    }
+}
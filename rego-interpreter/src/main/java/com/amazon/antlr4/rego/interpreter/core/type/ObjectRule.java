@@ -28,6 +28,11 @@ public class ObjectRule extends Rule {
         return new ObjectRule(key, ruleContext);
     }
 
+    @Override
+    public void addValues(Rule rule) {
+        ((ObjectRule) rule).value.forEach((index, value) -> setValue(new IndexAssignment<>(index, value)));
+    }
+
     public ObjectRule(String key, ParserRuleContext context) {
         super(key, context);
     }
@@ -66,6 +66,19 @@ public abstract class RegoProcessorException extends RuntimeException {
         }
     }
 
+    /**
+     * Call of a batch expression whose result is only known after the batch ran.
+     * It is undefined until then.
+     */
+    public static class PendingCallException extends UndefinedRuleException {
+
+        private static final long serialVersionUID = 1L;
+
+        public PendingCallException(String expressionName) {
+            super(expressionName);
+        }
+    }
+
     /**
      * Within a local scope, all evaluations must be successful.
      * This exception indicates that at least one failed.
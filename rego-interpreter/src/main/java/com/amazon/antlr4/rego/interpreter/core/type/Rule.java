@@ -38,6 +38,13 @@ public abstract class Rule {
         throw new RuntimeException("This rule type cannot be copied: " + this.getClass());
     }
 
+    /**
+     * Add the values of a copy of this rule, e.g. one that evaluated part of a loop.
+     */
+    public void addValues(Rule rule) {
+        throw new RuntimeException("This rule type cannot add values: " + this.getClass());
+    }
+
     protected Rule(String key, ParserRuleContext context) {
         this.key = key;
         this.ruleContext = context;
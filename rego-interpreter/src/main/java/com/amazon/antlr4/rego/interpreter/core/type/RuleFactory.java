@@ -9,6 +9,7 @@ import java.util.List;
 import com.amazon.antlr4.rego.RegoParser;
 import com.amazon.antlr4.rego.RegoParser.RruleContext;
 import com.amazon.antlr4.rego.interpreter.core.lib.KeyFinder;
+import com.amazon.antlr4.rego.interpreter.core.type.RuleTemplate.RuleKind;
 
 import org.antlr.v4.runtime.tree.TerminalNode;
 
@@ -21,45 +22,64 @@ public final class RuleFactory {
      * assigned an arbitrary name.
      */
     public static List<Rule> buildFromQuery(RegoParser.QueryContext ctx) {
-        List<Rule> taskList = new ArrayList<>(ctx.literal().size());
+        return buildFromTemplates(templatesFromQuery(ctx));
+    }
+
+    /**
+     * Extract each executable RRule under Policy. Incomplete RRule names can be
+     * repeated but their definition is unique. Such duplicate RRule definitions are
+     * listed as separate items.
+     */
+    public static List<Rule> buildFromPolicy(RegoParser.PolicyContext ctx) {
+        return buildFromTemplates(templatesFromPolicy(ctx));
+    }
+
+    public static List<Rule> buildFromTemplates(List<RuleTemplate> templates) {
+        List<Rule> taskList = new ArrayList<>(templates.size());
+        for (RuleTemplate template : templates) {
+            taskList.add(template.newRule());
+        }
+        return taskList;
+    }
+
+    public static List<RuleTemplate> templatesFromQuery(RegoParser.QueryContext ctx) {
+        List<RuleTemplate> taskList = new ArrayList<>(ctx.literal().size());
         for (RegoParser.LiteralContext lctx : ctx.literal()) {
             if (lctx.some_decl() != null) {
                 addSomeRules(taskList, lctx);
             } else {
                 String key = KeyFinder.getLiteralKey(lctx);
-                taskList.add(new CompleteRule(key, lctx));
+                taskList.add(new RuleTemplate(key, lctx, RuleKind.COMPLETE));
             }
         }
         return taskList;
     }
 
-    private static void addSomeRules(List<Rule> taskList, RegoParser.LiteralContext lctx) {
+    private static void addSomeRules(List<RuleTemplate> taskList, RegoParser.LiteralContext lctx) {
         for (TerminalNode t: lctx.some_decl().VAR()) {
-            taskList.add(new SomeRule(t.getText(), lctx));
+            taskList.add(new RuleTemplate(t.getText(), lctx, RuleKind.SOME));
         }
     }
 
-    /**
-     * Extract each executable RRule under Policy. Incomplete RRule names can be
-     * repeated but their definition is unique. Such duplicate RRule definitions are
-     * listed as separate items.
-     */
-    public static List<Rule> buildFromPolicy(RegoParser.PolicyContext ctx) {
-        List<Rule> taskList = new ArrayList<>(ctx.rrule().size());
+    public static List<RuleTemplate> templatesFromPolicy(RegoParser.PolicyContext ctx) {
+        List<RuleTemplate> taskList = new ArrayList<>(ctx.rrule().size());
         for (RegoParser.RruleContext rctx : ctx.rrule()) {
-            if (rctx.user_function() != null) {
-                taskList.add(new RegoFunction(KeyFinder.getRruleKey(rctx), rctx, rctx.user_function()));
-            } else if (ObjectRule.isObjectRuleContext(rctx)) {
-                taskList.add(new ObjectRule(KeyFinder.getRruleKey(rctx), rctx));
-            } else if (isSetRuleContext(rctx)) {
-                taskList.add(new SetRule(KeyFinder.getRruleKey(rctx), rctx, false));
-            } else {
-                taskList.add(new CompleteRule(KeyFinder.getRruleKey(rctx), rctx));
-            }
+            taskList.add(new RuleTemplate(KeyFinder.getRruleKey(rctx), rctx, getRuleKind(rctx)));
         }
         return taskList;
     }
 
+    private static RuleKind getRuleKind(RruleContext rctx) {
+        if (rctx.user_function() != null) {
+            return RuleKind.FUNCTION;
+        } else if (ObjectRule.isObjectRuleContext(rctx)) {
+            return RuleKind.OBJECT;
+        } else if (isSetRuleContext(rctx)) {
+            return RuleKind.SET;
+        }
+        return RuleKind.COMPLETE;
+    }
+
     private static boolean isSetRuleContext(RruleContext ctx) {
         return ctx.rule_definition() != null
             && ctx.rule_definition().rule_head() != null
@@ -0,0 +1,44 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core.type;
+
+import com.amazon.antlr4.rego.RegoParser;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+
+/**
+ * Immutable description of a rule found in the policy tree.
+ * Rules carry per execution state, so a fresh {@link Rule} is stamped out of the template for every execution.
+ *
+ * <p>This class is the Prototype in a loose implementation of the
+ * <a href="https://en.wikipedia.org/wiki/Prototype_pattern">Prototype</a> design pattern.
+ */
+public final class RuleTemplate {
+
+    enum RuleKind {
+        COMPLETE, SET, OBJECT, FUNCTION, SOME
+    }
+
+    public final String key;
+    public final ParserRuleContext ruleContext;
+    private final RuleKind kind;
+
+    RuleTemplate(String key, ParserRuleContext ruleContext, RuleKind kind) {
+        this.key = key;
+        this.ruleContext = ruleContext;
+        this.kind = kind;
+    }
+
+    public Rule newRule() {
+        switch (kind) {
+            case FUNCTION:
+                RegoParser.RruleContext rctx = (RegoParser.RruleContext) ruleContext;
+                return new RegoFunction(key, rctx, rctx.user_function());
+            case OBJECT: return new ObjectRule(key, ruleContext);
+            case SET: return new SetRule(key, ruleContext, false);
+            case SOME: return new SomeRule(key, ruleContext);
+            default: return new CompleteRule(key, ruleContext);
+        }
+    }
+}
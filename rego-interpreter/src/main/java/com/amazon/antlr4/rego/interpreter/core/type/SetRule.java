@@ -31,6 +31,11 @@ public class SetRule extends Rule {
         return new SetRule(key, ruleContext, values instanceof List);
     }
 
+    @Override
+    public void addValues(Rule rule) {
+        setValue(((SetRule) rule).values.toArray(new JsonValue[0]));
+    }
+
     public SetRule(String key, ParserRuleContext context, boolean allowDuplicates) {
         super(key, context);
         if (allowDuplicates) {
@@ -22,9 +22,8 @@ import org.antlr.v4.runtime.ParserRuleContext;
  * <li> When used as a RefArg, an UnderscoreLocation is associated,
  * and last value is saved on the object for reuse. (RefArg is <code>.var</code> or <code>[var]</code>)
  * <li> Next value is generated by UnderscoreLocation semantics.
- * <li>Multi-valued resolution is <strong>NOT</strong> supported.
- * For example, <code>some i; obj[[1, i]]</code> won't work.
- * This requires walking object hierarchy and resolving all variable occurances.
+ * <li> When nested in a RefArg, as in <code>some i; arr[[1, i]]</code>, each element of the array is
+ * a choice of the UnderscoreLocation, and is unified with the RefArg to bind the variables.
  * </ul>
  */
 public class SomeRule extends Rule implements JsonValue {
@@ -3,9 +3,10 @@
 
 package com.amazon.antlr4.rego.interpreter.core.type;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 import javax.json.JsonArray;
 import javax.json.JsonValue;
@@ -14,6 +15,8 @@ import com.amazon.antlr4.rego.interpreter.core.PolicyVisitor;
 import com.amazon.antlr4.rego.interpreter.core.RuleManager;
 import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
 
+import org.antlr.v4.runtime.tree.ParseTree;
+
 /**
  * Rules that work like unnamed local variables which are automagically assigned.
  * See OPA documentation
@@ -32,13 +35,14 @@ import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
  * <li>{@link RuleManager} - provides underscore object from current symbol table using static constant key.
  * <li>{@link UnderscoreLocation}
  * <ul>
- * <li>Each instance of this class represents one unique permutation of underscore values in scope.
- * <code>peek</code> generates underscore permutations using DFS.
- * When a new underscore is found, its first value is added to current instance.
- * Remaining values are added to copies and stored in a job queue.
- * <li>All underscore values are stored in a list. So, the copy constructor can generate the next permutation.
- * <li>All underscore occurances are stored in a map. So, <code>peek</code> knows if it encounterd a new underscore.
- * <li>Maintains a job queue populated on underscore discovery so <b>all</b> loop iterations can be run in parallel.
+ * <li>Each instance of this class is the stack of choice points of one query body, one per underscore occurrence.
+ * <code>peek</code> pushes a choice point the first time an underscore is read and returns its current value.
+ * <li>Between runs the stack backtracks: the last choice point with values left takes its next value
+ * and the choice points above it are dropped, so the iteration is a depth first search like nested loops.
+ * <li><code>peek</code> looks up the choice point of the rule context and array, so it knows if it encountered a new underscore.
+ * <li>The literals of the previous run are kept in a {@link LiteralTrail}. A run resumes from the first literal
+ * that read the advanced choice point, the literals before it are not evaluated again.
+ * <li>A loop over a single array can be sliced in ranges of values, each range is run by its own copy.
  * </ul>
  * </ul>
  *
@@ -56,93 +60,219 @@ public class UnderscoreLocation extends Rule implements JsonValue {
     public static final String UNDERSCORE_RULE_KEY = UUID.randomUUID().toString();
 
     /**
-     * Immutable reference to a single value of an underscore variable.
+     * Choice point of an underscore or some variable: the values it iterates and the current one.
      */
     private static class UnderscoreValue {
+        private final Object ctx;
         private final JsonArray array;
-        private final UnderscoreValue next;
+        private final int[] positions;
+        private final int from;
+        private final int to;
         private int index;
 
         /**
-         * Reference to first value of the underscore variable.
+         * Reference to the values from index <code>from</code> up to, not including, <code>to</code>.
+         */
+        UnderscoreValue(Object ctx, JsonArray array, int from, int to) {
+            this(ctx, array, null, from, to);
+        }
+
+        /**
+         * Reference to the values at the given positions of the array, all values when positions is null.
          */
-        UnderscoreValue(JsonArray array, UnderscoreValue next) {
+        UnderscoreValue(Object ctx, JsonArray array, int[] positions, int from, int to) {
+            this.ctx = ctx;
             this.array = array;
-            this.next = next;
-            this.index = 0;
+            this.positions = positions;
+            this.from = from;
+            this.to = to;
+            this.index = from;
+        }
+
+        boolean matches(Object ctx, JsonArray state) {
+            return this.ctx.equals(ctx) && (array == state || array.equals(state));
+        }
+
+        int position() {
+            return positions == null ? index : positions[index];
         }
 
         JsonValue peek() {
-            if (array.isEmpty()) {
+            if (array.isEmpty() || from == to) {
                 throw new RegoProcessorException.BadReferenceException("Read from empty array");
             }
-            return array.get(index);
+            return array.get(position());
         }
 
-        boolean areReadyForNext() {
-            return next.areReadyForNext() || this.isReadyForNext();
-        }
-
-        private boolean isReadyForNext() {
-            if (index + 1 < array.size()) {
+        boolean isReadyForNext() {
+            if (index + 1 < to) {
                 index++;
-                next.reset();
                 return true;
             }
             return false;
         }
-
-        protected void reset() {
-            index = 0;
-            next.reset();
-        }
     }
 
-    private UnderscoreValue lastUnderscore = new UnderscoreValue(null, null) {
-        @Override
-        boolean areReadyForNext() {
-            return false;
-        }
+    /**
+     * Choice points in the order they were found. The last one varies fastest, like the innermost of nested loops.
+     * A choice point is found by its rule context and the array it reads. Arrays are compared by identity first,
+     * equal arrays built again by a later run, e.g. from a literal, find the same choice point.
+     */
+    private final List<UnderscoreValue> choices = new ArrayList<>();
 
-        @Override
-        protected void reset() {}
-    };
+    /**
+     * Highest choice point read since {@link #takeLastRead()}, -1 for none.
+     */
+    private int lastRead = -1;
 
     /**
-     * Provide search for the underscore runtime context.
+     * Choice point advanced for the current run, -1 for the first run.
      */
-    private final Map<String, UnderscoreValue> arrayMap;
+    private int lastAdvanced = -1;
+
+    /**
+     * Literals of the previous run of the query, see {@link LiteralTrail}.
+     */
+    private LiteralTrail trail = null;
 
     /**
      * Create the root object for the local scope before first run.
      */
     public UnderscoreLocation() {
         super(UNDERSCORE_RULE_KEY, null);
-        arrayMap = new HashMap<>();
     }
 
     public JsonValue peek(Object ctx, JsonArray state) {
-        String key = ctx.hashCode() + "-" + state.hashCode();
-        UnderscoreValue score = arrayMap.get(key);
-        if (score == null) {
-            lastUnderscore = new UnderscoreValue(state, lastUnderscore);
-            score = lastUnderscore;
-            arrayMap.put(key, score);
-        }
-        return score.peek();
+        return choices.get(findChoice(ctx, state, true)).peek();
     }
 
     public JsonValue peekIndex(Object ctx, JsonArray state) {
-        String key = ctx.hashCode() + "-" + state.hashCode();
-        UnderscoreValue score = arrayMap.get(key);
-        if (score == null) {
+        int choice = findChoice(ctx, state, false);
+        if (choice < 0) {
             return JsonValue.NULL;
         }
-        return JsonResolver.nativeToJson(score.index);
+        return JsonResolver.nativeToJson(choices.get(choice).position());
+    }
+
+    /**
+     * Unless the underscore or some variable already iterates the array, make it iterate only the values at the
+     * positions given, in that order. Used when the other values are known not to satisfy the literal.
+     */
+    public void restrictChoice(Object ctx, JsonArray state, Supplier<int[]> positions) {
+        if (indexOf(ctx, state) < 0) {
+            int[] restricted = positions.get();
+            choices.add(new UnderscoreValue(ctx, state, restricted, 0, restricted.length));
+        }
     }
 
+    private int findChoice(Object ctx, JsonArray state, boolean register) {
+        int choice = indexOf(ctx, state);
+        if (choice < 0) {
+            if (!register) {
+                return -1;
+            }
+            choice = choices.size();
+            choices.add(new UnderscoreValue(ctx, state, 0, state.size()));
+        }
+        lastRead = Math.max(lastRead, choice);
+        return choice;
+    }
+
+    private int indexOf(Object ctx, JsonArray state) {
+        for (int i = 0; i < choices.size(); i++) {
+            if (choices.get(i).matches(ctx, state)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Number of underscore and some variables found so far.
+     */
+    public int size() {
+        return choices.size();
+    }
+
+    /**
+     * Values iterated when exactly one underscore or some variable was found, null otherwise
+     * or when the variable iterates only some of the values.
+     */
+    public JsonArray getSingleLoopArray() {
+        if (choices.size() != 1 || choices.get(0).positions != null) {
+            return null;
+        }
+        return choices.get(0).array;
+    }
+
+    /**
+     * Copy of a single loop that iterates the values from index <code>from</code> up to, not including, <code>to</code>.
+     * See {@link #getSingleLoopArray()}.
+     */
+    public UnderscoreLocation slice(int from, int to) {
+        UnderscoreValue loop = choices.get(0);
+        UnderscoreLocation slice = new UnderscoreLocation();
+        slice.choices.add(new UnderscoreValue(loop.ctx, loop.array, from, to));
+        return slice;
+    }
+
+    /**
+     * Backtrack to the last choice point with values left and take its next value.
+     * The choice points found after it are dropped, the next run finds them again for the new value.
+     */
     public synchronized boolean isReadyForNext() {
-        return lastUnderscore != null && lastUnderscore.areReadyForNext();
+        for (int i = choices.size() - 1; i >= 0; i--) {
+            if (choices.get(i).isReadyForNext()) {
+                while (choices.size() > i + 1) {
+                    choices.remove(choices.size() - 1);
+                }
+                lastAdvanced = i;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return highest choice point read since the last call, -1 for none
+     */
+    public int takeLastRead() {
+        int read = lastRead;
+        lastRead = -1;
+        return read;
+    }
+
+    /**
+     * Choice point whose value changed since the previous run, -1 before the first run.
+     * What was computed from lower choice points only still holds.
+     */
+    public int getLastAdvanced() {
+        return lastAdvanced;
+    }
+
+    /**
+     * Trail of the query run under this location. The first query to ask claims it, later ones get null.
+     */
+    public LiteralTrail claimTrail(ParseTree query) {
+        if (trail == null) {
+            trail = new LiteralTrail(query);
+        } else if (trail.query != query) {
+            return null;
+        }
+        if (trail.claimed) {
+            return null;
+        }
+        trail.claimed = true;
+        return trail;
+    }
+
+    /**
+     * Called before each run, the trail can be claimed again.
+     */
+    public void startRun() {
+        if (trail != null) {
+            trail.claimed = false;
+        }
     }
 
     /**
@@ -29,6 +29,14 @@ public class WithRuleManager extends RuleManager {
         return this;
     }
 
+    /**
+     * Rules missing here are recomputed from the external context, which a fork can't do.
+     */
+    @Override
+    public boolean isForkable() {
+        return false;
+    }
+
     public JsonValue getRuleValue(String ruleName) {
         Set<Rule> rules = super.searchRuleStackRecursively(ruleName);
         if (rules.size() == 0) {
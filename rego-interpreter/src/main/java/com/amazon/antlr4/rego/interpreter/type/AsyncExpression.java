@@ -0,0 +1,29 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.type;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.core.type.BaseExpression;
+
+/**
+ * Interface for user registered functions that do I/O, like directory lookups or feature flag reads.
+ *
+ * <p>With {@link com.amazon.antlr4.rego.interpreter.RegoExecutor#executePolicyAsync executePolicyAsync}
+ * no thread waits for the returned future. A call whose future isn't done is undefined, also under
+ * <code>not</code>, and evaluation goes on to start the other calls. The policy runs again once all of them
+ * complete, with the results of all calls made so far. Other executions wait for the future.
+ *
+ * <p>The same thread-safety contract as {@link Expression} applies. A call is started only once per execution
+ * for the same arguments, the context map is the one of {@link ContextAwareExpression}.
+ */
+public interface AsyncExpression extends BaseExpression {
+    CompletableFuture<JsonValue> run(List<JsonValue> args, JsonObject inputJson, JsonObject dataJson,
+        Map<String, Object> contextMap);
+}
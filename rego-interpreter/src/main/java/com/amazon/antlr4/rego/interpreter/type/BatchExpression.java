@@ -0,0 +1,39 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.type;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.core.type.BaseExpression;
+
+/**
+ * Interface for user registered functions that look up many values at once, like a call per element of
+ * <code>input.resources[_]</code> against a remote cache.
+ *
+ * <p>With {@link com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder#gatherBatchCalls gatherBatchCalls}
+ * the calls of a policy execution are gathered: a call with new arguments is undefined at first, also under
+ * <code>not</code>, and the policy runs on. At the end of the run the expression gets the arguments of all new
+ * calls in one batch, then the whole policy is evaluated again with the results. An execution ends with a run
+ * without new calls, so a loop of lookups takes one batch and the result is the same as with single calls.
+ * Calls that depend on the results of a batch take another batch and another run.
+ *
+ * <p>Other registered expressions are called once per execution for the same arguments, their results are
+ * reused by the later runs. Built-in functions and policy rules are evaluated again in every run.
+ * Without the option each call is a batch of one.
+ *
+ * <p>The same thread-safety contract as {@link Expression} applies, the context map is the one of
+ * {@link ContextAwareExpression}.
+ */
+public interface BatchExpression extends BaseExpression {
+    /**
+     * @param argsList arguments of each call
+     * @return result of each call in the order of argsList, null for an undefined result
+     */
+    List<JsonValue> run(List<List<JsonValue>> argsList, JsonObject inputJson, JsonObject dataJson,
+        Map<String, Object> contextMap);
+}
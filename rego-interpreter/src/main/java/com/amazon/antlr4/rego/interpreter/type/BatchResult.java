@@ -0,0 +1,50 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.type;
+
+import javax.json.JsonObject;
+
+/**
+ * Outcome of one input of a batch execution, either the policy output or the error it failed with.
+ */
+public final class BatchResult {
+    private final JsonObject output;
+    private final Exception error;
+
+    private BatchResult(JsonObject output, Exception error) {
+        this.output = output;
+        this.error = error;
+    }
+
+    public static BatchResult success(JsonObject output) {
+        return new BatchResult(output, null);
+    }
+
+    public static BatchResult failure(Exception error) {
+        return new BatchResult(null, error);
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    /**
+     * @return policy output or null when the execution failed
+     */
+    public JsonObject getOutput() {
+        return output;
+    }
+
+    /**
+     * @return error the execution failed with or null when it succeeded
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccessful() ? String.valueOf(output) : "error: " + error;
+    }
+}
@@ -19,7 +19,11 @@ import com.amazon.antlr4.rego.interpreter.core.type.BaseExpression;
  * Instances of this interface are the Concrete Command types.
  * Context allows passing expensive (large) objects across expression calls without overhead of JSON serialization.
  *
- * @param contextMap synchronized map of objects specific to this policy execution.
+ * <p>The same thread-safety contract as {@link Expression} applies. Per request state belongs in the context map.
+ *
+ * @param contextMap map of objects specific to this policy execution when passed with
+ * {@link com.amazon.antlr4.rego.interpreter.RegoExecutor#executePolicy(JsonObject, Map) executePolicy}.
+ * Otherwise it is the initial context map of the builder, shared by all executions.
  * The same map is available across all expression calls in one execution.
  * This is eligible for garbage collection at the end of policy execution.
  */
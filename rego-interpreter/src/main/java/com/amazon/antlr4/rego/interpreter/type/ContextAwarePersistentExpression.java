@@ -8,6 +8,7 @@ import java.util.Map;
 /**
  * Interface for expressions that store data external to the current Rego execution context (e.g. file system, DB, etc.)
  * and require cleanup after the Rego evaluation is completed.
+ * Cleanup runs after every execution with its context map, concurrent executions should each pass their own map.
  */
 public interface ContextAwarePersistentExpression extends ContextAwareExpression {
     /**
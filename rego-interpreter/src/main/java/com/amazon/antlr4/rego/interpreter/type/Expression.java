@@ -16,6 +16,10 @@ import com.amazon.antlr4.rego.interpreter.core.type.BaseExpression;
  * <p>This is the Command interface in the
  * <a href="https://en.wikipedia.org/wiki/Command_pattern">Command</a> design pattern.
  * Instances of this interface are the Concrete Command types.
+ *
+ * <p>A registered expression is shared by every execution of the executor, which may run on several threads.
+ * Implementations must be thread-safe, ideally stateless. Results within one execution are cached,
+ * so an expression is expected to return the same value for the same arguments.
  */
 public interface Expression extends BaseExpression {
     JsonValue run(List<JsonValue> args, JsonObject inputJson, JsonObject dataJson);
@@ -0,0 +1,21 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.type;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an {@link Expression} whose result depends only on its arguments, not on input, data or time.
+ * Results are then shared by all executions, see
+ * {@link com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder#expressionCacheEntries expressionCacheEntries}.
+ * Lambdas can't be annotated, name them with
+ * {@link com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder#pureExpressions pureExpressions} instead.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface Pure {
+}
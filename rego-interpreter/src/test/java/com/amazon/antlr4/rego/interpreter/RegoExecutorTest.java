@@ -3,10 +3,30 @@
 
 package com.amazon.antlr4.rego.interpreter;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonFingerprint;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
 import com.amazon.antlr4.rego.interpreter.type.BadPolicyException;
+import com.amazon.antlr4.rego.interpreter.type.CacheStats;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
 
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.tree.ParseTree;
 import org.junit.jupiter.api.Test;
 
 public class RegoExecutorTest {
@@ -35,4 +55,117 @@ public class RegoExecutorTest {
             () -> new RegoExecutorBuilder(TEST_POLICY).build().getCoverageMap()
         );
     }
+
+    @Test
+    public void parseTreeCacheReusesTreeOfSamePolicyText() throws Exception {
+        AtomicInteger parses = new AtomicInteger();
+        String policy = "package cached \n allow { input.a == 1 }";
+        ParseTree first = ParseTreeCache.get(CharStreams.fromString(policy), p -> {
+            parses.incrementAndGet();
+            return RegoExecutor.prepPolicyTree(p);
+        });
+        ParseTree second = ParseTreeCache.get(CharStreams.fromString(policy), p -> {
+            parses.incrementAndGet();
+            return RegoExecutor.prepPolicyTree(p);
+        });
+        assertSame(first, second);
+        assertEquals(1, parses.get());
+
+        RegoExecutor executor = new RegoExecutorBuilder(policy).parseTreeCache(true).build();
+        assertEquals("{\"allow\":true}", executor.executePolicy("{\"a\": 1}").toString());
+    }
+
+    @Test
+    public void parseTreeCacheDropsLeastRecentlyUsedTrees() throws Exception {
+        try {
+            RegoExecutorBuilder.setParseTreeCacheSize(2);
+            for (int i = 0; i < 5; i++) {
+                new RegoExecutorBuilder("package p" + i).parseTreeCache(true).build();
+            }
+            assertEquals(2, ParseTreeCache.size());
+        } finally {
+            RegoExecutorBuilder.setParseTreeCacheSize(ParseTreeCache.DEFAULT_SIZE);
+        }
+    }
+
+    @Test
+    public void pureExpressionResultsAreSharedAcrossExecutions() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Expression slow = (args, input, data) -> {
+            calls.incrementAndGet();
+            return args.get(0);
+        };
+        RegoExecutor executor = new RegoExecutorBuilder("package p\n"
+            + "a := slow(input.x)\n"
+            + "b := json.unmarshal(`{\"k\": 1}`)\n")
+            .expressions(Collections.singletonMap("slow", slow))
+            .pureExpressions("slow")
+            .expressionCacheEntries(100)
+            .build();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i % 2, executor.executePolicy("{\"x\": " + i % 2 + "}").getInt("a"));
+        }
+        assertEquals(2, calls.get());
+        Map<String, CacheStats> stats = executor.getExpressionCacheStats();
+        assertEquals(8, stats.get("slow").getHits());
+        assertEquals(2, stats.get("slow").getMisses());
+        assertEquals(9, stats.get("json.unmarshal").getHits());
+    }
+
+    @Test
+    public void decisionCacheReturnsOutputOfEqualInput() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Expression count = (args, input, data) -> JsonResolver.nativeToJson(calls.incrementAndGet());
+        RegoExecutor executor = new RegoExecutorBuilder("package p\n a := count(input.x)\n")
+            .expressions(Collections.singletonMap("count", count))
+            .decisionCache(1 << 20, Duration.ofMinutes(1))
+            .build();
+        JsonObject first = executor.executePolicy("{\"x\": 1, \"y\": [1, 2]}");
+        assertSame(first, executor.executePolicy("{\"y\": [1, 2], \"x\": 1}"));
+        assertEquals(2, executor.executePolicy("{\"x\": 1, \"y\": [2, 1]}").getInt("a"));
+        assertEquals(2, calls.get());
+        assertEquals(1, executor.getDecisionCacheStats().getHits());
+        assertEquals(2, executor.getDecisionCacheStats().getMisses());
+    }
+
+    @Test
+    public void decisionCacheDropsExpiredAndLeastRecentlyUsedOutputs() throws Exception {
+        DecisionCache cache = new DecisionCache(2000, Duration.ofMillis(50).toNanos());
+        JsonObject output = Json.createObjectBuilder().add("allow", true).build();
+        for (int i = 0; i < 20; i++) {
+            JsonObject input = Json.createObjectBuilder().add("i", i).build();
+            cache.put(JsonFingerprint.of(input), input, output);
+            assertTrue(cache.getBytes() <= 2000);
+        }
+        JsonObject input = Json.createObjectBuilder().add("i", 19).build();
+        assertSame(output, cache.get(JsonFingerprint.of(input), input));
+        JsonObject oldest = Json.createObjectBuilder().add("i", 0).build();
+        assertNull(cache.get(JsonFingerprint.of(oldest), oldest));
+        Thread.sleep(100);
+        assertNull(cache.get(JsonFingerprint.of(input), input));
+    }
+
+    @Test
+    public void syntaxErrorsAreReportedOnce() throws Exception {
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        try {
+            System.setErr(new PrintStream(captured, true, "UTF-8"));
+            RegoExecutor.prepPolicyTree(CharStreams.fromString(TEST_POLICY));
+            assertEquals("", captured.toString("UTF-8"));
+            assertThrows(RuntimeException.class,
+                () -> RegoExecutor.prepPolicyTree(CharStreams.fromString("package p \n allow { input.x == }")));
+        } finally {
+            System.setErr(stderr);
+        }
+        String errors = captured.toString("UTF-8");
+        assertEquals(errors.indexOf("line 2:"), errors.lastIndexOf("line 2:"), errors);
+        assertTrue(errors.contains("line 2:"), errors);
+    }
+
+    @Test
+    public void warmUpRejectsBadPolicy() throws Exception {
+        RegoExecutorBuilder.warmUpParser(TEST_POLICY, "package p \n x[y] { y := input.a[_] }");
+        assertThrows(BadPolicyException.class, () -> RegoExecutorBuilder.warmUpParser("pack abc"));
+    }
 }
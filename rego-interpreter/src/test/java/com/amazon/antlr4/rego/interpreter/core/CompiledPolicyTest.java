@@ -0,0 +1,185 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core;
+
+import java.util.List;
+
+import com.amazon.antlr4.rego.RegoBaseListener;
+import com.amazon.antlr4.rego.RegoLexer;
+import com.amazon.antlr4.rego.RegoParser;
+import com.amazon.antlr4.rego.interpreter.core.type.Rule;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CompiledPolicyTest {
+
+    private static final String TEST_POLICY = "package a.b \n"
+        + "import data.x as y \n"
+        + "r := 1 + 2 * 3 \n"
+        + "s[v] { v := input.list[_]; v != \"z\" } \n"
+        + "f(p, q) = p + q \n"
+        + "t := f(1, 2) \n"
+        + "default u = true \n";
+
+    @Test
+    public void compiledTablesMatchOnTheFlyResolution() {
+        ParseTree tree = parse(TEST_POLICY);
+        CompiledPolicy compiled = CompiledPolicy.compile(tree);
+        CompiledPolicy empty = CompiledPolicy.EMPTY;
+        ParseTreeWalker.DEFAULT.walk(new RegoBaseListener() {
+            @Override
+            public void enterInfix_operator(RegoParser.Infix_operatorContext ctx) {
+                Assertions.assertSame(empty.operator(ctx), compiled.operator(ctx));
+            }
+
+            @Override
+            public void enterScalar(RegoParser.ScalarContext ctx) {
+                Assertions.assertEquals(empty.scalar(ctx), compiled.scalar(ctx));
+            }
+
+            @Override
+            public void enterRef(RegoParser.RefContext ctx) {
+                if (ctx.VAR() != null) {
+                    Assertions.assertEquals(empty.refName(ctx), compiled.refName(ctx));
+                }
+            }
+
+            @Override
+            public void enterExpr_call(RegoParser.Expr_callContext ctx) {
+                Assertions.assertEquals(empty.functionName(ctx), compiled.functionName(ctx));
+            }
+
+            @Override
+            public void enterUser_function(RegoParser.User_functionContext ctx) {
+                Assertions.assertEquals(List.of("p", "q"), compiled.argumentNames(ctx));
+            }
+
+            @Override
+            public void enterRimport(RegoParser.RimportContext ctx) {
+                Assertions.assertEquals("y", compiled.importName(ctx));
+            }
+        }, tree);
+    }
+
+    @Test
+    public void compiledRulesAreNewOnEveryBuild() {
+        ParseTree tree = parse(TEST_POLICY);
+        CompiledPolicy compiled = CompiledPolicy.compile(tree);
+        RegoParser.PolicyContext pctx = ((RegoParser.ModuleContext) tree).policy();
+        List<Rule> first = compiled.buildFromPolicy(pctx);
+        List<Rule> second = compiled.buildFromPolicy(pctx);
+        Assertions.assertEquals(pctx.rrule().size(), first.size());
+        for (int i = 0; i < first.size(); i++) {
+            Assertions.assertEquals(first.get(i).key, second.get(i).key);
+            Assertions.assertSame(first.get(i).ruleContext, second.get(i).ruleContext);
+            Assertions.assertNotSame(first.get(i), second.get(i));
+        }
+    }
+
+    @Test
+    public void operatorOrdersAreWorkedOutOnce() {
+        ParseTree tree = parse("package a; r := 2 - 4 * (2 + 3) < 1 == true");
+        CompiledPolicy compiled = CompiledPolicy.compile(tree);
+        RegoParser.ItermContext root = ((RegoParser.ModuleContext) tree).policy().rrule(0)
+            .rule_definition().rule_head().rule_assignment().iterm();
+        Assertions.assertSame(compiled.operatorOrder(root), compiled.operatorOrder(root));
+        Assertions.assertNotSame(CompiledPolicy.EMPTY.operatorOrder(root), CompiledPolicy.EMPTY.operatorOrder(root));
+    }
+
+    @Test
+    public void independentRulesAreInDifferentGroups() {
+        CompiledPolicy compiled = CompiledPolicy.compile(parse("package a \n"
+            + "a := b + 1 \n"
+            + "b := 1 \n"
+            + "c := f(2) \n"
+            + "d := f(3) \n"
+            + "f(x) = x \n"
+            + "e := input.e \n"));
+        Assertions.assertEquals(compiled.ruleGroup("a"), compiled.ruleGroup("b"));
+        Assertions.assertEquals(compiled.ruleGroup("c"), compiled.ruleGroup("d"));
+        Assertions.assertEquals(compiled.ruleGroup("c"), compiled.ruleGroup("f"));
+        Assertions.assertNotEquals(compiled.ruleGroup("a"), compiled.ruleGroup("c"));
+        Assertions.assertNotEquals(compiled.ruleGroup("c"), compiled.ruleGroup("e"));
+        Assertions.assertTrue(compiled.ruleGroup("a") < compiled.ruleGroup("c"));
+        Assertions.assertEquals(-1, compiled.ruleGroup("missing"));
+    }
+
+    @Test
+    public void referencedNamesFollowDependencies() {
+        CompiledPolicy compiled = CompiledPolicy.compile(parse("package a \n"
+            + "import input.user as u \n"
+            + "a := f(1) \n"
+            + "b := g(2) \n"
+            + "f(x) = y { y := data.t[x] } \n"
+            + "g(x) = y { y := f(x); u == \"z\" } \n"
+            + "c := lookup(data.k) \n"));
+        Assertions.assertTrue(compiled.referencedNames("a").contains("data"));
+        Assertions.assertFalse(compiled.referencedNames("a").contains("input"));
+        Assertions.assertTrue(compiled.referencedNames("b").contains("input"));
+        Assertions.assertFalse(compiled.referencedNames("b").contains("u"));
+        Assertions.assertTrue(compiled.referencedNames("c").contains("lookup"));
+        Assertions.assertTrue(compiled.referencedNames("missing").isEmpty());
+    }
+
+    @Test
+    public void inputPathsFollowDependencies() {
+        CompiledPolicy compiled = CompiledPolicy.compile(parse("package a \n"
+            + "import input.user as u \n"
+            + "is_admin { data.admins[_] == u.id } \n"
+            + "names[n] { n := input.items[_].name; u.id != \"x\" } \n"
+            + "f(x) = y { y := input.tags[x] } \n"
+            + "b := f(1) \n"
+            + "c { is_admin; input.user.name == \"z\" } \n"
+            + "d := input \n"
+            + "e := data.k \n"));
+        Assertions.assertEquals(List.of(List.of("user", "id")), compiled.inputPaths("is_admin"));
+        Assertions.assertEquals(List.of(List.of("items"), List.of("user", "id")), compiled.inputPaths("names"));
+        Assertions.assertEquals(List.of(List.of("tags")), compiled.inputPaths("b"));
+        Assertions.assertEquals(List.of(List.of("user", "id"), List.of("user", "name")), compiled.inputPaths("c"));
+        Assertions.assertEquals(List.of(List.of()), compiled.inputPaths("d"));
+        Assertions.assertTrue(compiled.inputPaths("e").isEmpty());
+    }
+
+    @Test
+    public void elseBranchesAreFound() {
+        List<RegoParser.RruleContext> rules = ((RegoParser.ModuleContext) parse("package p \n"
+            + "a = 1 { input.a } \n"
+            + "b = 1 { input.a } else = 2 { input.b } \n"
+            + "c = 1 { input.a } else = 2 \n"
+            + "d = 1 { input.a } else { input.b } \n")).policy().rrule();
+        Assertions.assertFalse(CompiledPolicy.hasElse(rules.get(0).rule_definition().rule_body()));
+        for (int i = 1; i < rules.size(); i++) {
+            RegoParser.Rule_bodyContext body = rules.get(i).rule_definition().rule_body();
+            Assertions.assertTrue(CompiledPolicy.hasElse(body), rules.get(i).getText());
+        }
+    }
+
+    @Test
+    public void loopSitesAreCounted() {
+        ParseTree tree = parse("package p \n"
+            + "a[n] { n := input.items[_].name } \n"
+            + "b[n] { some i; input.items[i].size > 1; n := input.items[i].name } \n"
+            + "c[p] { x := input.items[_]; y := input.tags[_]; p := [x, y] } \n"
+            + "d[n] { some i; n := input.items[i].name; input.tags[i] } \n"
+            + "e { input.a == \"b\" } \n");
+        CompiledPolicy compiled = CompiledPolicy.compile(tree);
+        List<RegoParser.RruleContext> rules = ((RegoParser.ModuleContext) tree).policy().rrule();
+        int[] expected = {1, 1, 2, 2, 0};
+        for (int i = 0; i < rules.size(); i++) {
+            RegoParser.QueryContext query = rules.get(i).rule_definition().rule_body().query();
+            Assertions.assertEquals(expected[i], compiled.loopSites(query), rules.get(i).getText());
+            Assertions.assertEquals(expected[i], CompiledPolicy.EMPTY.loopSites(query), rules.get(i).getText());
+        }
+    }
+
+    private static ParseTree parse(String policy) {
+        RegoLexer lexer = new RegoLexer(CharStreams.fromString(policy));
+        return new RegoParser(new CommonTokenStream(lexer)).module();
+    }
+}
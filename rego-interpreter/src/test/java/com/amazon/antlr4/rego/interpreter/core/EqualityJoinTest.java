@@ -0,0 +1,116 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.RegoLexer;
+import com.amazon.antlr4.rego.RegoParser;
+import com.amazon.antlr4.rego.interpreter.core.lib.JoinIndex;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class EqualityJoinTest {
+
+    private static final String TEST_POLICY = "package p \n"
+        + "a { data.acl[_].owner == input.user } \n"
+        + "b { some i; input.ids[_] == data.acl[i].id } \n"
+        + "c { input.users[_].id == input.groups[_].members[0] } \n"
+        + "d { not data.acl[_].owner == input.user } \n"
+        + "e { data.acl[_].owner != input.user } \n"
+        + "f { data.acl[_].roles[_] == input.role } \n"
+        + "g { data.acl[input.i].owner == input.user } \n";
+
+    @Test
+    public void indexableSidesArePlanned() {
+        ParseTree tree = parse(TEST_POLICY);
+        CompiledPolicy policy = CompiledPolicy.compile(tree);
+        List<RegoParser.RruleContext> rules = ((RegoParser.ModuleContext) tree).policy().rrule();
+
+        EqualityJoin join = policy.equalityJoin(literal(rules, 0));
+        Assertions.assertEquals(0, join.indexedTerm());
+        Assertions.assertTrue(join.isDataRooted());
+        Assertions.assertEquals(1, join.collectionArgs().size());
+        Assertions.assertEquals("[_]", join.loopArg().getText());
+        Assertions.assertEquals(List.of(JsonResolver.nativeToJson("owner")), join.path());
+
+        // the side over data is preferred
+        join = CompiledPolicy.EMPTY.equalityJoin(literal(rules, 1));
+        Assertions.assertEquals(1, join.indexedTerm());
+        Assertions.assertEquals("[i]", join.loopArg().getText());
+
+        join = CompiledPolicy.EMPTY.equalityJoin(literal(rules, 2));
+        Assertions.assertEquals(1, join.indexedTerm());
+        Assertions.assertFalse(join.isDataRooted());
+        Assertions.assertEquals(List.of(JsonResolver.nativeToJson("members"), JsonResolver.nativeToJson(0)),
+            join.path());
+
+        for (int i = 3; i < rules.size(); i++) {
+            Assertions.assertNull(CompiledPolicy.EMPTY.equalityJoin(literal(rules, i)), rules.get(i).getText());
+        }
+    }
+
+    @Test
+    public void dataIndexesAreSharedByExecutions() {
+        ParseTree tree = parse(TEST_POLICY);
+        ParseTree literal = literal(((RegoParser.ModuleContext) tree).policy().rrule(), 0);
+        JsonObject data = Json.createReader(new StringReader("{\"acl\": [{\"owner\": \"a\"}, {\"owner\": 1}, {}, "
+            + "{\"owner\": \"a\"}, {\"owner\": [1]}]}")).readObject();
+        JsonArray acl = data.getJsonArray("acl");
+        List<JsonValue> aclPath = List.of(JsonResolver.nativeToJson("acl"));
+        List<JsonValue> path = List.of(JsonResolver.nativeToJson("owner"));
+
+        Map<List<JsonValue>, Set<List<JsonValue>>> dataPaths = CompiledPolicy.compile(tree).dataJoinPaths();
+        Assertions.assertEquals(Map.of(aclPath, Set.of(path, List.of(JsonResolver.nativeToJson("id")))), dataPaths);
+
+        JoinIndex shared = new JoinIndex(data, dataPaths, false, null);
+        Assertions.assertEquals(2, shared.dataIndexCount());
+        Assertions.assertTrue(shared.joins(aclPath, path));
+        Assertions.assertFalse(shared.joins(aclPath, List.of(JsonResolver.nativeToJson("name"))));
+        Assertions.assertFalse(shared.joins(null, path));
+
+        JoinIndex execution = shared.forExecution();
+        int[] positions = execution.positions(literal, aclPath, acl, path, JsonResolver.nativeToJson("a"));
+        Assertions.assertArrayEquals(new int[] {0, 3}, positions);
+        Assertions.assertSame(positions,
+            shared.forExecution().positions(literal, aclPath, acl, path, JsonResolver.nativeToJson("a")));
+        // arrays compare as sets
+        Assertions.assertNull(execution.positions(literal, aclPath, acl, path, array("[1]")));
+
+        // not from data, or data replaced by a with modifier
+        int[] local = execution.positions(literal, null, acl, path, JsonResolver.nativeToJson("a"));
+        Assertions.assertNotSame(positions, local);
+        Assertions.assertSame(local, execution.positions(literal, null, acl, path, JsonResolver.nativeToJson("a")));
+        JsonArray other = array("[{\"owner\": \"b\"}, {\"owner\": \"a\"}]");
+        Assertions.assertArrayEquals(new int[] {1},
+            execution.positions(literal, aclPath, other, path, JsonResolver.nativeToJson("a")));
+    }
+
+    private static RegoParser.Stat_infixContext literal(List<RegoParser.RruleContext> rules, int rule) {
+        List<RegoParser.LiteralContext> literals = rules.get(rule).rule_definition().rule_body().query().literal();
+        return literals.get(literals.size() - 1).stat().stat_infix();
+    }
+
+    private static JsonArray array(String json) {
+        return Json.createReader(new StringReader(json)).readArray();
+    }
+
+    private static ParseTree parse(String policy) {
+        RegoLexer lexer = new RegoLexer(CharStreams.fromString(policy));
+        return new RegoParser(new CommonTokenStream(lexer)).module();
+    }
+}
@@ -0,0 +1,92 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.amazon.antlr4.rego.RegoLexer;
+import com.amazon.antlr4.rego.RegoParser;
+import com.amazon.antlr4.rego.interpreter.core.type.Rule;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LiteralPlannerTest {
+
+    private static final String TEST_POLICY = "package p \n"
+        + "a { x := data.users[_]; check(x); input.method == \"GET\" } \n"
+        + "b { some i; input.items[i] == \"x\"; input.admin == true } \n"
+        + "c { not allowed; input.user == \"bob\" } \n"
+        + "d { y := input.a; input.b == y; y != 3 } \n"
+        + "e { log(input.a); log(input.b); input.c == 1 } \n"
+        + "f { count(input.xs) > 2 with input as {}; input.a == 1 } \n"
+        + "g { data.a[_] == 1; data.b[_] == 2; input.c == 3 } \n"
+        + "h { check(input.a); allowed } \n"
+        + "i { data.a[x] == data.b[y]; z := [x, y] } \n"
+        + "j { [x, {\"k\": y}] = input.pair; x == 1; y == 2 } \n"
+        + "allowed { input.user == \"alice\" } \n";
+
+    @Test
+    public void cheapChecksRunFirst() {
+        ParseTree tree = parse(TEST_POLICY);
+        LiteralPlanner planner = new LiteralPlanner(CompiledPolicy.compile(tree), Set.of("check", "log"),
+            Set.of("log"), false);
+        List<RegoParser.RruleContext> rules = ((RegoParser.ModuleContext) tree).policy().rrule();
+
+        // ahead of the iteration, which stays before the literal reading its variable
+        Assertions.assertEquals(List.of(2, 0, 1), planner.plannedOrder(query(rules, 0)));
+        // some variables are declared before they are read
+        Assertions.assertEquals(List.of(2, 0, 1), planner.plannedOrder(query(rules, 1)));
+        Assertions.assertEquals(List.of(1, 0), planner.plannedOrder(query(rules, 2)));
+        Assertions.assertEquals(List.of(0, 1, 2), planner.plannedOrder(query(rules, 3)));
+        // impure calls never move ahead, pure checks move ahead of them
+        Assertions.assertEquals(List.of(2, 0, 1), planner.plannedOrder(query(rules, 4)));
+        // nothing moves across a with modifier
+        Assertions.assertEquals(List.of(0, 1), planner.plannedOrder(query(rules, 5)));
+        // loops keep their nesting order
+        Assertions.assertEquals(List.of(2, 0, 1), planner.plannedOrder(query(rules, 6)));
+        // an expression costs more than a rule
+        Assertions.assertEquals(List.of(1, 0), planner.plannedOrder(query(rules, 7)));
+        // implicit variables are bound by their iteration
+        Assertions.assertEquals(List.of(0, 1), planner.plannedOrder(query(rules, 8)));
+        // variables of a unification pattern are bound by it
+        Assertions.assertEquals(List.of(0, 1, 2), planner.plannedOrder(query(rules, 9)));
+    }
+
+    @Test
+    public void observedOutcomesReorderLaterExecutions() {
+        ParseTree tree = parse("package p \n a { input.a > 0; input.b > 0 }");
+        CompiledPolicy policy = CompiledPolicy.compile(tree);
+        LiteralPlanner planner = new LiteralPlanner(policy, Collections.emptySet(), Collections.emptySet(), true);
+        RegoParser.QueryContext query = query(((RegoParser.ModuleContext) tree).policy().rrule(), 0);
+        List<Rule> rules = policy.buildFromQuery(query);
+
+        LiteralPlanner first = planner.forExecution();
+        Assertions.assertSame(rules, first.order(query, rules));
+        for (int i = 0; i < 50; i++) {
+            first.record(query.literal(0), true);
+            first.record(query.literal(1), false);
+        }
+        // an execution keeps its order
+        Assertions.assertSame(rules, first.order(query, rules));
+
+        List<Rule> ordered = planner.forExecution().order(query, rules);
+        Assertions.assertEquals(List.of(rules.get(1), rules.get(0)), ordered);
+        Assertions.assertEquals(List.of(1, 0), planner.plannedOrder(query));
+    }
+
+    private static RegoParser.QueryContext query(List<RegoParser.RruleContext> rules, int rule) {
+        return rules.get(rule).rule_definition().rule_body().query();
+    }
+
+    private static ParseTree parse(String policy) {
+        RegoLexer lexer = new RegoLexer(CharStreams.fromString(policy));
+        return new RegoParser(new CommonTokenStream(lexer)).module();
+    }
+}
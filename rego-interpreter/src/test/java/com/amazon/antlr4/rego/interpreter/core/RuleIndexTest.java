@@ -0,0 +1,108 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import com.amazon.antlr4.rego.RegoLexer;
+import com.amazon.antlr4.rego.RegoParser;
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RuleIndexTest {
+
+    private static final String TEST_POLICY = "package p \n"
+        + "allow { input.method == \"GET\"; input.path == \"/a\" } \n"
+        + "allow { \"POST\" == input.method; input.path == \"/b\" } \n"
+        + "allow { input.user.admin == true } \n"
+        + "allow { input.method == \"PUT\" } else = false { true } \n"
+        + "allow { x := input.method; x == \"DELETE\" } \n"
+        + "default allow = false \n";
+
+    @Test
+    public void onlyMatchingDefinitionsAreCandidates() {
+        ParseTree tree = parse(TEST_POLICY);
+        List<RegoParser.RruleContext> rules = ((RegoParser.ModuleContext) tree).policy().rrule();
+        RuleIndex index = CompiledPolicy.compile(tree).ruleIndex("allow");
+
+        Assertions.assertTrue(index.isIndexed(body(rules.get(0))));
+        Assertions.assertTrue(index.isIndexed(body(rules.get(2))));
+        Assertions.assertFalse(index.isIndexed(body(rules.get(3))));
+        Assertions.assertFalse(index.isIndexed(body(rules.get(4))));
+
+        Set<ParseTree> candidates = index.candidates(json("{\"method\": \"POST\", \"path\": \"/b\"}"));
+        Assertions.assertEquals(Set.of(body(rules.get(1))), candidates);
+
+        candidates = index.candidates(json("{\"method\": \"GET\", \"path\": \"/b\", \"user\": {\"admin\": true}}"));
+        Assertions.assertEquals(Set.of(body(rules.get(2))), candidates);
+
+        Assertions.assertTrue(index.candidates(json("{\"method\": 1, \"user\": []}")).isEmpty());
+    }
+
+    @Test
+    public void skippedDefinitionsDoNotChangeTheResult() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Expression seen = (args, input, data) -> JsonResolver.nativeToJson(calls.incrementAndGet() > 0);
+        StringBuilder policy = new StringBuilder("package p ");
+        for (int i = 0; i < 100; i++) {
+            policy.append(String.format("allow { input.path == \"/%d\"; seen(%d) } ", i, i));
+            policy.append(String.format("paths[p] { input.path == \"/%d\"; p := input.path } ", i));
+        }
+        RegoExecutor executor = new RegoExecutorBuilder(policy.toString())
+            .expressions(Map.of("seen", seen))
+            .build();
+
+        JsonObject output = executor.executePolicy("{\"path\": \"/42\"}");
+        Assertions.assertTrue(output.getBoolean("allow"));
+        Assertions.assertEquals("[\"/42\"]", output.getJsonArray("paths").toString());
+        Assertions.assertEquals(1, calls.get());
+
+        output = executor.executePolicy("{\"path\": \"/none\"}");
+        Assertions.assertNull(output.get("allow"));
+        Assertions.assertEquals("[]", output.getJsonArray("paths").toString());
+        Assertions.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void indexFollowsInputOverriddenWithKeyword() throws Exception {
+        JsonObject output = new RegoExecutorBuilder("package p "
+            + "methods[m] { input.method == \"GET\"; m := input.method } "
+            + "post = v { v := methods with input.method as \"POST\" } "
+            + "get = v { v := methods with input.method as \"GET\" } ")
+            .withKeyword(true)
+            .build()
+            .executePolicy("{\"method\": \"POST\"}");
+        Assertions.assertEquals("[]", output.getJsonArray("methods").toString());
+        Assertions.assertEquals("[]", output.getJsonArray("post").toString());
+        Assertions.assertEquals("[\"GET\"]", output.getJsonArray("get").toString());
+    }
+
+    private static ParseTree body(RegoParser.RruleContext ctx) {
+        return ctx.rule_definition().rule_body();
+    }
+
+    private static JsonObject json(String json) {
+        return Json.createReader(new StringReader(json)).readObject();
+    }
+
+    private static ParseTree parse(String policy) {
+        RegoLexer lexer = new RegoLexer(CharStreams.fromString(policy));
+        return new RegoParser(new CommonTokenStream(lexer)).module();
+    }
+}
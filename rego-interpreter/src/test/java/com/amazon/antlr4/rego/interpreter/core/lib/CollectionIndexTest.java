@@ -0,0 +1,80 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core.lib;
+
+import java.io.StringReader;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonValue;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CollectionIndexTest {
+
+    private static final List<JsonValue> PATH = List.of(JsonResolver.nativeToJson("user"),
+        JsonResolver.nativeToJson("id"));
+
+    @Test
+    public void valuesAreKeyedLikeEquality() {
+        CollectionIndex index = new CollectionIndex(array("[{\"user\": {\"id\": 7}}, {\"user\": {\"id\": \"7\"}}, "
+            + "{\"user\": {}}, {\"user\": {\"id\": 7.0}}, {\"user\": {\"id\": 7}}, 3]"), PATH);
+
+        Assertions.assertArrayEquals(new int[] {0, 4}, index.positions(JsonResolver.nativeToJson(7)));
+        Assertions.assertArrayEquals(new int[] {1}, index.positions(JsonResolver.nativeToJson("7")));
+        Assertions.assertArrayEquals(new int[] {3}, index.positions(array("[7.0]").get(0)));
+        Assertions.assertArrayEquals(new int[0], index.positions(JsonValue.NULL));
+        Assertions.assertNull(index.positions(array("[7]")));
+    }
+
+    @Test
+    public void updatesReindexOnlyChangedElements() {
+        CollectionIndex index = new CollectionIndex(array("[" + user(1) + "," + user(2) + "," + user(1) + ","
+            + user(3) + "]"), PATH);
+        int[] twos = index.positions(JsonResolver.nativeToJson(2));
+
+        // one element changed, one removed from the end, two added
+        CollectionIndex updated = index.update(array("[" + user(1) + "," + user(2) + "," + user(4) + ","
+            + user(3) + "," + user(4) + "," + user(1) + "]"));
+        Assertions.assertArrayEquals(new int[] {0, 5}, updated.positions(JsonResolver.nativeToJson(1)));
+        Assertions.assertSame(twos, updated.positions(JsonResolver.nativeToJson(2)));
+        Assertions.assertArrayEquals(new int[] {2, 4}, updated.positions(JsonResolver.nativeToJson(4)));
+        // the previous index is unchanged
+        Assertions.assertArrayEquals(new int[] {0, 2}, index.positions(JsonResolver.nativeToJson(1)));
+
+        CollectionIndex shrunk = updated.update(array("[" + user(1) + "," + user(2) + "]"));
+        Assertions.assertArrayEquals(new int[] {0}, shrunk.positions(JsonResolver.nativeToJson(1)));
+        Assertions.assertArrayEquals(new int[0], shrunk.positions(JsonResolver.nativeToJson(3)));
+        Assertions.assertArrayEquals(new int[0], shrunk.positions(JsonResolver.nativeToJson(4)));
+        Assertions.assertSame(shrunk, shrunk.update(shrunk.getCollection()));
+    }
+
+    @Test
+    public void insertionsKeepTheBucketsBeforeThem() {
+        JsonArray users = array("[" + user(1) + "," + user(2) + "," + user(3) + "," + user(2) + "]");
+        CollectionIndex index = new CollectionIndex(users, PATH);
+        int[] ones = index.positions(JsonResolver.nativeToJson(1));
+
+        // the same element instances with one inserted in the middle
+        JsonArray inserted = Json.createArrayBuilder()
+            .add(users.get(0)).add(users.get(1)).add(array("[" + user(5) + "]").get(0))
+            .add(users.get(2)).add(users.get(3))
+            .build();
+        CollectionIndex updated = index.update(inserted);
+        Assertions.assertSame(ones, updated.positions(JsonResolver.nativeToJson(1)));
+        Assertions.assertArrayEquals(new int[] {1, 4}, updated.positions(JsonResolver.nativeToJson(2)));
+        Assertions.assertArrayEquals(new int[] {2}, updated.positions(JsonResolver.nativeToJson(5)));
+        Assertions.assertArrayEquals(new int[] {3}, updated.positions(JsonResolver.nativeToJson(3)));
+    }
+
+    private static String user(int id) {
+        return "{\"user\": {\"id\": " + id + "}}";
+    }
+
+    private static JsonArray array(String json) {
+        return Json.createReader(new StringReader(json)).readArray();
+    }
+}
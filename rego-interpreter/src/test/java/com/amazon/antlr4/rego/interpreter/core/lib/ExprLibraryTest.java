@@ -5,9 +5,11 @@ package com.amazon.antlr4.rego.interpreter.core.lib;
 
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.json.JsonObject;
 import javax.json.JsonString;
@@ -17,6 +19,7 @@ import com.amazon.antlr4.rego.interpreter.core.type.BaseExpression;
 import com.amazon.antlr4.rego.interpreter.core.type.RegoProcessorException;
 
 import com.amazon.antlr4.rego.interpreter.type.ContextAwarePersistentExpression;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -48,6 +51,51 @@ public class ExprLibraryTest {
             () -> new ExprLibrary(new HashMap<>(), null, null).executeJavaFunction(new Date().toString(), null));
     }
 
+    @Test
+    public void sharedCacheIsUsedByPureExpressionsOnly() {
+        AtomicInteger calls = new AtomicInteger();
+        Expression pure = (args, input, data) -> JsonResolver.nativeToJson(calls.incrementAndGet());
+        Map<String, BaseExpression> expressions = new HashMap<>();
+        expressions.put("pure", pure);
+        expressions.put("other", pure);
+        ExpressionCache cache = new ExpressionCache(10,
+            ExpressionCache.pureExpressionNames(expressions, Collections.singleton("pure")));
+
+        for (int i = 0; i < 3; i++) {
+            ExprLibrary library = new ExprLibrary(new HashMap<>(), null, null);
+            library.registerJavaFunctions(expressions);
+            library.expressionCache(cache);
+            Assertions.assertEquals(JsonResolver.nativeToJson(1),
+                library.executeJavaFunction("pure", Arrays.asList(JsonValue.TRUE)));
+            library.executeJavaFunction("other", Arrays.asList(JsonValue.TRUE));
+        }
+        Assertions.assertEquals(4, calls.get());
+        Assertions.assertEquals(2, cache.getStats().get("pure").getHits());
+        Assertions.assertNull(cache.getStats().get("other"));
+    }
+
+    @Test
+    public void sharedCacheKeepsRecentlyReadResults() {
+        ExpressionCache cache = new ExpressionCache(2, Collections.emptySet());
+        JsonValue hot = cache.get("f", Arrays.asList(JsonValue.TRUE), () -> JsonValue.TRUE);
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertEquals(hot, cache.get("f", Arrays.asList(JsonValue.TRUE), () -> JsonValue.FALSE));
+            cache.get("f", Arrays.asList(JsonResolver.nativeToJson(i)), () -> JsonValue.NULL);
+            Assertions.assertTrue(cache.size() <= 2);
+        }
+        Assertions.assertEquals(10, cache.getStats().get("f").getHits());
+    }
+
+    @Test
+    public void executionCacheComparesArguments() {
+        // "Aa" and "BB" have the same hash code
+        ExprLibrary library = new ExprLibrary(new HashMap<>(), null, null);
+        Assertions.assertEquals("aa", ((JsonString) library.executeJavaFunction("lower",
+            Arrays.asList(JsonResolver.nativeToJson("Aa")))).getString());
+        Assertions.assertEquals("bb", ((JsonString) library.executeJavaFunction("lower",
+            Arrays.asList(JsonResolver.nativeToJson("BB")))).getString());
+    }
+
     @Test
     public void cleanupTriggers() {
         final ContextAwarePersistentExpression mockExpression = mock(ContextAwarePersistentExpression.class);
@@ -0,0 +1,47 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.interpreter.core.lib;
+
+import java.io.StringReader;
+
+import javax.json.Json;
+import javax.json.JsonValue;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class JsonFingerprintTest {
+
+    @Test
+    public void equalValuesHaveEqualFingerprints() {
+        Assertions.assertEquals(
+            JsonFingerprint.of(parse("{\"a\": 1, \"b\": [\"x\", {\"c\": null, \"d\": true}]}")),
+            JsonFingerprint.of(parse("{\"b\": [\"x\", {\"d\": true, \"c\": null}], \"a\": 1.00}")));
+    }
+
+    @Test
+    public void differentValuesHaveDifferentFingerprints() {
+        String[] values = {
+            "{\"a\": 1}", "{\"a\": 2}", "{\"b\": 1}", "{\"a\": \"1\"}", "{\"a\": [1]}", "{\"a\": [1, 2]}",
+            "{\"a\": [2, 1]}", "{\"a\": true}", "{\"a\": false}", "{\"a\": null}", "{\"a\": {}}", "{\"a\": []}",
+            "{\"ab\": 1}", "{\"a\": 1, \"b\": 1}", "{\"a\": {\"b\": 1}}", "{}"
+        };
+        for (int i = 0; i < values.length; i++) {
+            for (int j = i + 1; j < values.length; j++) {
+                Assertions.assertNotEquals(JsonFingerprint.of(parse(values[i])), JsonFingerprint.of(parse(values[j])),
+                    values[i] + " " + values[j]);
+            }
+        }
+    }
+
+    @Test
+    public void sizeGrowsWithContent() {
+        Assertions.assertTrue(JsonFingerprint.estimateSize(parse("{\"a\": \"xxxxxxxxxx\"}"))
+            > JsonFingerprint.estimateSize(parse("{\"a\": \"x\"}")));
+    }
+
+    private static JsonValue parse(String json) {
+        return Json.createReader(new StringReader(json)).readObject();
+    }
+}
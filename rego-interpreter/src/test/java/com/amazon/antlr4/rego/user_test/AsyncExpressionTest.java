@@ -0,0 +1,117 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.type.AsyncExpression;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AsyncExpressionTest {
+
+    private static final String POLICY = "package AsyncExpressionTest\n"
+        + "default allow = false\n"
+        + "allow { lookup(input.user) == \"admin\" }\n"
+        + "allow { lookup(input.user) == \"owner\"; flag(\"owners\") }\n"
+        + "role := lookup(input.user)\n";
+
+    private static final JsonObject INPUT = Json.createObjectBuilder().add("user", "alice").build();
+
+    private final Map<String, CompletableFuture<JsonValue>> lookups = new ConcurrentHashMap<>();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final AsyncExpression lookup = (args, input, data, ctx) -> {
+        calls.incrementAndGet();
+        return lookups.computeIfAbsent(((JsonString) args.get(0)).getString(), k -> new CompletableFuture<>());
+    };
+
+    private final AsyncExpression flag = (args, input, data, ctx) -> {
+        calls.incrementAndGet();
+        return lookups.computeIfAbsent("flag", k -> new CompletableFuture<>());
+    };
+
+    private RegoExecutor executor() throws Exception {
+        return new RegoExecutorBuilder(POLICY)
+            .expressions(Map.of("lookup", lookup, "flag", flag))
+            .build();
+    }
+
+    @Test
+    public void evaluationResumesWhenFuturesComplete() throws Exception {
+        CompletableFuture<JsonObject> result = executor().executePolicyAsync(INPUT);
+        Assertions.assertFalse(result.isDone());
+        Assertions.assertEquals(1, calls.get());
+
+        lookups.get("alice").complete(JsonResolver.nativeToJson("owner"));
+        awaitCall("flag");
+        Assertions.assertFalse(result.isDone());
+
+        lookups.get("flag").complete(JsonValue.TRUE);
+        JsonObject output = result.get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals(JsonValue.TRUE, output.get("allow"));
+        Assertions.assertEquals("owner", output.getString("role"));
+        Assertions.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void independentCallsAreStartedTogether() throws Exception {
+        CompletableFuture<JsonObject> result = new RegoExecutorBuilder("package AsyncExpressionTest\n"
+                + "ann := lookup(\"ann\")\n"
+                + "bob := lookup(\"bob\")\n"
+                + "default blocked = false\n"
+                + "blocked { not lookup(\"cat\") }\n")
+            .expressions(Map.of("lookup", lookup))
+            .build()
+            .executePolicyAsync(INPUT);
+        Assertions.assertEquals(Set.of("ann", "bob", "cat"), lookups.keySet());
+
+        lookups.get("ann").complete(JsonResolver.nativeToJson("admin"));
+        lookups.get("cat").complete(JsonResolver.nativeToJson("user"));
+        Assertions.assertFalse(result.isDone());
+        lookups.get("bob").complete(JsonResolver.nativeToJson("owner"));
+        JsonObject output = result.get(10, TimeUnit.SECONDS);
+        Assertions.assertEquals("owner", output.getString("bob"));
+        Assertions.assertEquals(JsonValue.FALSE, output.get("blocked"));
+        Assertions.assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void synchronousExecutionWaitsForFutures() throws Exception {
+        lookups.put("alice", CompletableFuture.completedFuture(JsonResolver.nativeToJson("admin")));
+        JsonObject output = executor().executePolicy(INPUT);
+        Assertions.assertEquals(JsonValue.TRUE, output.get("allow"));
+        Assertions.assertEquals(executor().executePolicyAsync(INPUT).get(10, TimeUnit.SECONDS), output);
+    }
+
+    @Test
+    public void failedFutureFailsExecution() throws Exception {
+        CompletableFuture<JsonObject> result = executor().executePolicyAsync(INPUT);
+        lookups.get("alice").completeExceptionally(new IllegalStateException("directory down"));
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+            () -> result.get(10, TimeUnit.SECONDS));
+        Assertions.assertTrue(e.getCause().getMessage().contains("directory down"));
+    }
+
+    private void awaitCall(String key) throws InterruptedException {
+        for (int i = 0; i < 1000 && !lookups.containsKey(key); i++) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BacktrackingTest {
+
+    private final AtomicInteger tagCalls = new AtomicInteger();
+
+    private final Expression tag = (args, input, data) -> {
+        tagCalls.incrementAndGet();
+        return JsonResolver.nativeToJson("t" + ((JsonNumber) args.get(0)).intValue());
+    };
+
+    @Test
+    public void literalsBeforeTheInnerLoopRunOncePerOuterValue() throws Exception {
+        String policy = "package BacktrackingTest\n"
+            + "pairs[p] { x := input.a[_]; k := tag(x); y := input.b[_]; y > x; p := concat(\"-\", [k, format_int(y, 10)]) }\n";
+        JsonObject output = new RegoExecutorBuilder(policy)
+            .expressions(Map.of("tag", tag))
+            .build()
+            .executePolicy(Json.createObjectBuilder().add("a", numbers(20)).add("b", numbers(30)).build());
+
+        // pairs of x < y with x < 20 and y < 30
+        Assertions.assertEquals(20 * 29 - 19 * 20 / 2, output.getJsonArray("pairs").size());
+        Assertions.assertTrue(strings(output.getJsonArray("pairs")).contains("t3-17"));
+        Assertions.assertEquals(20, tagCalls.get());
+    }
+
+    @Test
+    public void innerLoopsDependOnOuterValues() throws Exception {
+        String policy = "package BacktrackingTest\n"
+            + "members := [m | g := input.groups[_]; m := g.members[_]]\n"
+            + "pairs := [[a, b] | a := input.groups[_].members[_]; b := input.groups[_].name]\n";
+        JsonObject input = Json.createReader(new StringReader("{\"groups\": ["
+            + "{\"name\": \"g1\", \"members\": [\"a\", \"b\"]},"
+            + "{\"name\": \"g2\", \"members\": [\"c\"]},"
+            + "{\"name\": \"g3\", \"members\": []},"
+            + "{\"name\": \"g4\", \"members\": [\"d\", \"e\", \"f\"]}]}")).readObject();
+        JsonObject output = new RegoExecutorBuilder(policy).build().executePolicy(input);
+
+        Assertions.assertEquals(List.of("a", "b", "c", "d", "e", "f"), strings(output.getJsonArray("members")));
+        JsonArray pairs = output.getJsonArray("pairs");
+        Assertions.assertEquals(6 * 4, pairs.size());
+        Assertions.assertEquals(List.of("a", "g1"), strings(pairs.getJsonArray(0)));
+        Assertions.assertEquals(List.of("a", "g2"), strings(pairs.getJsonArray(1)));
+        Assertions.assertEquals(List.of("f", "g4"), strings(pairs.getJsonArray(23)));
+    }
+
+    @Test
+    public void someVariablesInsideKeysAreUnified() throws Exception {
+        String policy = "package BacktrackingTest\n"
+            + "targets[t] { some t; input.edges[[1, t]] }\n"
+            + "loops[n] { some n; input.edges[[n, n]] }\n"
+            + "admins[n] { some n; input.people[{\"name\": n, \"admin\": true}] }\n"
+            + "reachable[[a, c]] { some a, b, c; input.edges[[a, b]]; input.edges[[b, c]] }\n"
+            + "none { some x; input.edges[[7, x]] }\n";
+        JsonObject input = Json.createReader(new StringReader("{"
+            + "\"edges\": [[1, 2], [1, 3], [2, 3], [3, 3], [3, 4]],"
+            + "\"people\": [{\"name\": \"ann\", \"admin\": true}, {\"name\": \"bob\", \"admin\": false},"
+            + "{\"name\": \"cid\", \"admin\": true, \"team\": \"x\"}]}")).readObject();
+        JsonObject output = new RegoExecutorBuilder(policy).build().executePolicy(input);
+
+        Assertions.assertEquals(List.of(2, 3), ints(output.getJsonArray("targets")));
+        Assertions.assertEquals(List.of(3), ints(output.getJsonArray("loops")));
+        Assertions.assertEquals(List.of("ann"), strings(output.getJsonArray("admins")));
+        Assertions.assertEquals(Json.createReader(new StringReader("[[1, 3], [1, 4], [2, 3], [2, 4], [3, 3], [3, 4]]"))
+            .readArray().stream().collect(Collectors.toSet()),
+            output.getJsonArray("reachable").stream().collect(Collectors.toSet()));
+        Assertions.assertFalse(output.containsKey("none"));
+    }
+
+    private static JsonArray numbers(int size) {
+        JsonArrayBuilder numbers = Json.createArrayBuilder();
+        for (int i = 0; i < size; i++) {
+            numbers.add(i);
+        }
+        return numbers.build();
+    }
+
+    private static List<String> strings(JsonArray array) {
+        return array.getValuesAs(JsonString.class).stream().map(JsonString::getString).collect(Collectors.toList());
+    }
+
+    private static List<Integer> ints(JsonArray array) {
+        return array.getValuesAs(JsonNumber.class).stream().map(JsonNumber::intValue).sorted()
+            .collect(Collectors.toList());
+    }
+}
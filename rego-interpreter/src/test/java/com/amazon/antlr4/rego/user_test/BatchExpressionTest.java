@@ -0,0 +1,144 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.type.BadPolicyException;
+import com.amazon.antlr4.rego.interpreter.type.BatchExpression;
+import com.amazon.antlr4.rego.interpreter.type.ContextAwareExpression;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BatchExpressionTest {
+
+    private static final String POLICY = "package BatchExpressionTest\n"
+        + "owners[o] { r := input.resources[_]; o := owner(r) }\n"
+        + "mine[r] { r := input.resources[_]; owner(r) == input.user }\n"
+        + "default orphan = false\n"
+        + "orphan { not owner(\"r-unknown\") }\n"
+        + "managers[m] { o := owners[_]; m := owner(o) }\n";
+
+    private final AtomicInteger batches = new AtomicInteger();
+    private final List<Integer> batchSizes = new ArrayList<>();
+    private final List<JsonValue> batchArgs = new ArrayList<>();
+
+    private final BatchExpression batchOwner = (argsList, input, data, ctx) -> {
+        batches.incrementAndGet();
+        batchSizes.add(argsList.size());
+        argsList.forEach(args -> batchArgs.add(args.get(0)));
+        return argsList.stream().map(args -> lookup(args.get(0))).collect(Collectors.toList());
+    };
+
+    private static final Expression OWNER = (args, input, data) -> lookup(args.get(0));
+
+    private static JsonValue lookup(JsonValue key) {
+        String name = ((JsonString) key).getString();
+        if (name.equals("r-unknown")) {
+            return null;
+        }
+        return JsonResolver.nativeToJson(name.startsWith("r") ? "u" + name.length() % 3 : "boss");
+    }
+
+    @Test
+    public void loopCallsAreGatheredInOneBatch() throws Exception {
+        JsonObject input = input(50);
+        JsonObject expected = new RegoExecutorBuilder(POLICY)
+            .expressions(Map.of("owner", OWNER))
+            .build()
+            .executePolicy(input);
+        JsonObject output = new RegoExecutorBuilder(POLICY)
+            .expressions(Map.of("owner", batchOwner))
+            .gatherBatchCalls(true)
+            .build()
+            .executePolicy(input);
+
+        Assertions.assertEquals(expected, output);
+        Assertions.assertEquals(List.of("boss"), output.getJsonArray("managers").getValuesAs(JsonString.class)
+            .stream().map(JsonString::getString).collect(Collectors.toList()));
+        // resources and the orphan check in the first batch, the owners found in the second
+        Assertions.assertEquals(List.of(51, 3), batchSizes);
+    }
+
+    @Test
+    public void singleRuleEvaluationUsesBatches() throws Exception {
+        JsonValue mine = new RegoExecutorBuilder(POLICY)
+            .expressions(Map.of("owner", batchOwner))
+            .gatherBatchCalls(true)
+            .build()
+            .evaluate("mine", input(10));
+        Assertions.assertEquals(4, ((JsonArray) mine).size());
+        Assertions.assertEquals(1, batches.get());
+    }
+
+    @Test
+    public void callsAreSingleBatchesByDefault() throws Exception {
+        JsonObject expected = new RegoExecutorBuilder(POLICY)
+            .expressions(Map.of("owner", OWNER))
+            .build()
+            .executePolicy(input(5));
+        JsonObject output = new RegoExecutorBuilder(POLICY)
+            .expressions(Map.of("owner", batchOwner))
+            .build()
+            .executePolicy(input(5));
+        Assertions.assertEquals(expected, output);
+        Assertions.assertEquals(List.of(1), batchSizes.stream().distinct().collect(Collectors.toList()));
+    }
+
+    @Test
+    public void otherExpressionsAreCalledOncePerExecution() throws Exception {
+        AtomicInteger audits = new AtomicInteger();
+        ContextAwareExpression audit = (args, input, data, ctx) -> {
+            audits.incrementAndGet();
+            return JsonValue.TRUE;
+        };
+        JsonObject output = new RegoExecutorBuilder(POLICY
+                + "audited { audit(input.user) }\n"
+                + "unowned { not owner(input.user); owner(\"r-unowned\") }\n")
+            .expressions(Map.of("owner", batchOwner, "audit", audit))
+            .gatherBatchCalls(true)
+            .build()
+            .executePolicy(input(5));
+        Assertions.assertEquals(2, batches.get());
+        Assertions.assertEquals(1, audits.get());
+        Assertions.assertTrue(output.getBoolean("audited"));
+        // the owner of the user is only known after the first batch, it is not negated before
+        Assertions.assertFalse(output.containsKey("unowned"));
+        Assertions.assertFalse(batchArgs.contains(JsonResolver.nativeToJson("r-unowned")));
+    }
+
+    @Test
+    public void errorsAreReportedWithPendingCalls() {
+        Assertions.assertThrows(BadPolicyException.class, () -> new RegoExecutorBuilder(POLICY
+                + "unknown { count(owners) >= 0; no_such_expression(1) }\n")
+            .expressions(Map.of("owner", batchOwner))
+            .gatherBatchCalls(true)
+            .build()
+            .executePolicy(input(5)));
+        Assertions.assertEquals(0, batches.get());
+    }
+
+    private static JsonObject input(int size) {
+        JsonArrayBuilder resources = Json.createArrayBuilder();
+        for (int i = 0; i < size; i++) {
+            resources.add("r" + "x".repeat(i));
+        }
+        return Json.createObjectBuilder().add("user", "u1").add("resources", resources).build();
+    }
+}
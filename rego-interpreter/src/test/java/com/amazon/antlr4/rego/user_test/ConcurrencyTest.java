@@ -0,0 +1,200 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import javax.json.Json;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.RegoLexer;
+import com.amazon.antlr4.rego.RegoParser;
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.core.lib.debug.VisitCoverage;
+import com.amazon.antlr4.rego.interpreter.type.BatchResult;
+import com.amazon.antlr4.rego.interpreter.type.ContextAwareExpression;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
+import com.amazon.antlr4.rego.interpreter.type.Visitation;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int EXECUTIONS = 2000;
+
+    private static final String POLICY = "package ConcurrencyTest\n"
+        + "default allow = false\n"
+        + "allow { input.user == data.admins[_] }\n"
+        + "allow { input.role == \"owner\" }\n"
+        + "names[n] { n := input.items[_].name }\n"
+        + "total := sum([x | x := input.items[_].size])\n"
+        + "counted := count_request()\n";
+
+    private static final String DATA = "{\"admins\": [\"alice\", \"bob\"]}";
+
+    // keeps its state in the context map of the execution only
+    private static final ContextAwareExpression COUNT_REQUEST = (args, input, data, ctx) -> {
+        Integer count = (Integer) ctx.merge("count", 1, (a, b) -> (Integer) a + (Integer) b);
+        return JsonResolver.nativeToJson(count);
+    };
+
+    @Test
+    public void sharedExecutorMatchesSequentialResults() throws Exception {
+        RegoExecutor executor = new RegoExecutorBuilder(POLICY)
+            .data(DATA)
+            .expressions(Map.of("count_request", COUNT_REQUEST))
+            .build();
+
+        List<JsonObject> inputs = new ArrayList<>();
+        List<JsonObject> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            JsonObject input = input(i);
+            inputs.add(input);
+            expected.add(executor.executePolicy(input, new HashMap<>()));
+        }
+
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < EXECUTIONS; i++) {
+            final int n = i % inputs.size();
+            tasks.add(() -> expected.get(n).equals(executor.executePolicy(inputs.get(n), new HashMap<>()))
+                && executor.decide("allow", inputs.get(n)) == JsonValue.TRUE.equals(expected.get(n).get("allow")));
+        }
+        for (Future<Boolean> result: runAll(tasks)) {
+            Assertions.assertTrue(result.get());
+        }
+    }
+
+    @Test
+    public void batchResultsAreInInputOrder() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        RegoExecutor executor = new RegoExecutorBuilder(POLICY)
+            .data(DATA)
+            .expressions(Map.of("count_request", COUNT_REQUEST))
+            .batchExecutor(pool)
+            .build();
+
+        List<JsonObject> inputs = new ArrayList<>();
+        for (int i = 0; i < EXECUTIONS; i++) {
+            inputs.add(input(i));
+        }
+        List<BatchResult> results;
+        try {
+            results = executor.executeBatch(inputs);
+        } finally {
+            pool.shutdown();
+        }
+        Assertions.assertEquals(inputs.size(), results.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            Assertions.assertTrue(results.get(i).isSuccessful());
+            Assertions.assertEquals(executor.executePolicy(inputs.get(i), new HashMap<>()), results.get(i).getOutput());
+        }
+    }
+
+    @Test
+    public void batchCapturesErrorsPerInput() throws Exception {
+        Expression failOdd = (args, input, data) -> {
+            if (((JsonNumber) args.get(0)).intValue() % 2 == 1) {
+                throw new IllegalArgumentException("odd");
+            }
+            return args.get(0);
+        };
+        RegoExecutor executor = new RegoExecutorBuilder("package p\nn := fail_odd(input.n)\n")
+            .expressions(Map.of("fail_odd", failOdd))
+            .build();
+
+        List<JsonObject> inputs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            inputs.add(Json.createObjectBuilder().add("n", i).build());
+        }
+        List<BatchResult> results = executor.executeBatch(inputs);
+        for (int i = 0; i < inputs.size(); i++) {
+            Assertions.assertEquals(i % 2 == 0, results.get(i).isSuccessful());
+            if (i % 2 == 0) {
+                Assertions.assertEquals(i, results.get(i).getOutput().getInt("n"));
+            } else {
+                Assertions.assertNotNull(results.get(i).getError());
+            }
+        }
+        Assertions.assertEquals(
+            results.stream().map(BatchResult::isSuccessful).collect(Collectors.toList()),
+            executor.streamBatch(inputs).map(BatchResult::isSuccessful).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void sharedCoverageCountsEveryVisitation() throws Exception {
+        VisitCoverage coverage = new VisitCoverage();
+        ParseTree policyTree = new RegoParser(new CommonTokenStream(new RegoLexer(CharStreams.fromString(POLICY))))
+            .module();
+        List<ParseTree> nodes = new ArrayList<>();
+        collectNodes(policyTree, nodes);
+
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < EXECUTIONS; i++) {
+            final boolean success = i % 2 == 0;
+            tasks.add(() -> {
+                nodes.forEach(node -> {
+                    if (success) {
+                        coverage.after(node);
+                    } else {
+                        coverage.error(node, new RuntimeException());
+                    }
+                });
+                return true;
+            });
+        }
+        runAll(tasks);
+
+        Map<String, Visitation> coverageMap = coverage.getCoverageMap();
+        Assertions.assertFalse(coverageMap.isEmpty());
+        for (Visitation visitation: coverageMap.values()) {
+            Assertions.assertTrue(visitation.getSuccess());
+            Assertions.assertTrue(visitation.getFailure());
+        }
+    }
+
+    private static JsonObject input(int i) {
+        StringBuilder items = new StringBuilder();
+        for (int j = 0; j <= i % 7; j++) {
+            items.append(j == 0 ? "" : ",").append(String.format("{\"name\": \"n%d\", \"size\": %d}", j, i + j));
+        }
+        String user = i % 3 == 0 ? "alice" : "user" + i;
+        String role = i % 5 == 0 ? "owner" : "viewer";
+        return Json.createReader(new StringReader(String.format(
+            "{\"user\": \"%s\", \"role\": \"%s\", \"items\": [%s]}", user, role, items))).readObject();
+    }
+
+    private static void collectNodes(ParseTree node, List<ParseTree> nodes) {
+        nodes.add(node);
+        for (int i = 0; i < node.getChildCount(); i++) {
+            collectNodes(node.getChild(i), nodes);
+        }
+    }
+
+    private static List<Future<Boolean>> runAll(List<Callable<Boolean>> tasks) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            return pool.invokeAll(tasks);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class DataIndexTest {
+
+    private static final String POLICY = "package DataIndexTest\n"
+        + "user := u { some i; data.users[i].id == input.id; u := data.users[i] }\n"
+        + "groups[g.name] { g := data.groups[_]; data.groups[_].owner.id == input.id; g.owner.id == input.id }\n"
+        + "default admin = false\n"
+        + "admin { data.users[_].id == input.id; user.role == \"admin\" }\n";
+
+    @Test
+    public void declaredIndexesMatchScans() throws Exception {
+        String data = data(30, "admin").toString();
+        RegoExecutor plain = new RegoExecutorBuilder(POLICY).data(data).build();
+        RegoExecutor indexed = new RegoExecutorBuilder(POLICY).data(data)
+            .index("data.users", "id")
+            .index("data.groups", "owner.id")
+            .build();
+        for (int id = 0; id < 35; id += 3) {
+            JsonObject input = Json.createObjectBuilder().add("id", id).build();
+            Assertions.assertEquals(plain.executePolicy(input), indexed.executePolicy(input));
+        }
+        JsonObject output = indexed.executePolicy(Json.createObjectBuilder().add("id", 24).build());
+        Assertions.assertEquals("user24", output.getJsonObject("user").getString("name"));
+        Assertions.assertEquals(2, output.getJsonArray("groups").size());
+        Assertions.assertTrue(output.getBoolean("admin"));
+    }
+
+    @Test
+    public void indexesFollowDataUpdates() throws Exception {
+        RegoExecutor first = new RegoExecutorBuilder(POLICY).data(data(30, "admin").toString())
+            .index("data.users", "id")
+            .build();
+        Assertions.assertTrue(first.executePolicy(Json.createObjectBuilder().add("id", 24).build())
+            .getBoolean("admin"));
+
+        RegoExecutor second = new RegoExecutorBuilder(POLICY).data(data(45, "guest").toString())
+            .index("data.users", "id")
+            .indexesFrom(first)
+            .build();
+        JsonObject output = second.executePolicy(Json.createObjectBuilder().add("id", 42).build());
+        Assertions.assertEquals("user42", output.getJsonObject("user").getString("name"));
+        Assertions.assertFalse(output.getBoolean("admin"));
+        Assertions.assertFalse(second.executePolicy(Json.createObjectBuilder().add("id", 24).build())
+            .getBoolean("admin"));
+        // the first executor keeps its data and indexes
+        Assertions.assertFalse(first.executePolicy(Json.createObjectBuilder().add("id", 42).build())
+            .containsKey("user"));
+    }
+
+    @Test
+    public void onlyDataCollectionsAreIndexed() {
+        RegoExecutorBuilder builder = new RegoExecutorBuilder(POLICY);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> builder.index("input.users", "id"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> builder.index("data", "id"));
+    }
+
+    private static JsonObject data(int users, String role) {
+        JsonArrayBuilder userArray = Json.createArrayBuilder();
+        JsonArrayBuilder groupArray = Json.createArrayBuilder();
+        for (int i = 0; i < users; i++) {
+            userArray.add(Json.createObjectBuilder()
+                .add("id", i)
+                .add("name", "user" + i)
+                .add("role", i % 6 == 0 ? role : "user"));
+            groupArray.add(Json.createObjectBuilder()
+                .add("name", "group" + i)
+                .add("owner", Json.createObjectBuilder().add("id", i / 2 * 2)));
+        }
+        return Json.createObjectBuilder().add("users", userArray).add("groups", groupArray).build();
+    }
+}
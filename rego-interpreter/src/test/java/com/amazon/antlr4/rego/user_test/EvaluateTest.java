@@ -0,0 +1,128 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class EvaluateTest {
+
+    private static final JsonObject INPUT = Json.createReader(
+        new StringReader("{\"user\": \"alice\", \"admins\": [\"alice\"]}")).readObject();
+
+    @Test
+    public void evaluatesOnlyRequestedRuleAndItsDependencies() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Expression counter = (args, input, data) -> JsonResolver.nativeToJson(calls.incrementAndGet());
+        RegoExecutor executor = new RegoExecutorBuilder("package p "
+            + "allow { is_admin } "
+            + "is_admin { input.user == input.admins[_] } "
+            + "expensive := counter() ")
+            .expressions(Map.of("counter", counter))
+            .build();
+        Assertions.assertEquals(JsonValue.TRUE, executor.evaluate("allow", INPUT));
+        Assertions.assertEquals(0, calls.get());
+
+        Assertions.assertEquals(1, executor.executePolicy(INPUT).getInt("expensive"));
+        Assertions.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void undefinedRuleIsNull() throws Exception {
+        RegoExecutor executor = new RegoExecutorBuilder("package p "
+            + "deny { input.user == \"bob\" } ")
+            .build();
+        Assertions.assertNull(executor.evaluate("deny", INPUT));
+        Assertions.assertNull(executor.evaluate("missing", INPUT));
+    }
+
+    @Test
+    public void evaluatesManyRules() throws Exception {
+        JsonObject output = new RegoExecutorBuilder("package p "
+            + "default allow = false "
+            + "allow { input.user == \"bob\" } "
+            + "names[n] { n := input.admins[_] } "
+            + "f(x) = x "
+            + "other := f(1) ")
+            .build()
+            .evaluate(Set.of("allow", "names", "f"), INPUT);
+        Assertions.assertEquals(2, output.size());
+        Assertions.assertFalse(output.getBoolean("allow"));
+        Assertions.assertEquals("[\"alice\"]", output.getJsonArray("names").toString());
+    }
+
+    @Test
+    public void evaluatesRulesOfDependentPolicy() throws Exception {
+        RegoExecutor executor = new RegoExecutorBuilder("package a "
+            + "b := input.user ")
+            .dependentBuilder(new RegoExecutorBuilder("package x "
+                + "import data.a.b "
+                + "y := b "
+                + "z := 1 "))
+            .build();
+        JsonObject output = executor.evaluate(Set.of("y"), INPUT);
+        Assertions.assertEquals(1, output.size());
+        Assertions.assertEquals("alice", output.getString("y"));
+    }
+
+    @Test
+    public void decideSkipsDefinitionsOnceTrue() throws Exception {
+        RegoExecutor executor = new RegoExecutorBuilder("package p "
+            + "allow { input.user == \"alice\" } "
+            + "allow { count(1 | 2) > 0 } ")
+            .build();
+        Assertions.assertTrue(executor.decide("allow", INPUT));
+    }
+
+    @Test
+    public void decideStopsIteratingOnceTrue() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Expression seen = (args, input, data) -> JsonResolver.nativeToJson(calls.incrementAndGet() > 0);
+        RegoExecutor executor = new RegoExecutorBuilder("package p "
+            + "allow { seen(input.xs[_]) } ")
+            .expressions(Map.of("seen", seen))
+            .build();
+        JsonObject input = Json.createReader(new StringReader("{\"xs\": [1, 2, 3, 4]}")).readObject();
+        Assertions.assertTrue(executor.decide("allow", input));
+        Assertions.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void decideRunsDefinitionsCallingExpressions() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Expression seen = (args, input, data) -> JsonResolver.nativeToJson(calls.incrementAndGet() > 0);
+        RegoExecutor executor = new RegoExecutorBuilder("package p "
+            + "allow { input.user == \"alice\" } "
+            + "allow { seen(input.user) } ")
+            .expressions(Map.of("seen", seen))
+            .build();
+        Assertions.assertTrue(executor.decide("allow", INPUT));
+        Assertions.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void decideIsFalseUnlessTrue() throws Exception {
+        RegoExecutor executor = new RegoExecutorBuilder("package p "
+            + "deny { input.user == \"bob\" } "
+            + "name := input.user ")
+            .build();
+        Assertions.assertFalse(executor.decide("deny", INPUT));
+        Assertions.assertFalse(executor.decide("name", INPUT));
+        Assertions.assertFalse(executor.decide("missing", INPUT));
+    }
+}
@@ -0,0 +1,54 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.type.CacheStats;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FunctionCacheTest {
+
+    private static final String POLICY = "package FunctionCacheTest\n"
+        + "label(t) = l { l := concat(\"-\", [data.prefix, t]) }\n"
+        + "owned(t) { input.user == data.owners[t] }\n"
+        + "labels[l] { l := label(input.items[_].type) }\n"
+        + "mine[n] { item := input.items[_]; owned(item.type); n := item.name }\n";
+
+    private static final String DATA = "{\"prefix\": \"p\", \"owners\": {\"a\": \"alice\", \"b\": \"bob\"}}";
+
+    @Test
+    public void functionResultsAreReused() throws Exception {
+        RegoExecutor plain = new RegoExecutorBuilder(POLICY).data(DATA).build();
+        RegoExecutor cached = new RegoExecutorBuilder(POLICY).data(DATA).functionCache(true).build();
+        for (int i = 0; i < 5; i++) {
+            JsonObject input = input(i % 2 == 0 ? "alice" : "bob", 100);
+            Assertions.assertEquals(plain.executePolicy(input), cached.executePolicy(input));
+        }
+        Assertions.assertEquals(2, cached.executePolicy(input("bob", 100)).getJsonArray("labels").size());
+
+        Map<String, CacheStats> stats = cached.getExpressionCacheStats();
+        // one call per type and execution, computed in the first execution only
+        Assertions.assertEquals(2, stats.get("label").getMisses());
+        Assertions.assertEquals(10, stats.get("label").getHits());
+        // reads input
+        Assertions.assertNull(stats.get("owned"));
+    }
+
+    private static JsonObject input(String user, int size) {
+        JsonArrayBuilder items = Json.createArrayBuilder();
+        for (int i = 0; i < size; i++) {
+            items.add(Json.createObjectBuilder().add("name", "n" + i).add("type", i % 2 == 0 ? "a" : "b"));
+        }
+        return Json.createObjectBuilder().add("user", user).add("items", items).build();
+    }
+}
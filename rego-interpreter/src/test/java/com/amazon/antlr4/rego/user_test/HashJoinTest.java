@@ -0,0 +1,85 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class HashJoinTest {
+
+    private static final String POLICY = "package HashJoinTest\n"
+        + "owned[id] { some i; data.acl[i].owner == owner(input.user); id := data.acl[i].id }\n"
+        + "shared[r] { r := input.resources[_]; data.acl[_].id == r }\n"
+        + "pairs[[r.name, a.id]] { r := input.resources_by_name[_]; a := data.acl[_]; a.id == r.id }\n"
+        + "joined[[x, y]] { some x, y; input.resources_by_name[x].id == data.acl[y].id }\n"
+        + "levels[n] { some u; data.acl[u].level[0] == input.level; n := u }\n"
+        + "numbers { data.acl[_].id == 7 }\n"
+        + "strings { data.acl[_].id == \"7\" }\n";
+
+    private final Expression owner = (args, input, data) -> args.get(0);
+
+    @Test
+    public void joinsMatchNestedLoops() throws Exception {
+        String data = acl(1000).toString();
+        RegoExecutor plain = new RegoExecutorBuilder(POLICY).data(data)
+            .expressions(Map.of("owner", owner)).build();
+        RegoExecutor joined = new RegoExecutorBuilder(POLICY).data(data)
+            .expressions(Map.of("owner", owner)).hashJoins(true).build();
+        for (int i = 0; i < 4; i++) {
+            JsonObject input = input("u" + i * 3, i);
+            JsonObject expected = plain.executePolicy(input);
+            JsonObject output = joined.executePolicy(input);
+            Assertions.assertEquals(expected, output);
+            Assertions.assertEquals(10, output.getJsonArray("owned").size());
+        }
+    }
+
+    @Test
+    public void valuesOfOtherTypesDoNotMatch() throws Exception {
+        RegoExecutor joined = new RegoExecutorBuilder(POLICY).data(acl(1000).toString())
+            .expressions(Map.of("owner", owner)).hashJoins(true).build();
+        JsonObject output = joined.executePolicy(input("u7", 1));
+        Assertions.assertEquals(10, output.getJsonArray("owned").size());
+        Assertions.assertEquals(250, output.getJsonArray("levels").size());
+        Assertions.assertTrue(output.getBoolean("numbers"));
+        Assertions.assertFalse(output.containsKey("strings"));
+    }
+
+    private static JsonObject acl(int size) {
+        JsonArrayBuilder acl = Json.createArrayBuilder();
+        for (int i = 0; i < size; i++) {
+            acl.add(Json.createObjectBuilder()
+                .add("id", i)
+                .add("owner", "u" + i % 100)
+                .add("level", Json.createArrayBuilder().add(i % 4).add("x")));
+        }
+        return Json.createObjectBuilder().add("acl", acl).build();
+    }
+
+    private static JsonObject input(String user, int level) {
+        JsonArrayBuilder resources = Json.createArrayBuilder();
+        JsonArrayBuilder named = Json.createArrayBuilder();
+        for (int i = 0; i < 20; i++) {
+            resources.add(i * 97);
+            named.add(Json.createObjectBuilder().add("name", "r" + i).add("id", i * 211));
+        }
+        named.add(Json.createObjectBuilder().add("name", "missing"));
+        return Json.createObjectBuilder()
+            .add("user", user)
+            .add("level", level)
+            .add("resources", resources)
+            .add("resources_by_name", named)
+            .build();
+    }
+}
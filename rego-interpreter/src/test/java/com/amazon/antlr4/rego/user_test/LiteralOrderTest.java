@@ -0,0 +1,143 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LiteralOrderTest {
+
+    private static final String POLICY = "package LiteralOrderTest\n"
+        + "read := \"GET\"\n"
+        + "allowed[r] { r := input.resources[_]; owns(input.user, r); input.method == read }\n"
+        + "names := {n | some i; data.users[i].role == input.role; n := data.users[i].name}\n"
+        + "pairs := [[a, b] | a := data.users[_].name; b := data.users[_].name; a < b; input.method == \"GET\"]\n"
+        + "default deny = false\n"
+        + "deny { not allowed[input.resources[0]]; input.method != \"GET\" }\n"
+        + "first := n { n := data.users[0].name; count(allowed) > 0 }\n";
+
+    private static final String DATA = "{\"users\": [{\"name\": \"ann\", \"role\": \"admin\"}, "
+        + "{\"name\": \"bob\", \"role\": \"user\"}, {\"name\": \"cat\", \"role\": \"admin\"}]}";
+
+    private final AtomicInteger ownsCalls = new AtomicInteger();
+
+    private final Expression owns = (args, input, data) -> {
+        ownsCalls.incrementAndGet();
+        return args.get(1).toString().contains("doc") ? JsonValue.TRUE : JsonValue.FALSE;
+    };
+
+    @Test
+    public void reorderedLiteralsKeepOutputs() throws Exception {
+        RegoExecutor plain = new RegoExecutorBuilder(POLICY).data(DATA)
+            .expressions(Map.of("owns", owns))
+            .build();
+        RegoExecutor reordered = new RegoExecutorBuilder(POLICY).data(DATA)
+            .expressions(Map.of("owns", owns))
+            .reorderLiterals(true)
+            .build();
+        for (String method: new String[] {"GET", "POST"}) {
+            for (String role: new String[] {"admin", "user"}) {
+                JsonObject input = input(method, role, 5);
+                Assertions.assertEquals(plain.executePolicy(input), reordered.executePolicy(input));
+            }
+        }
+
+        ownsCalls.set(0);
+        plain.executePolicy(input("POST", "admin", 5));
+        Assertions.assertEquals(5, ownsCalls.get());
+        // the method check fails before the expression is called
+        ownsCalls.set(0);
+        JsonObject output = reordered.executePolicy(input("POST", "admin", 5));
+        Assertions.assertEquals(0, ownsCalls.get());
+        Assertions.assertTrue(output.getBoolean("deny"));
+        Assertions.assertEquals(Json.createArrayBuilder().add("ann").add("cat").build(), output.get("names"));
+    }
+
+    @Test
+    public void unifiedPatternsBindBeforeTheirReads() throws Exception {
+        RegoExecutor executor = new RegoExecutorBuilder("package LiteralOrderTest\n"
+                + "allow { [x, y] = input.pair; x == 1 }\n")
+            .reorderLiterals(true)
+            .build();
+        JsonObject input = Json.createObjectBuilder().add("pair", Json.createArrayBuilder().add(1).add(2)).build();
+        Assertions.assertTrue(executor.executePolicy(input).getBoolean("allow"));
+    }
+
+    @Test
+    public void impureCallsStayBehindTheirGuards() throws Exception {
+        AtomicInteger auditCalls = new AtomicInteger();
+        Expression audit = (args, input, data) -> {
+            auditCalls.incrementAndGet();
+            return JsonValue.FALSE;
+        };
+        RegoExecutor executor = new RegoExecutorBuilder("package LiteralOrderTest\n"
+                + "default allow = false\n"
+                + "allow { input.a != 0; audit(input.b) }\n")
+            .expressions(Map.of("audit", audit))
+            .reorderLiterals(true)
+            .literalStats(true)
+            .build();
+        for (int i = 0; i < 300; i++) {
+            executor.executePolicy(Json.createObjectBuilder().add("a", 1).add("b", i).build());
+        }
+        auditCalls.set(0);
+        Assertions.assertFalse(executor.executePolicy(Json.createObjectBuilder().add("a", 0).add("b", 1).build())
+            .getBoolean("allow"));
+        Assertions.assertEquals(0, auditCalls.get());
+    }
+
+    @Test
+    public void observedOutcomesOrderLaterExecutions() throws Exception {
+        AtomicInteger firstCalls = new AtomicInteger();
+        Expression first = (args, input, data) -> {
+            firstCalls.incrementAndGet();
+            return JsonValue.TRUE;
+        };
+        Expression second = (args, input, data) -> JsonValue.FALSE;
+        String policy = "package LiteralOrderTest\n"
+            + "default allow = false\n"
+            + "allow { first(input.a); second(input.b) }\n";
+        RegoExecutor executor = new RegoExecutorBuilder(policy)
+            .expressions(Map.of("first", first, "second", second))
+            .pureExpressions("first", "second")
+            .reorderLiterals(true)
+            .literalStats(true)
+            .build();
+        JsonObject input = Json.createObjectBuilder().add("a", 1).add("b", 2).build();
+        for (int i = 0; i < 40; i++) {
+            Assertions.assertFalse(executor.executePolicy(input).getBoolean("allow"));
+        }
+        // the literal that always fails runs first once enough outcomes are observed
+        firstCalls.set(0);
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertFalse(executor.executePolicy(input).getBoolean("allow"));
+        }
+        Assertions.assertEquals(0, firstCalls.get());
+    }
+
+    private static JsonObject input(String method, String role, int resources) {
+        JsonArrayBuilder array = Json.createArrayBuilder();
+        for (int i = 0; i < resources; i++) {
+            array.add(i % 2 == 0 ? "doc" + i : "img" + i);
+        }
+        return Json.createObjectBuilder()
+            .add("method", method)
+            .add("role", role)
+            .add("user", "ann")
+            .add("resources", array)
+            .build();
+    }
+}
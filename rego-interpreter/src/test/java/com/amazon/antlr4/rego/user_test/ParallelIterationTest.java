@@ -0,0 +1,68 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ParallelIterationTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    private static final String POLICY = "package ParallelIterationTest\n"
+        + "limit := data.limit\n"
+        + "big[n] { some i; input.items[i].size > limit; n := input.items[i].name }\n"
+        + "sizes[n] = s { item := input.items[_]; n := item.name; s := item.size }\n"
+        + "pairs[p] { x := input.items[_]; y := input.tags[_]; x.size == y; p := concat(\"-\", [x.name, y]) }\n"
+        + "first := [n | n := input.items[_].name][0]\n";
+
+    private static final String DATA = "{\"limit\": 500}";
+
+    @AfterAll
+    public static void shutdownPool() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void parallelResultsMatchSequentialResults() throws Exception {
+        JsonObject input = input(1000);
+        JsonObject sequential = new RegoExecutorBuilder(POLICY).data(DATA).build().executePolicy(input);
+        RegoExecutor parallel = new RegoExecutorBuilder(POLICY).data(DATA).parallelIterations(POOL, 10).build();
+        for (int i = 0; i < 5; i++) {
+            Assertions.assertEquals(sequential, parallel.executePolicy(input));
+        }
+        Assertions.assertEquals(499, sequential.getJsonArray("big").size());
+        Assertions.assertEquals(1000, sequential.getJsonObject("sizes").size());
+        Assertions.assertEquals(3, sequential.getJsonArray("pairs").size());
+    }
+
+    @Test
+    public void smallArraysStaySequential() throws Exception {
+        JsonObject input = input(5);
+        JsonObject sequential = new RegoExecutorBuilder(POLICY).data(DATA).build().executePolicy(input);
+        RegoExecutor parallel = new RegoExecutorBuilder(POLICY).data(DATA).parallelIterations(true).build();
+        Assertions.assertEquals(sequential, parallel.executePolicy(input));
+    }
+
+    private static JsonObject input(int size) {
+        JsonArrayBuilder items = Json.createArrayBuilder();
+        for (int i = 0; i < size; i++) {
+            items.add(Json.createObjectBuilder().add("name", "n" + i).add("size", i));
+        }
+        return Json.createObjectBuilder()
+            .add("items", items)
+            .add("tags", Json.createArrayBuilder().add(3).add(700).add(999))
+            .build();
+    }
+}
@@ -0,0 +1,100 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.type.BadPolicyException;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ParallelRulesTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    private static final JsonObject INPUT = Json.createReader(new StringReader(
+        "{\"user\": \"alice\", \"items\": [{\"name\": \"a\", \"size\": 2}, {\"name\": \"b\", \"size\": 5}]}"
+    )).readObject();
+
+    private static final String POLICY = "package ParallelRulesTest\n"
+        + "import input.items\n"
+        + "default allow = false\n"
+        + "allow { is_admin }\n"
+        + "is_admin { input.user == data.admins[_] }\n"
+        + "names[n] { n := items[_].name }\n"
+        + "sizes[n] = s { s := items[i].size; n := items[i].name }\n"
+        + "total := sum([s | s := items[_].size])\n"
+        + "double(x) = y { y := x * 2 }\n"
+        + "doubled := double(total)\n"
+        + "missing { input.nothing }\n";
+
+    @AfterAll
+    public static void shutdownPool() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void parallelResultsMatchSequentialResults() throws Exception {
+        String data = "{\"admins\": [\"alice\"]}";
+        JsonObject sequential = new RegoExecutorBuilder(POLICY).data(data).build().executePolicy(INPUT);
+        RegoExecutor parallel = new RegoExecutorBuilder(POLICY).data(data).parallelRules(POOL).build();
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(sequential, parallel.executePolicy(INPUT));
+        }
+        Assertions.assertEquals(14, sequential.getInt("doubled"));
+        Assertions.assertEquals(JsonValue.TRUE, sequential.get("allow"));
+        Assertions.assertEquals(
+            Json.createObjectBuilder().add("doubled", 14).add("allow", true).build(),
+            parallel.evaluate(Set.of("doubled", "allow"), INPUT));
+    }
+
+    @Test
+    public void independentRulesRunConcurrently() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        Expression meet = (args, input, data) -> {
+            try {
+                barrier.await(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return args.get(0);
+        };
+        RegoExecutor executor = new RegoExecutorBuilder("package p\n"
+            + "a := meet(1)\n"
+            + "b := meet(2)\n")
+            .expressions(Map.of("meet", meet))
+            .parallelRules(POOL)
+            .build();
+        JsonObject output = executor.executePolicy(INPUT);
+        Assertions.assertEquals(1, output.getInt("a"));
+        Assertions.assertEquals(2, output.getInt("b"));
+    }
+
+    @Test
+    public void firstErrorInPolicyOrderIsThrown() throws Exception {
+        RegoExecutor executor = new RegoExecutorBuilder("package p\n"
+            + "a := input.user\n"
+            + "b := unknown_function(1)\n"
+            + "c := other_unknown_function(1)\n")
+            .parallelRules(true)
+            .build();
+        BadPolicyException e = Assertions.assertThrows(BadPolicyException.class, () -> executor.executePolicy(INPUT));
+        Assertions.assertTrue(e.getMessage().contains("unknown_function"), e.getMessage());
+        Assertions.assertFalse(e.getMessage().contains("other_unknown_function"), e.getMessage());
+    }
+}
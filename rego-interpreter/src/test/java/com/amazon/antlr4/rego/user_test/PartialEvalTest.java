@@ -0,0 +1,128 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PartialEvalTest {
+
+    private static final String TEST_POLICY = "package tenant.authz \n"
+        + "default allow = false \n"
+        + "admins := {u | u := data.users[_]; u.admin} \n"
+        + "admin_names[n] { n := admins[_].name } \n"
+        + "region_ok { input.region == data.regions[_] } \n"
+        + "not_found { data.missing } \n"
+        + "is_admin(name) { admin_names[_] == name } \n"
+        + "allow { region_ok; is_admin(input.user.name) } \n"
+        + "allow { input.user.name == data.owner; input.tenant.tier == \"gold\" } \n"
+        + "reason := concat(\" in \", [input.user.name, input.region]) \n";
+
+    private static final String TEST_DATA = "{"
+        + "\"users\": [{\"name\": \"ann\", \"admin\": true}, {\"name\": \"bob\", \"admin\": false}],"
+        + "\"regions\": [\"eu\", \"us\"],"
+        + "\"owner\": \"carl\""
+        + "}";
+
+    private static final JsonObject KNOWN_INPUT = json("{\"region\": \"eu\", \"tenant\": {\"tier\": \"gold\"}}");
+
+    @Test
+    public void residualPolicyKeepsOnlyRulesWithUnknowns() throws Exception {
+        String residual = new RegoExecutorBuilder(TEST_POLICY).data(TEST_DATA).build()
+            .partialEval(Set.of("input.user"), KNOWN_INPUT);
+
+        Assertions.assertTrue(residual.startsWith("package tenant.authz"));
+        Assertions.assertTrue(residual.contains("admin_names := [\"ann\"]"));
+        Assertions.assertTrue(residual.contains("region_ok := true"));
+        Assertions.assertTrue(residual.contains("not_found { false }"));
+        Assertions.assertTrue(residual.contains("allow { input.user.name == \"carl\" }"));
+        Assertions.assertTrue(residual.contains("default allow = false"));
+        Assertions.assertFalse(residual.contains("data."));
+    }
+
+    @Test
+    public void residualPolicyMatchesFullEvaluation() throws Exception {
+        String residual = new RegoExecutorBuilder(TEST_POLICY).data(TEST_DATA).build()
+            .partialEval(Set.of("input.user"), KNOWN_INPUT);
+        RegoExecutor full = new RegoExecutorBuilder(TEST_POLICY).data(TEST_DATA).build();
+        RegoExecutor partial = new RegoExecutorBuilder(residual).build();
+
+        for (String user: new String[] {"ann", "bob", "carl"}) {
+            JsonObject input = json(String.format(
+                "{\"region\": \"eu\", \"tenant\": {\"tier\": \"gold\"}, \"user\": {\"name\": \"%s\"}}", user));
+            JsonObject expected = full.executePolicy(input);
+            JsonObject actual = partial.executePolicy(input);
+            Assertions.assertEquals(expected.get("allow"), actual.get("allow"), user);
+            Assertions.assertEquals(expected.get("reason"), actual.get("reason"), user);
+        }
+    }
+
+    @Test
+    public void decidedLiteralsAreFolded() throws Exception {
+        String residual = new RegoExecutorBuilder("package p \n"
+            + "default allow = false \n"
+            + "allow { input.method == \"GET\"; input.user.admin } \n"
+            + "allow { input.method == \"POST\"; count(data.tags) > 1; input.user.name == data.owner } \n"
+            + "allow { [\"private\"][0] == \"public\"; input.user.admin } \n"
+            + "deny { input.method == \"POST\"; input.user.banned } \n"
+            + "deny { input.method == \"PUT\"; input.user.admin } \n"
+            + "audit(u) { input.method == \"GET\"; u.admin } \n"
+            + "logged { audit(input.user) } \n")
+            .data("{\"tags\": [\"a\", \"b\"], \"owner\": \"carl\"}")
+            .build()
+            .partialEval(Set.of("input.user"), json("{\"method\": \"POST\"}"));
+
+        Assertions.assertEquals("package p\n\n"
+            + "default allow = false\n"
+            + "allow { input.user.name == \"carl\" }\n"
+            + "deny { input.user.banned }\n"
+            + "audit(u) { false }\n"
+            + "logged { audit(input.user) }\n", residual);
+    }
+
+    @Test
+    public void missingKnownRefsAreUndefined() throws Exception {
+        String residual = new RegoExecutorBuilder("package p \n"
+            + "allow { not input.flags.beta; input.user.admin } \n"
+            + "allow { input.flags.beta; input.user.name == \"carl\" } \n"
+            + "deny { data.blocked[input.method]; input.user.banned } \n"
+            + "deny { count(1 | 2) > 0; input.user.admin } \n")
+            .data("{\"blocked\": {}}")
+            .build()
+            .partialEval(Set.of("input.user"), json("{\"method\": \"POST\"}"));
+
+        Assertions.assertEquals("package p\n\n"
+            + "allow { input.user.admin }\n"
+            + "deny { count(1 | 2) > 0; input.user.admin }\n", residual);
+    }
+
+    @Test
+    public void javaExpressionsAreNotFolded() throws Exception {
+        Expression now = (args, input, data) -> JsonResolver.nativeToJson(42);
+        String residual = new RegoExecutorBuilder("package p "
+            + "t := now() "
+            + "c := 1 + 2 ")
+            .expressions(Map.of("now", now))
+            .build()
+            .partialEval(Set.of("input.user"), KNOWN_INPUT);
+        Assertions.assertTrue(residual.contains("t := now()"));
+        Assertions.assertTrue(residual.contains("c := 3"));
+    }
+
+    private static JsonObject json(String json) {
+        return Json.createReader(new StringReader(json)).readObject();
+    }
+}
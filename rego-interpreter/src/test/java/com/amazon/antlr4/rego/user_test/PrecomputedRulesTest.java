@@ -0,0 +1,90 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PrecomputedRulesTest {
+
+    private static final String POLICY = "package PrecomputedRulesTest\n"
+        + "permissions[r] = ps { r := data.roles[_]; ps := expand(r) }\n"
+        + "has_guest { data.roles[_] == \"guest\" }\n"
+        + "default allow = false\n"
+        + "allow { permissions[input.role][_] == input.action }\n"
+        + "guest_access { not has_guest }\n"
+        + "request := next_id()\n";
+
+    private static final String DATA = "{\"roles\": [\"admin\", \"dev\", \"ops\"]}";
+
+    private final AtomicInteger expandCalls = new AtomicInteger();
+    private final AtomicInteger ids = new AtomicInteger();
+
+    private final Expression expand = (args, input, data) -> {
+        expandCalls.incrementAndGet();
+        String role = ((JsonString) args.get(0)).getString();
+        return Json.createArrayBuilder().add(role + ":read").add(role + ":write").build();
+    };
+
+    private final Expression nextId = (args, input, data) -> JsonResolver.nativeToJson(ids.incrementAndGet());
+
+    @Test
+    public void dataOnlyRulesAreEvaluatedOnce() throws Exception {
+        RegoExecutor plain = new RegoExecutorBuilder(POLICY)
+            .data(DATA)
+            .expressions(Map.of("expand", expand, "next_id", nextId))
+            .build();
+        RegoExecutor precomputed = new RegoExecutorBuilder(POLICY)
+            .data(DATA)
+            .expressions(Map.of("expand", expand, "next_id", nextId))
+            .pureExpressions("expand")
+            .precomputeDataRules(true)
+            .build();
+        Assertions.assertEquals(3, expandCalls.get());
+
+        String[] roles = {"admin", "dev", "ops", "guest"};
+        for (int i = 0; i < 8; i++) {
+            JsonObject input = Json.createObjectBuilder()
+                .add("role", roles[i % 4])
+                .add("action", roles[i % 3] + ":write")
+                .build();
+            JsonObject expected = plain.executePolicy(input);
+            JsonObject output = precomputed.executePolicy(input);
+            Assertions.assertEquals(expected.get("allow"), output.get("allow"));
+            Assertions.assertEquals(expected.get("permissions"), output.get("permissions"));
+            Assertions.assertEquals(JsonValue.TRUE, output.get("guest_access"));
+            Assertions.assertFalse(output.containsKey("has_guest"));
+            Assertions.assertEquals(expected.get("allow"), precomputed.evaluate("allow", input));
+        }
+        // the plain executor expands on every execution, the precomputed one only when built
+        Assertions.assertEquals(3 + 8 * 3, expandCalls.get());
+        // calls an impure expression
+        Assertions.assertEquals(16, ids.get());
+    }
+
+    @Test
+    public void impureExpressionsAreNotPrecomputed() throws Exception {
+        RegoExecutor executor = new RegoExecutorBuilder(POLICY)
+            .data(DATA)
+            .expressions(Map.of("expand", expand, "next_id", nextId))
+            .precomputeDataRules(true)
+            .build();
+        Assertions.assertEquals(0, expandCalls.get());
+        executor.executePolicy(Json.createObjectBuilder().add("role", "dev").add("action", "dev:read").build());
+        Assertions.assertEquals(3, expandCalls.get());
+    }
+}
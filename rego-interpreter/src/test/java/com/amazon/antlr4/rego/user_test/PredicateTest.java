@@ -0,0 +1,82 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.function.Predicate;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PredicateTest {
+
+    private static final String TEST_POLICY = "package records \n"
+        + "default visible = false \n"
+        + "allowed_levels := {l | l := data.levels[_]; l <= input.clearance} \n"
+        + "visible { input.record.owner == input.user } \n"
+        + "visible { input.record.public == true; not input.record.deleted } \n"
+        + "visible { input.record.level < input.clearance; input.record.region != data.blocked } \n"
+        + "tagged { input.record.tags[_] == input.tag } \n"
+        + "same_level { input.record.level == allowed_levels[_] } \n";
+
+    private static final String TEST_DATA = "{\"levels\": [1, 2, 3, 4], \"blocked\": \"cn\"}";
+
+    private static final JsonObject KNOWN_INPUT = json("{\"user\": \"ann\", \"clearance\": 3, \"tag\": \"x\"}");
+
+    private static final List<JsonObject> RECORDS = List.of(
+        json("{\"owner\": \"ann\", \"level\": 9}"),
+        json("{\"owner\": \"bob\", \"public\": true}"),
+        json("{\"owner\": \"bob\", \"public\": true, \"deleted\": true, \"level\": 5}"),
+        json("{\"owner\": \"bob\", \"level\": 2, \"region\": \"eu\", \"tags\": [\"x\"]}"),
+        json("{\"owner\": \"bob\", \"level\": 2, \"region\": \"cn\", \"tags\": [\"y\"]}"),
+        json("{\"level\": 3}"),
+        json("{}"));
+
+    @Test
+    public void predicateMatchesPolicyForEveryRecord() throws Exception {
+        RegoExecutor executor = new RegoExecutorBuilder(TEST_POLICY).data(TEST_DATA).build();
+        for (String rule: new String[] {"visible", "tagged", "same_level"}) {
+            Predicate<JsonObject> predicate = executor.toPredicate(rule, "input.record", KNOWN_INPUT);
+            for (JsonObject record: RECORDS) {
+                JsonObjectBuilder builder = Json.createObjectBuilder().add("record", record);
+                KNOWN_INPUT.forEach(builder::add);
+                JsonObject input = builder.build();
+                boolean expected = JsonValue.TRUE.equals(executor.executePolicy(input).get(rule));
+                Assertions.assertEquals(expected, predicate.test(record), rule + " " + record);
+            }
+        }
+    }
+
+    @Test
+    public void rulesWithoutRecordReferencesAreConstant() throws Exception {
+        RegoExecutor executor = new RegoExecutorBuilder("package p \n"
+            + "cleared { input.clearance > 2 } \n")
+            .build();
+        Assertions.assertTrue(executor.toPredicate("cleared", "input.record", KNOWN_INPUT).test(json("{}")));
+        Assertions.assertFalse(executor.toPredicate("cleared", "input.record",
+            json("{\"clearance\": 1}")).test(json("{}")));
+    }
+
+    @Test
+    public void recordPathMustBeBelowInput() throws Exception {
+        RegoExecutor executor = new RegoExecutorBuilder(TEST_POLICY).data(TEST_DATA).build();
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> executor.toPredicate("visible", "data.record", KNOWN_INPUT));
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> executor.toPredicate("visible", "input", KNOWN_INPUT));
+    }
+
+    private static JsonObject json(String json) {
+        return Json.createReader(new StringReader(json)).readObject();
+    }
+}
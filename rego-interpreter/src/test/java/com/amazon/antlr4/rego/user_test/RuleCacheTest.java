@@ -0,0 +1,101 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.type.CacheStats;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RuleCacheTest {
+
+    private static final String POLICY = "package RuleCacheTest\n"
+        + "import input.user as u\n"
+        + "is_admin { role(u.id) == \"admin\" }\n"
+        + "default tier = \"basic\"\n"
+        + "tier = \"gold\" { is_admin }\n"
+        + "allowed[r] { r := input.resources[_]; is_admin }\n"
+        + "allowed[r] { r := input.resources[_]; startswith(r, u.name) }\n"
+        + "greeting := concat(\" \", [\"hi\", u.name])\n"
+        + "request := next_id()\n";
+
+    private final AtomicInteger roleCalls = new AtomicInteger();
+    private final AtomicInteger ids = new AtomicInteger();
+
+    private final Expression role = (args, input, data) -> {
+        roleCalls.incrementAndGet();
+        return JsonResolver.nativeToJson(((JsonString) args.get(0)).getString().startsWith("a") ? "admin" : "user");
+    };
+
+    private final Expression nextId = (args, input, data) -> JsonResolver.nativeToJson(ids.incrementAndGet());
+
+    @Test
+    public void rulesAreReusedForEqualInputPaths() throws Exception {
+        RegoExecutor plain = new RegoExecutorBuilder(POLICY)
+            .expressions(Map.of("role", role, "next_id", nextId))
+            .build();
+        RegoExecutor cached = new RegoExecutorBuilder(POLICY)
+            .expressions(Map.of("role", role, "next_id", nextId))
+            .pureExpressions("role")
+            .ruleCache(true)
+            .build();
+        for (int i = 0; i < 20; i++) {
+            JsonObject input = input(i % 2 == 0 ? "a1" : "u2", "n" + i % 5, i % 3);
+            JsonObject expected = plain.executePolicy(input);
+            JsonObject output = cached.executePolicy(input);
+            Assertions.assertEquals(expected.get("allowed"), output.get("allowed"));
+            Assertions.assertEquals(expected.get("tier"), output.get("tier"));
+            Assertions.assertEquals(expected.get("greeting"), output.get("greeting"));
+            Assertions.assertNotEquals(expected.get("request"), output.get("request"));
+        }
+
+        Map<String, CacheStats> stats = cached.getExpressionCacheStats();
+        // keyed by input.user.id only
+        Assertions.assertEquals(2, stats.get("is_admin").getMisses());
+        Assertions.assertEquals(18, stats.get("is_admin").getHits());
+        // keyed by input.user.name
+        Assertions.assertEquals(5, stats.get("greeting").getMisses());
+        // calls an impure expression
+        Assertions.assertNull(stats.get("request"));
+        // once per execution without the cache, once per id with it
+        Assertions.assertEquals(22, roleCalls.get());
+    }
+
+    @Test
+    public void missingPathsAreKeyedAsUndefined() throws Exception {
+        RegoExecutor cached = new RegoExecutorBuilder(POLICY)
+            .expressions(Map.of("role", role, "next_id", nextId))
+            .pureExpressions("role")
+            .ruleCache(true)
+            .build();
+        JsonObject admin = cached.executePolicy(input("a1", "n", 1));
+        JsonObject anonymous = cached.executePolicy(Json.createObjectBuilder()
+            .add("user", Json.createObjectBuilder()).add("resources", Json.createArrayBuilder()).build());
+        Assertions.assertEquals("gold", admin.getString("tier"));
+        Assertions.assertEquals("basic", anonymous.getString("tier"));
+        Assertions.assertEquals("gold", cached.executePolicy(input("a1", "m", 2)).getString("tier"));
+    }
+
+    private static JsonObject input(String id, String name, int resources) {
+        JsonArrayBuilder items = Json.createArrayBuilder();
+        for (int i = 0; i < resources; i++) {
+            items.add(name + "-" + i).add("other-" + i);
+        }
+        JsonObjectBuilder user = Json.createObjectBuilder().add("id", id).add("name", name);
+        return Json.createObjectBuilder().add("user", user).add("resources", items).build();
+    }
+}
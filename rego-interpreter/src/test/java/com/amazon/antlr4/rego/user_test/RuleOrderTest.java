@@ -0,0 +1,75 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.JsonObject;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+import com.amazon.antlr4.rego.interpreter.core.lib.JsonResolver;
+import com.amazon.antlr4.rego.interpreter.type.Expression;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RuleOrderTest {
+
+    @Test
+    public void ruleReadBeforeDefinitionIsEvaluatedOnDemand() throws Exception {
+        JsonObject output = execute("package p a { b } b { true }");
+        Assertions.assertTrue(output.getBoolean("a"));
+        Assertions.assertTrue(output.getBoolean("b"));
+    }
+
+    @Test
+    public void ruleReadBeforeFailedDefinitionIsUndefined() throws Exception {
+        JsonObject output = execute("package p a { b } b { false }");
+        Assertions.assertNull(output.get("a"));
+        Assertions.assertNull(output.get("b"));
+    }
+
+    @Test
+    public void partialRulesAreCompleteWhenReadOnDemand() throws Exception {
+        JsonObject output = execute("package p "
+            + "c := count(s) "
+            + "s[x] { x := input.xs[_] } "
+            + "s[\"extra\"] { true }",
+            "{\"xs\": [1, 2]}");
+        Assertions.assertEquals(3, output.getInt("c"));
+    }
+
+    @Test
+    public void defaultAfterDefinitionIsApplied() throws Exception {
+        JsonObject output = execute("package p allow { input.v == 1 } default allow = false", "{\"v\": 2}");
+        Assertions.assertFalse(output.getBoolean("allow"));
+        output = execute("package p a := allow allow { input.v == 1 } default allow = false", "{\"v\": 1}");
+        Assertions.assertTrue(output.getBoolean("a"));
+    }
+
+    @Test
+    public void ruleReadManyTimesIsEvaluatedOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        Expression counter = (args, input, data) -> JsonResolver.nativeToJson(calls.incrementAndGet());
+        JsonObject output = new RegoExecutorBuilder("package p "
+            + "a := [b, b, b] "
+            + "c := b + 1 "
+            + "b := counter()")
+            .expressions(Map.of("counter", counter))
+            .build()
+            .executePolicy("{}");
+        Assertions.assertEquals(1, calls.get());
+        Assertions.assertEquals("[1,1,1]", output.getJsonArray("a").toString());
+        Assertions.assertEquals(2, output.getInt("c"));
+    }
+
+    private static JsonObject execute(String policy) throws Exception {
+        return execute(policy, "{}");
+    }
+
+    private static JsonObject execute(String policy, String input) throws Exception {
+        return new RegoExecutorBuilder(policy).build().executePolicy(input);
+    }
+}
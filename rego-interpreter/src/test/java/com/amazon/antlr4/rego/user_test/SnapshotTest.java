@@ -0,0 +1,76 @@
+// Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+// SPDX-License-Identifier: Apache-2.0
+
+package com.amazon.antlr4.rego.user_test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+
+import com.amazon.antlr4.rego.interpreter.RegoExecutor;
+import com.amazon.antlr4.rego.interpreter.RegoExecutorBuilder;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SnapshotTest {
+
+    @Test
+    public void snapshotGivesSameOutput() throws Exception {
+        RegoExecutor executor = MergedUTTest.prepareExecutor(false, false);
+        JsonObject expected = MergedUTTest.executeMergedPolicy(executor, MergedUTTest.prepareInputStream());
+
+        RegoExecutor restored = RegoExecutorBuilder.fromSnapshot(snapshot(executor)).build();
+        JsonObject actual = MergedUTTest.executeMergedPolicy(restored, MergedUTTest.prepareInputStream());
+        // byte array values have no equals, compare the rendered output
+        Assertions.assertEquals(expected.toString(), actual.toString());
+        Assertions.assertEquals(executor.getPackageName(), restored.getPackageName());
+    }
+
+    @Test
+    public void snapshotKeepsPolicyTextAndAllowsDataOverride() throws Exception {
+        RegoExecutor executor = new RegoExecutorBuilder("package p \n"
+            + "# comment \n"
+            + "name := data.name \n"
+            + "greeting := concat(\" \", [\"hi\", input.user]) \n")
+            .data("{\"name\": \"snap\"}")
+            .build();
+        byte[] snapshot = snapshot(executor).readAllBytes();
+
+        RegoExecutor restored = RegoExecutorBuilder.fromSnapshot(new ByteArrayInputStream(snapshot)).build();
+        Assertions.assertEquals("snap", restored.executePolicy("{\"user\": \"ann\"}").getString("name"));
+        Assertions.assertTrue(restored.partialEval(Set.of("input.user"), Json.createObjectBuilder().build())
+            .contains("greeting := concat(\" \", [\"hi\", input.user])"));
+
+        restored = RegoExecutorBuilder.fromSnapshot(new ByteArrayInputStream(snapshot))
+            .data("{\"name\": \"other\"}")
+            .build();
+        Assertions.assertEquals("other", restored.executePolicy("{}").getString("name"));
+    }
+
+    @Test
+    public void invalidSnapshotIsRejected() throws Exception {
+        byte[] snapshot = snapshot(new RegoExecutorBuilder("package p \n a := 1").build()).readAllBytes();
+
+        byte[] wrongVersion = Arrays.copyOf(snapshot, snapshot.length);
+        wrongVersion[7] = 99;
+        Assertions.assertThrows(IOException.class,
+            () -> RegoExecutorBuilder.fromSnapshot(new ByteArrayInputStream(wrongVersion)));
+        Assertions.assertThrows(IOException.class,
+            () -> RegoExecutorBuilder.fromSnapshot(new ByteArrayInputStream("package p".getBytes())));
+        Assertions.assertThrows(IOException.class,
+            () -> RegoExecutorBuilder.fromSnapshot(new ByteArrayInputStream(Arrays.copyOf(snapshot, 40))));
+    }
+
+    private static InputStream snapshot(RegoExecutor executor) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        executor.writeSnapshot(os);
+        return new ByteArrayInputStream(os.toByteArray());
+    }
+}